@@ -0,0 +1,175 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs detection and throw analysis off the camera thread.
+ *
+ * The camera thread only calls {@link #submit(Mat, Mat, long)}, which copies the
+ * frame into a bounded {@link FrameQueue}. A dedicated thread drains the
+ * queue, runs {@link DetectionProcessor} and {@link ThrowDetector}, and
+ * keeps a copy of the latest overlay for the preview to draw.
+ */
+public class AnalysisWorker {
+
+    public interface Listener {
+        /**
+         * Called on the analysis thread after each analyzed frame. The rgba
+         * Mat and the result are only valid for the duration of the call;
+         * rgba is null if the frame was submitted without one.
+         */
+        void onFrameAnalyzed(Mat rgba, DetectionResult result, boolean throwDetected);
+    }
+
+    // Latest frame wins: a newer frame replaces one still waiting, so
+    // analysis never falls a frame behind the camera
+    private static final int QUEUE_CAPACITY = 1;
+
+    private final DetectionProcessor detectionProcessor;
+    private final ThrowDetector throwDetector;
+    private final Listener listener;
+    private final FrameQueue queue;
+
+    // Per-stage latency counters
+    private final LatencyStats enqueueStats = new LatencyStats("enqueue");
+    private final LatencyStats queueWaitStats = new LatencyStats("queue wait");
+    private final LatencyStats detectStats = new LatencyStats("detect");
+    private final LatencyStats throwStats = new LatencyStats("throw");
+    private final LatencyStats totalStats = new LatencyStats("total");
+
+    // Copy of the latest result's overlay for the preview; guarded by itself
+    private final Overlay latestOverlay = new Overlay();
+    private Thread thread;
+
+    public AnalysisWorker(DetectionProcessor detectionProcessor, ThrowDetector throwDetector,
+                          Listener listener) {
+        this.detectionProcessor = detectionProcessor;
+        this.throwDetector = throwDetector;
+        this.listener = listener;
+        this.queue = new FrameQueue(QUEUE_CAPACITY);
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "AnalysisWorker");
+        thread.start();
+    }
+
+    /**
+     * Stops the analysis thread and frees the queued frames. Blocks until
+     * the thread has exited.
+     */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+        }
+        queue.close();
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        queue.release();
+    }
+
+    /**
+     * Hands a frame to the worker. Called from the camera thread; never
+     * blocks on analysis. rgba may be null when only gray is analyzed.
+     */
+    public void submit(Mat gray, Mat rgba, long timestampNs) {
+        long start = System.nanoTime();
+        queue.offer(gray, rgba, timestampNs);
+        enqueueStats.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Analyzes a frame synchronously on the calling thread, for use when
+     * pipelining is disabled.
+     */
+    public void analyzeInline(Mat gray, Mat rgba, long timestampNs) {
+        long start = System.nanoTime();
+        analyze(gray, rgba, timestampNs);
+        totalStats.record(System.nanoTime() - start);
+    }
+
+    private void runLoop() {
+        while (true) {
+            FrameQueue.Slot slot;
+            try {
+                slot = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (slot == null) {
+                return;
+            }
+
+            queueWaitStats.record(System.nanoTime() - slot.enqueueTimeNs);
+            try {
+                analyze(slot.gray, slot.hasRgba ? slot.rgba : null, slot.timestampNs);
+            } finally {
+                totalStats.record(System.nanoTime() - slot.enqueueTimeNs);
+                queue.recycle(slot);
+            }
+        }
+    }
+
+    private void analyze(Mat gray, Mat rgba, long timestampNs) {
+        long start = System.nanoTime();
+        DetectionResult result = detectionProcessor.detect(gray, timestampNs);
+        long detected = System.nanoTime();
+        detectStats.record(detected - start);
+
+        // Runs every frame so pairs of ended tracks are aged out
+        boolean throwDetected = throwDetector.detectThrows(
+            result.humanTracks,
+            result.objectTracks,
+            timestampNs,
+            gray.cols(),
+            gray.rows(),
+            detectionProcessor.isOverlayEnabled() ? result.overlay : null
+        );
+        throwStats.record(System.nanoTime() - detected);
+
+        synchronized (latestOverlay) {
+            latestOverlay.copyFrom(result.overlay);
+        }
+        listener.onFrameAnalyzed(rgba, result, throwDetected);
+    }
+
+    /**
+     * Copies the overlay of the most recent analysis result into target,
+     * for drawing on the preview from another thread.
+     */
+    public void copyLatestOverlay(Overlay target) {
+        synchronized (latestOverlay) {
+            target.copyFrom(latestOverlay);
+        }
+    }
+
+    public void clearLatestOverlay() {
+        synchronized (latestOverlay) {
+            latestOverlay.reset(0, 0);
+        }
+    }
+
+    public long getDroppedFrameCount() {
+        return queue.getDroppedCount();
+    }
+
+    public LatencyStats[] getStageStats() {
+        return new LatencyStats[] { enqueueStats, queueWaitStats, detectStats, throwStats, totalStats };
+    }
+}
@@ -0,0 +1,87 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.BackgroundSubtractor;
+
+/**
+ * Base for segmenters backed by an OpenCV BackgroundSubtractor.
+ *
+ * When shadow detection is on, the subtractor marks shadow pixels with an
+ * intermediate value; those are thresholded away so only true foreground
+ * reaches the contour stage.
+ */
+public abstract class BackgroundSubtractorSegmenter implements MotionSegmenter {
+    protected static final int DEFAULT_HISTORY = 500;
+
+    // Shadow pixels are 127 by default, foreground is 255
+    private static final double SHADOW_CUTOFF = 200;
+
+    private BackgroundSubtractor subtractor;
+    protected int history = DEFAULT_HISTORY;
+    protected boolean detectShadows = true;
+    protected int sensitivity = 50;
+    private double learningRate = -1;
+
+    protected abstract BackgroundSubtractor createSubtractor();
+
+    protected abstract void applySensitivity(BackgroundSubtractor subtractor);
+
+    protected abstract void applyDetectShadows(BackgroundSubtractor subtractor);
+
+    @Override
+    public boolean apply(Mat gray, Mat foregroundMask) {
+        boolean seeded = subtractor != null;
+        if (!seeded) {
+            subtractor = createSubtractor();
+            applySensitivity(subtractor);
+        }
+
+        subtractor.apply(gray, foregroundMask, learningRate);
+        if (detectShadows) {
+            Imgproc.threshold(foregroundMask, foregroundMask, SHADOW_CUTOFF, 255, Imgproc.THRESH_BINARY);
+        }
+        return seeded;
+    }
+
+    @Override
+    public void setSensitivity(int sensitivity) {
+        this.sensitivity = Math.max(0, Math.min(100, sensitivity));
+        if (subtractor != null) {
+            applySensitivity(subtractor);
+        }
+    }
+
+    @Override
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate < 0 ? -1 : Math.min(1.0, learningRate);
+    }
+
+    /**
+     * Enables shadow detection. Detected shadows are removed from the
+     * foreground mask; with detection off shadows count as foreground, which
+     * is slightly cheaper.
+     */
+    public void setDetectShadows(boolean detectShadows) {
+        this.detectShadows = detectShadows;
+        if (subtractor != null) {
+            applyDetectShadows(subtractor);
+        }
+    }
+
+    /** Number of frames the background model remembers. Applies on reset. */
+    public void setHistory(int history) {
+        this.history = Math.max(1, history);
+    }
+
+    @Override
+    public void reset() {
+        subtractor = null;
+    }
+
+    @Override
+    public void release() {
+        // The native algorithm is freed once the Java wrapper is collected
+        subtractor = null;
+    }
+}
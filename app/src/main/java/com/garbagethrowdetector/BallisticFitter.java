@@ -0,0 +1,180 @@
+package com.garbagethrowdetector;
+
+/**
+ * Sliding-window least squares fit of a ballistic trajectory.
+ *
+ * Fits x(t) = x0 + vx * t and y(t) = y0 + vy * t + g * t^2 to the most
+ * recent points. The normal equations only need power sums of t and the
+ * t-weighted sums of x and y, which are updated incrementally as points
+ * enter and leave the window, so adding a point and solving the fit are
+ * both O(1) regardless of the window length.
+ *
+ * Times are measured from an origin inside the window so the t^4 sums stay
+ * well conditioned. The origin moves to the oldest point once per window
+ * length; recomputing the sums then is O(window), i.e. O(1) amortized per
+ * point.
+ */
+public class BallisticFitter {
+
+    private final int window;
+    private final double[] ts;
+    private final double[] xs;
+    private final double[] ys;
+    private int head = -1;
+    private int size = 0;
+    private double origin = 0;
+    private int addsSinceRebase = 0;
+
+    // Power sums over the window (t relative to origin)
+    private double s1, s2, s3, s4;
+    private double sx, stx, sxx;
+    private double sy, sty, st2y, syy;
+
+    // Last solved fit
+    private boolean solved = false;
+    private double x0, vx, y0, vy, g;
+
+    public BallisticFitter(int window) {
+        this.window = Math.max(3, window);
+        ts = new double[this.window];
+        xs = new double[this.window];
+        ys = new double[this.window];
+    }
+
+    public void add(double t, double x, double y) {
+        if (size == 0) {
+            origin = t;
+            addsSinceRebase = 0;
+        } else if (++addsSinceRebase >= window) {
+            rebase(ts[(head + 1) % size]);
+        }
+
+        if (size == window) {
+            // Oldest point leaves the window
+            int oldest = (head + 1) % window;
+            accumulate(ts[oldest] - origin, xs[oldest], ys[oldest], -1);
+        } else {
+            size++;
+        }
+        head = (head + 1) % window;
+        ts[head] = t;
+        xs[head] = x;
+        ys[head] = y;
+        accumulate(t - origin, x, y, 1);
+        solved = false;
+    }
+
+    private void accumulate(double t, double x, double y, int sign) {
+        double t2 = t * t;
+        s1 += sign * t;
+        s2 += sign * t2;
+        s3 += sign * t2 * t;
+        s4 += sign * t2 * t2;
+        sx += sign * x;
+        stx += sign * t * x;
+        sxx += sign * x * x;
+        sy += sign * y;
+        sty += sign * t * y;
+        st2y += sign * t2 * y;
+        syy += sign * y * y;
+    }
+
+    private void rebase(double newOrigin) {
+        origin = newOrigin;
+        addsSinceRebase = 0;
+        s1 = s2 = s3 = s4 = 0;
+        sx = stx = sxx = 0;
+        sy = sty = st2y = syy = 0;
+        for (int i = 0; i < size; i++) {
+            accumulate(ts[i] - origin, xs[i], ys[i], 1);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Solves the fit for the current window.
+     *
+     * @return false if there are too few points or the times are degenerate
+     */
+    public boolean solve() {
+        if (solved) {
+            return true;
+        }
+        if (size < 3) {
+            return false;
+        }
+        double n = size;
+
+        // x: 2x2 normal equations
+        double detX = n * s2 - s1 * s1;
+        // y: 3x3 normal equations [n s1 s2; s1 s2 s3; s2 s3 s4]
+        double detY = n * (s2 * s4 - s3 * s3) - s1 * (s1 * s4 - s3 * s2) + s2 * (s1 * s3 - s2 * s2);
+        // Relative tolerance so the check does not depend on the time unit
+        if (Math.abs(detX) <= 1e-12 * n * s2 || Math.abs(detY) <= 1e-12 * n * s2 * s4) {
+            return false;
+        }
+
+        vx = (n * stx - s1 * sx) / detX;
+        x0 = (sx - vx * s1) / n;
+
+        // Cramer's rule
+        y0 = (sy * (s2 * s4 - s3 * s3) - s1 * (sty * s4 - s3 * st2y) + s2 * (sty * s3 - s2 * st2y)) / detY;
+        vy = (n * (sty * s4 - s3 * st2y) - sy * (s1 * s4 - s3 * s2) + s2 * (s1 * st2y - sty * s2)) / detY;
+        g = (n * (s2 * st2y - s3 * sty) - s1 * (s1 * st2y - s2 * sty) + sy * (s1 * s3 - s2 * s2)) / detY;
+
+        solved = true;
+        return true;
+    }
+
+    /**
+     * Root mean square distance between the points and the fitted curve,
+     * in position units. Only valid after a successful solve().
+     */
+    public double getResidual() {
+        // SSE = sum(v^2) - beta . (X^T v) for each least squares fit
+        double sseX = sxx - (x0 * sx + vx * stx);
+        double sseY = syy - (y0 * sy + vy * sty + g * st2y);
+        double mse = (sseX + sseY) / size;
+        return mse > 0 ? Math.sqrt(mse) : 0;
+    }
+
+    /** Fitted horizontal velocity, position units per time unit. */
+    public double getVelocityX() {
+        return vx;
+    }
+
+    /** Fitted vertical velocity at time t. */
+    public double getVelocityY(double t) {
+        return vy + 2 * g * (t - origin);
+    }
+
+    /**
+     * Fitted vertical acceleration (2g), positive downwards in image
+     * coordinates.
+     */
+    public double getAccelerationY() {
+        return 2 * g;
+    }
+
+    public double getX(double t) {
+        return x0 + vx * (t - origin);
+    }
+
+    public double getY(double t) {
+        double dt = t - origin;
+        return y0 + vy * dt + g * dt * dt;
+    }
+
+    public void clear() {
+        head = -1;
+        size = 0;
+        origin = 0;
+        s1 = s2 = s3 = s4 = 0;
+        sx = stx = sxx = 0;
+        sy = sty = st2y = syy = 0;
+        solved = false;
+    }
+}
@@ -0,0 +1,211 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Extracts the blobs of a binary foreground mask as primitive arrays of
+ * area, bounding box and centroid.
+ *
+ * The default method labels connected components with
+ * Imgproc.connectedComponentsWithStats and reads the statistics of all
+ * blobs with one bulk Mat.get per table, so the cost in OpenCV calls and
+ * Java objects is the same for one blob or hundreds. The contour method
+ * (findContours plus contourArea and boundingRect per contour) is kept for
+ * comparison: the bindings convert every contour into its own MatOfPoint and
+ * each statistic is a separate native call.
+ *
+ * Areas differ slightly between the methods: components count pixels,
+ * contours measure the polygon through the boundary pixel centres.
+ *
+ * Analysis thread only; the arrays are overwritten by the next extract().
+ */
+public class BlobExtractor {
+
+    public enum Method {
+        CONNECTED_COMPONENTS,
+        CONTOURS
+    }
+
+    private static final int CONNECTIVITY = 8;
+
+    private final Method method;
+
+    // Connected components output, reused
+    private final Mat labels = new Mat();
+    private final Mat stats = new Mat();
+    private final Mat centroids = new Mat();
+    private int[] statsBuffer = new int[0];
+    private double[] centroidBuffer = new double[0];
+
+    // Contour method scratch
+    private final List<MatOfPoint> contours = new ArrayList<>();
+    private final Mat hierarchy = new Mat();
+
+    // Per blob results
+    private int count = 0;
+    private int[] x = new int[16];
+    private int[] y = new int[16];
+    private int[] width = new int[16];
+    private int[] height = new int[16];
+    private double[] area = new double[16];
+    private double[] centroidX = new double[16];
+    private double[] centroidY = new double[16];
+
+    // Calls made into org.opencv, counted where they are made
+    private long openCvCalls = 0;
+
+    public BlobExtractor(Method method) {
+        this.method = method;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Finds the blobs of the mask.
+     *
+     * @param minArea blobs smaller than this (in mask pixels) are skipped
+     * @return number of blobs found
+     */
+    public int extract(Mat binary, double minArea) {
+        count = 0;
+        if (method == Method.CONTOURS) {
+            extractContours(binary, minArea);
+        } else {
+            extractComponents(binary, minArea);
+        }
+        return count;
+    }
+
+    private void extractComponents(Mat binary, double minArea) {
+        int labelCount = Imgproc.connectedComponentsWithStats(binary, labels, stats, centroids,
+            CONNECTIVITY, CvType.CV_32S);
+        // Label 0 is the background
+        if (statsBuffer.length < labelCount * Imgproc.CC_STAT_MAX) {
+            statsBuffer = new int[labelCount * Imgproc.CC_STAT_MAX * 2];
+            centroidBuffer = new double[labelCount * 2 * 2];
+        }
+        stats.get(0, 0, statsBuffer);
+        centroids.get(0, 0, centroidBuffer);
+        openCvCalls += 3;
+
+        for (int label = 1; label < labelCount; label++) {
+            int s = label * Imgproc.CC_STAT_MAX;
+            int pixels = statsBuffer[s + Imgproc.CC_STAT_AREA];
+            if (pixels <= minArea) {
+                continue;
+            }
+            add(statsBuffer[s + Imgproc.CC_STAT_LEFT], statsBuffer[s + Imgproc.CC_STAT_TOP],
+                statsBuffer[s + Imgproc.CC_STAT_WIDTH], statsBuffer[s + Imgproc.CC_STAT_HEIGHT],
+                pixels, centroidBuffer[2 * label], centroidBuffer[2 * label + 1]);
+        }
+    }
+
+    private void extractContours(Mat binary, double minArea) {
+        // Imgproc.findContours appends to the list, it never clears it
+        for (int i = 0; i < contours.size(); i++) {
+            contours.get(i).release();
+            openCvCalls++;
+        }
+        contours.clear();
+        Imgproc.findContours(binary, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        openCvCalls++;
+
+        for (int i = 0; i < contours.size(); i++) {
+            MatOfPoint contour = contours.get(i);
+            double contourArea = Imgproc.contourArea(contour);
+            openCvCalls++;
+            if (contourArea <= minArea) {
+                continue;
+            }
+            Rect box = Imgproc.boundingRect(contour);
+            openCvCalls++;
+            add(box.x, box.y, box.width, box.height, contourArea,
+                box.x + box.width / 2.0, box.y + box.height / 2.0);
+        }
+    }
+
+    private void add(int bx, int by, int bw, int bh, double pixels, double cx, double cy) {
+        if (count == x.length) {
+            int capacity = count * 2;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            width = Arrays.copyOf(width, capacity);
+            height = Arrays.copyOf(height, capacity);
+            area = Arrays.copyOf(area, capacity);
+            centroidX = Arrays.copyOf(centroidX, capacity);
+            centroidY = Arrays.copyOf(centroidY, capacity);
+        }
+        x[count] = bx;
+        y[count] = by;
+        width[count] = bw;
+        height[count] = bh;
+        area[count] = pixels;
+        centroidX[count] = cx;
+        centroidY[count] = cy;
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getX(int i) {
+        return x[i];
+    }
+
+    public int getY(int i) {
+        return y[i];
+    }
+
+    public int getWidth(int i) {
+        return width[i];
+    }
+
+    public int getHeight(int i) {
+        return height[i];
+    }
+
+    public double getArea(int i) {
+        return area[i];
+    }
+
+    /** Centre of mass; the box centre for the contour method. */
+    public double getCentroidX(int i) {
+        return centroidX[i];
+    }
+
+    public double getCentroidY(int i) {
+        return centroidY[i];
+    }
+
+    /**
+     * Calls this class has made into the OpenCV Java API so far, for
+     * comparing the methods. Counts calls at their call sites; one binding
+     * call may cross into native code more than once (findContours also
+     * converts every contour through the Converters helpers).
+     */
+    public long getOpenCvCallCount() {
+        return openCvCalls;
+    }
+
+    public void release() {
+        for (int i = 0; i < contours.size(); i++) {
+            contours.get(i).release();
+        }
+        contours.clear();
+        hierarchy.release();
+        labels.release();
+        stats.release();
+        centroids.release();
+    }
+}
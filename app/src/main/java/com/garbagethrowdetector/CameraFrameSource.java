@@ -0,0 +1,98 @@
+package com.garbagethrowdetector;
+
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.core.Mat;
+
+/**
+ * Live camera frames (e.g. from a JavaCamera2View) as a {@link FrameSource}.
+ *
+ * The camera delivers frames on its own thread; they are copied into a
+ * small {@link FrameQueue} and read() hands them out in order, blocking until
+ * the next frame arrives. Like the analysis worker, the oldest frame is
+ * dropped when the reader falls behind. The preview keeps showing every
+ * camera frame.
+ */
+public class CameraFrameSource implements FrameSource, CameraBridgeViewBase.CvCameraViewListener2 {
+    private static final int QUEUE_CAPACITY = 2;
+
+    private final CameraBridgeViewBase cameraView;
+    private final FrameRotator rotator;
+    private final FrameQueue queue = new FrameQueue(QUEUE_CAPACITY);
+    private long timestampNs = 0;
+
+    /**
+     * @param rotateCode Core.ROTATE_* code applied to analyzed frames, or -1
+     *                   to keep the sensor orientation
+     */
+    public CameraFrameSource(CameraBridgeViewBase cameraView, int rotateCode) {
+        this.cameraView = cameraView;
+        this.rotator = rotateCode >= 0 ? new FrameRotator(rotateCode) : null;
+        cameraView.setCvCameraViewListener(this);
+    }
+
+    public void start() {
+        cameraView.enableView();
+    }
+
+    @Override
+    public void onCameraViewStarted(int width, int height) {
+    }
+
+    @Override
+    public void onCameraViewStopped() {
+    }
+
+    @Override
+    public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
+        Mat rgba = inputFrame.rgba();
+        Mat gray = inputFrame.gray();
+        if (rotator != null) {
+            queue.offer(rotator.rotateGray(gray), rotator.rotateRgba(rgba), inputFrame.timestamp());
+        } else {
+            queue.offer(gray, rgba, inputFrame.timestamp());
+        }
+        return rgba;
+    }
+
+    @Override
+    public boolean read(Mat rgba, Mat gray) {
+        FrameQueue.Slot slot;
+        try {
+            slot = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (slot == null) {
+            return false;
+        }
+        slot.rgba.copyTo(rgba);
+        slot.gray.copyTo(gray);
+        timestampNs = slot.timestampNs;
+        queue.recycle(slot);
+        return true;
+    }
+
+    @Override
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public long getDroppedFrameCount() {
+        return queue.getDroppedCount();
+    }
+
+    /**
+     * Stops the camera and ends the stream. Call from the reading thread, or
+     * after it has stopped, since the frame buffers are freed here.
+     */
+    @Override
+    public void close() {
+        cameraView.disableView();
+        queue.close();
+        queue.release();
+        if (rotator != null) {
+            rotator.release();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Detection for one camera: its frame source, detection processor with
+ * trackers, throw detector and evidence output.
+ *
+ * A reader thread per pipeline pulls frames from the source straight into
+ * the slots of a one-frame {@link FrameQueue}, so a newer frame replaces one
+ * still waiting; analysis runs on a {@link PipelineExecutor} shared with the
+ * other cameras. Fps, latency and event counters are kept per pipeline and
+ * can be read from any thread.
+ */
+public class CameraPipeline {
+
+    public interface Listener {
+        /**
+         * Called on an executor thread after each analyzed frame. The rgba
+         * Mat and the result are only valid for the duration of the call;
+         * rgba is null if the source did not provide one.
+         */
+        void onFrameAnalyzed(CameraPipeline pipeline, Mat rgba, DetectionResult result,
+                             boolean throwDetected);
+    }
+
+    private final String name;
+    private final FrameSource source;
+    private final DetectionProcessor detectionProcessor;
+    private final ThrowDetector throwDetector;
+    private final EvidenceWriter evidenceWriter;
+    private final PipelineExecutor executor;
+    private final FrameQueue queue = new FrameQueue(1);
+    private volatile Listener listener;
+    private Thread readerThread;
+
+    // Guarded by the executor
+    boolean scheduled = false;
+    boolean running = false;
+    boolean closed = false;
+
+    // Executor thread side, one frame at a time
+    private boolean capturing = false;
+    private boolean evidencePending = false;
+
+    // Counters
+    private final LatencyStats queueWaitStats = new LatencyStats("queue wait");
+    private final LatencyStats detectStats = new LatencyStats("detect");
+    private final LatencyStats latencyStats = new LatencyStats("latency");
+    private long framesRead = 0;
+    private long framesAnalyzed = 0;
+    private long firstAnalyzedNs = 0;
+    private long lastAnalyzedNs = 0;
+    private long throwCount = 0;
+    private long evidenceCount = 0;
+    private long failedFrames = 0;
+    private RuntimeException lastFailure;
+
+    /**
+     * @param evidenceWriter receives one frame per throw, or null for none;
+     *                       the pipeline does not start or close it
+     */
+    public CameraPipeline(String name, FrameSource source, DetectionProcessor detectionProcessor,
+                          ThrowDetector throwDetector, EvidenceWriter evidenceWriter,
+                          PipelineExecutor executor) {
+        this.name = name;
+        this.source = source;
+        this.detectionProcessor = detectionProcessor;
+        this.throwDetector = throwDetector;
+        this.evidenceWriter = evidenceWriter;
+        this.executor = executor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DetectionProcessor getDetectionProcessor() {
+        return detectionProcessor;
+    }
+
+    public ThrowDetector getThrowDetector() {
+        return throwDetector;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (readerThread != null) {
+            return;
+        }
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readLoop();
+            }
+        }, "CameraPipeline-" + name);
+        readerThread.start();
+    }
+
+    private void readLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            FrameQueue.Slot slot = queue.acquire();
+            if (slot == null) {
+                return;
+            }
+            if (!source.read(slot.rgba, slot.gray)) {
+                queue.recycle(slot);
+                return;
+            }
+            boolean hasRgba = !slot.rgba.empty();
+            if (!queue.commit(slot, source.getTimestampNs(), hasRgba)) {
+                return;
+            }
+            synchronized (this) {
+                framesRead++;
+            }
+            executor.schedule(this);
+        }
+    }
+
+    /**
+     * Waits until the source is exhausted; pending frames may still be
+     * analyzed afterwards.
+     */
+    public void awaitSourceEnd() throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            t = readerThread;
+        }
+        if (t != null) {
+            t.join();
+        }
+    }
+
+    boolean hasPendingFrame() {
+        return queue.getPendingCount() > 0;
+    }
+
+    // Executor thread, never concurrently for one pipeline
+    void analyzeNext() {
+        FrameQueue.Slot slot = queue.poll();
+        if (slot == null) {
+            return;
+        }
+        try {
+            analyze(slot);
+        } finally {
+            queue.recycle(slot);
+        }
+    }
+
+    private void analyze(FrameQueue.Slot slot) {
+        long start = System.nanoTime();
+        queueWaitStats.record(start - slot.enqueueTimeNs);
+        DetectionResult result = detectionProcessor.detect(slot.gray, slot.timestampNs);
+        detectStats.record(System.nanoTime() - start);
+        boolean throwDetected = throwDetector.detectThrows(
+            result.humanTracks,
+            result.objectTracks,
+            slot.timestampNs,
+            slot.gray.cols(),
+            slot.gray.rows(),
+            detectionProcessor.isOverlayEnabled() ? result.overlay : null
+        );
+
+        // One evidence frame per throw, like the single camera activity. A
+        // gray-only source gives the next frame that has colour.
+        boolean newThrow = throwDetected && !capturing;
+        capturing = throwDetected;
+        if (newThrow && evidenceWriter != null) {
+            evidencePending = true;
+        }
+        boolean saved = false;
+        if (evidencePending && slot.hasRgba) {
+            evidencePending = false;
+            saved = evidenceWriter.submit(slot.rgba, name + "_Litter_Detection_"
+                + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".jpg");
+        }
+
+        Listener l = listener;
+        if (l != null) {
+            l.onFrameAnalyzed(this, slot.hasRgba ? slot.rgba : null, result, throwDetected);
+        }
+
+        long end = System.nanoTime();
+        latencyStats.record(end - slot.enqueueTimeNs);
+        synchronized (this) {
+            if (framesAnalyzed == 0) {
+                firstAnalyzedNs = end;
+            }
+            lastAnalyzedNs = end;
+            framesAnalyzed++;
+            if (newThrow) {
+                throwCount++;
+            }
+            if (saved) {
+                evidenceCount++;
+            }
+        }
+    }
+
+    /**
+     * True while a throw waits for a frame with colour to save as evidence.
+     * Only meaningful from the listener.
+     */
+    public boolean isEvidencePending() {
+        return evidencePending;
+    }
+
+    synchronized void recordFailure(RuntimeException e) {
+        failedFrames++;
+        lastFailure = e;
+    }
+
+    /**
+     * Stops reading, waits for a frame being analyzed and frees the
+     * pipeline's buffers, the source and the detection processor.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            t = readerThread;
+            readerThread = null;
+        }
+        queue.close();
+        if (t != null) {
+            // Unblocks sources that wait for the next frame
+            t.interrupt();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        executor.cancel(this);
+        source.close();
+        queue.release();
+        detectionProcessor.release();
+    }
+
+    /** Frames taken from the source, including those dropped later. */
+    public synchronized long getFramesRead() {
+        return framesRead;
+    }
+
+    public synchronized long getFramesAnalyzed() {
+        return framesAnalyzed;
+    }
+
+    /** Frames replaced by a newer one before a thread was free for them. */
+    public long getDroppedFrameCount() {
+        return queue.getDroppedCount();
+    }
+
+    /** Analyzed frames per second since the first analyzed frame. */
+    public synchronized double getAnalyzedFps() {
+        long spanNs = lastAnalyzedNs - firstAnalyzedNs;
+        return spanNs > 0 ? (framesAnalyzed - 1) * 1e9 / spanNs : 0;
+    }
+
+    public synchronized long getThrowCount() {
+        return throwCount;
+    }
+
+    /** Evidence frames accepted by the writer. */
+    public synchronized long getEvidenceCount() {
+        return evidenceCount;
+    }
+
+    public synchronized long getFailedFrameCount() {
+        return failedFrames;
+    }
+
+    /** Exception of the last failed frame, or null. */
+    public synchronized RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /** Time from a frame being read until a thread started analyzing it. */
+    public LatencyStats getQueueWaitStats() {
+        return queueWaitStats;
+    }
+
+    public LatencyStats getDetectStats() {
+        return detectStats;
+    }
+
+    /** Time from a frame being read until its analysis finished. */
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "%s: %d read, %d analyzed (%.1f fps), %d dropped, latency p50 %.1f ms p95 %.1f ms,"
+                + " %d throws, %d evidence, %d failed",
+            name, getFramesRead(), getFramesAnalyzed(), getAnalyzedFps(), getDroppedFrameCount(),
+            latencyStats.getPercentileMs(50), latencyStats.getPercentileMs(95),
+            getThrowCount(), getEvidenceCount(), getFailedFrameCount());
+    }
+}
@@ -0,0 +1,476 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Records a short video clip around each throw: a pre-roll of the frames
+ * before the event and a post-roll after it.
+ *
+ * Frames are kept in a ring of JPEG encoded images, not raw Mats, so a few
+ * seconds of history cost a few megabytes. The ring is capped both in
+ * frames and in bytes; when the byte cap is hit the oldest frames are
+ * evicted first. Once the post-roll is complete the clip is decoded and
+ * written as MJPEG .avi through VideoWriter.
+ *
+ * offer() only copies the frame into one of two input slots; downscaling,
+ * encoding and writing all happen on the recorder thread. Frames arriving
+ * faster than the clip frame rate are skipped before the copy.
+ *
+ * The post-roll ends on the recorder's own clock, so a clip is written on
+ * time even when frames stop arriving, and a frame stamped after the end of
+ * the post-roll (e.g. the first one after a pause) never goes into it.
+ */
+public class ClipRecorder {
+
+    public interface Listener {
+        void onClipSaved(File file, int frameCount);
+
+        void onClipFailed(File file, Exception error);
+    }
+
+    private static class Entry {
+        byte[] data = new byte[0];
+        int length;
+        long timestampNs;
+    }
+
+    private static class Input {
+        final Mat rgba = new Mat();
+        long timestampNs;
+    }
+
+    private static final int INPUT_SLOTS = 2;
+    private static final int JPEG_QUALITY = 80;
+
+    private final File directory;
+    private final Listener listener;
+
+    // Configuration, set before start()
+    private double preRollSeconds = 3.0;
+    private double postRollSeconds = 2.0;
+    private double fps = 10.0;
+    private int maxBufferBytes = 8 * 1024 * 1024;
+    private int clipWidth = 640;
+
+    // Camera/analysis thread side
+    private final Input[] inputs = new Input[INPUT_SLOTS];
+    private final ArrayDeque<Input> freeInputs = new ArrayDeque<>(INPUT_SLOTS);
+    private final ArrayDeque<Input> pendingInputs = new ArrayDeque<>(INPUT_SLOTS);
+    private long lastOfferedNs = 0;
+    private boolean hasOffered = false;
+    private String triggerName;
+    private long triggerTimestampNs;
+    // From trigger() until the clip is written
+    private boolean recording = false;
+    private boolean closed = false;
+    private Thread thread;
+
+    // Recorder thread only
+    private Entry[] ring;
+    private int ringHead = 0;
+    private int ringCount = 0;
+    private long bufferedBytes = 0;
+    private final Mat scaled = new Mat();
+    private final Mat bgr = new Mat();
+    private final Size scaledSize = new Size();
+    private final MatOfByte encoded = new MatOfByte();
+    private final MatOfInt encodeParams = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
+    private final Mat packed = new Mat();
+    private String recordingName;
+    private long recordingEventNs;
+    // System.nanoTime() at which the post-roll is over
+    private long recordingDeadlineNs;
+    // System.nanoTime() minus frame timestamp of the last stored frame
+    private long clockOffsetNs;
+    private boolean hasClockOffset = false;
+
+    // Counters
+    private long droppedInputs = 0;
+    private long evictedForCap = 0;
+    private long clipsWritten = 0;
+    private long mergedTriggers = 0;
+
+    public ClipRecorder(File directory, Listener listener) {
+        this.directory = directory;
+        this.listener = listener;
+        for (int i = 0; i < INPUT_SLOTS; i++) {
+            inputs[i] = new Input();
+            freeInputs.add(inputs[i]);
+        }
+    }
+
+    public void setPreRollSeconds(double seconds) {
+        this.preRollSeconds = Math.max(0, seconds);
+    }
+
+    public void setPostRollSeconds(double seconds) {
+        this.postRollSeconds = Math.max(0, seconds);
+    }
+
+    /** Frame rate of the recorded clip; faster input is subsampled. */
+    public void setFps(double fps) {
+        this.fps = Math.max(1, fps);
+    }
+
+    /** Upper bound on the encoded frames held in memory. */
+    public void setMaxBufferBytes(int bytes) {
+        this.maxBufferBytes = Math.max(1, bytes);
+    }
+
+    /** Width clips are recorded at; 0 keeps the input resolution. */
+    public void setClipWidth(int width) {
+        this.clipWidth = Math.max(0, width);
+    }
+
+    public synchronized void start() {
+        if (thread != null || closed) {
+            return;
+        }
+        int frames = (int) Math.ceil((preRollSeconds + postRollSeconds) * fps) + 2;
+        ring = new Entry[frames];
+        for (int i = 0; i < frames; i++) {
+            ring[i] = new Entry();
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "ClipRecorder");
+        thread.start();
+    }
+
+    /**
+     * Whether {@link #offer(Mat, long)} would keep a frame with this
+     * timestamp, so callers can skip preparing frames above the clip frame
+     * rate.
+     */
+    public synchronized boolean wantsFrame(long timestampNs) {
+        if (closed || thread == null) {
+            return false;
+        }
+        long sinceLastNs = timestampNs - lastOfferedNs;
+        return !hasOffered || sinceLastNs < 0 || sinceLastNs >= (long) (1e9 / fps);
+    }
+
+    /**
+     * Whether a clip has been requested and not written yet. Frames should
+     * keep coming until then, whatever else would skip them.
+     */
+    public synchronized boolean isRecording() {
+        return recording && !closed && thread != null;
+    }
+
+    /**
+     * Hands a frame to the recorder. Cheap: frames above the clip frame rate
+     * are skipped, the rest are copied; nothing is encoded on the caller's
+     * thread.
+     */
+    public void offer(Mat rgba, long timestampNs) {
+        Input input;
+        synchronized (this) {
+            if (!wantsFrame(timestampNs)) {
+                return;
+            }
+            input = freeInputs.pollFirst();
+            if (input == null) {
+                // Recorder busy (e.g. writing a clip), keep the newest frame
+                input = pendingInputs.pollFirst();
+                droppedInputs++;
+                if (input == null) {
+                    return;
+                }
+            }
+            lastOfferedNs = timestampNs;
+            hasOffered = true;
+        }
+
+        rgba.copyTo(input.rgba);
+        input.timestampNs = timestampNs;
+
+        synchronized (this) {
+            if (closed) {
+                freeInputs.add(input);
+                return;
+            }
+            pendingInputs.addLast(input);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Requests a clip around the given event time. A trigger during the
+     * post-roll of a clip in progress is merged into that clip.
+     */
+    public synchronized void trigger(String name, long timestampNs) {
+        if (triggerName != null) {
+            mergedTriggers++;
+        }
+        triggerName = name;
+        triggerTimestampNs = timestampNs;
+        recording = true;
+        notifyAll();
+    }
+
+    private void runLoop() {
+        while (true) {
+            Input input;
+            String newTrigger = null;
+            long newTriggerNs = 0;
+            boolean postRollOver = false;
+            synchronized (this) {
+                while (pendingInputs.isEmpty() && !closed && triggerName == null) {
+                    try {
+                        if (recordingName == null) {
+                            wait();
+                            continue;
+                        }
+                        long remainingNs = recordingDeadlineNs - System.nanoTime();
+                        if (remainingNs <= 0) {
+                            postRollOver = true;
+                            break;
+                        }
+                        wait(remainingNs / 1000000 + 1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                input = pendingInputs.pollFirst();
+                if (triggerName != null) {
+                    newTrigger = triggerName;
+                    newTriggerNs = triggerTimestampNs;
+                    triggerName = null;
+                }
+            }
+
+            if (newTrigger != null) {
+                if (recordingName == null) {
+                    startRecording(newTrigger, newTriggerNs);
+                } else {
+                    synchronized (this) {
+                        mergedTriggers++;
+                    }
+                }
+            }
+
+            // Written before a frame from past the post-roll is stored, so
+            // the clip ends with the last frame inside it
+            if (recordingName != null && (postRollOver
+                    || (input != null && input.timestampNs >= recordingEventNs + postRollNs()))) {
+                writeClip();
+            }
+
+            if (input == null) {
+                if (!closed()) {
+                    continue;
+                }
+                // Closed: flush a clip in progress with whatever post-roll we have
+                if (recordingName != null) {
+                    writeClip();
+                }
+                return;
+            }
+
+            long timestampNs = input.timestampNs;
+            try {
+                store(input.rgba, timestampNs);
+            } finally {
+                synchronized (this) {
+                    freeInputs.add(input);
+                }
+            }
+        }
+    }
+
+    private synchronized boolean closed() {
+        return closed;
+    }
+
+    private long postRollNs() {
+        return (long) (postRollSeconds * 1e9);
+    }
+
+    private void startRecording(String name, long eventNs) {
+        recordingName = name;
+        recordingEventNs = eventNs;
+        // Frame timestamps come from the camera clock; map the end of the
+        // post-roll onto System.nanoTime() through the last stored frame.
+        // Two frame intervals of grace leave the normal end to the frames.
+        long graceNs = (long) (2e9 / fps);
+        long endNs = hasClockOffset
+            ? eventNs + postRollNs() + clockOffsetNs
+            : System.nanoTime() + postRollNs();
+        recordingDeadlineNs = endNs + graceNs;
+    }
+
+    private void store(Mat rgba, long timestampNs) {
+        Mat source = rgba;
+        if (clipWidth > 0 && rgba.cols() > clipWidth) {
+            scaledSize.width = clipWidth;
+            scaledSize.height = Math.round((double) rgba.rows() * clipWidth / rgba.cols());
+            Imgproc.resize(rgba, scaled, scaledSize, 0, 0, Imgproc.INTER_AREA);
+            source = scaled;
+        }
+        Imgproc.cvtColor(source, bgr, Imgproc.COLOR_RGBA2BGR);
+        if (!Imgcodecs.imencode(".jpg", bgr, encoded, encodeParams)) {
+            return;
+        }
+        int length = (int) encoded.total();
+
+        // Outside a recording only the pre-roll is worth keeping
+        long keepFromNs = recordingName != null
+            ? recordingEventNs - (long) (preRollSeconds * 1e9)
+            : timestampNs - (long) (preRollSeconds * 1e9);
+        while (ringCount > 0 && ring[ringHead].timestampNs < keepFromNs) {
+            evictOldest();
+        }
+        while (ringCount > 0 && (ringCount == ring.length || bufferedBytes + length > maxBufferBytes)) {
+            if (ringCount < ring.length) {
+                synchronized (this) {
+                    evictedForCap++;
+                }
+            }
+            evictOldest();
+        }
+
+        Entry entry = ring[(ringHead + ringCount) % ring.length];
+        if (entry.data.length < length) {
+            entry.data = new byte[length + length / 4];
+        }
+        encoded.get(0, 0, entry.data);
+        clockOffsetNs = System.nanoTime() - timestampNs;
+        hasClockOffset = true;
+        entry.length = length;
+        entry.timestampNs = timestampNs;
+        ringCount++;
+        bufferedBytes += length;
+    }
+
+    private void evictOldest() {
+        bufferedBytes -= ring[ringHead].length;
+        ringHead = (ringHead + 1) % ring.length;
+        ringCount--;
+    }
+
+    private void writeClip() {
+        File file = new File(directory, recordingName + ".avi");
+        long fromNs = recordingEventNs - (long) (preRollSeconds * 1e9);
+        recordingName = null;
+        synchronized (this) {
+            // Unless another trigger is already waiting for the next clip
+            recording = triggerName != null;
+        }
+
+        VideoWriter writer = null;
+        int written = 0;
+        try {
+            for (int i = 0; i < ringCount; i++) {
+                Entry entry = ring[(ringHead + i) % ring.length];
+                if (entry.timestampNs < fromNs) {
+                    continue;
+                }
+                packed.create(1, entry.length, CvType.CV_8UC1);
+                packed.put(0, 0, entry.data, 0, entry.length);
+                Mat frame = Imgcodecs.imdecode(packed, Imgcodecs.IMREAD_COLOR);
+                try {
+                    if (frame.empty()) {
+                        continue;
+                    }
+                    if (writer == null) {
+                        writer = new VideoWriter(file.getPath(), VideoWriter.fourcc('M', 'J', 'P', 'G'),
+                            fps, frame.size(), true);
+                        if (!writer.isOpened()) {
+                            throw new IOException("Cannot open video writer for " + file);
+                        }
+                    }
+                    writer.write(frame);
+                    written++;
+                } finally {
+                    frame.release();
+                }
+            }
+            if (writer == null) {
+                throw new IOException("No frames buffered for " + file);
+            }
+            writer.release();
+            writer = null;
+            synchronized (this) {
+                clipsWritten++;
+            }
+            if (listener != null) {
+                listener.onClipSaved(file, written);
+            }
+        } catch (Exception e) {
+            if (listener != null) {
+                listener.onClipFailed(file, e);
+            }
+        } finally {
+            if (writer != null) {
+                writer.release();
+            }
+        }
+    }
+
+    /**
+     * Stops recording. A clip whose post-roll is still running is written
+     * with the frames received so far. Blocks until the recorder thread has
+     * finished.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            t = thread;
+            thread = null;
+            notifyAll();
+        }
+        if (t != null) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            for (Input input : inputs) {
+                input.rgba.release();
+            }
+            freeInputs.clear();
+            pendingInputs.clear();
+        }
+        scaled.release();
+        bgr.release();
+        encoded.release();
+        encodeParams.release();
+        packed.release();
+        ring = null;
+    }
+
+    public synchronized long getDroppedInputCount() {
+        return droppedInputs;
+    }
+
+    /** Frames evicted before their time because of the byte cap. */
+    public synchronized long getEvictedForCapCount() {
+        return evictedForCap;
+    }
+
+    public synchronized long getClipsWritten() {
+        return clipsWritten;
+    }
+
+    public synchronized long getMergedTriggerCount() {
+        return mergedTriggers;
+    }
+}
@@ -3,20 +3,17 @@ package com.garbagethrowdetector;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfRect;
-import org.opencv.core.Point;
 import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
+import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
 import org.opencv.objdetect.Objdetect;
 
-import android.content.Context;
-import android.content.res.AssetManager;
-import android.util.Log;
-
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DetectionProcessor {
     private static final String TAG = "DetectionProcessor";
@@ -26,127 +23,498 @@ public class DetectionProcessor {
     private boolean cascadesLoaded = false;
     
     // For simplified object detection (using motion/contour detection)
-    private Mat previousFrame;
-    private boolean isFirstFrame = true;
+    private MotionSegmenter segmenter;
+    private volatile MotionSegmenter pendingSegmenter;
+    private int appliedSensitivity = -1;
+    
+    // Persistent IDs across frames for people and thrown objects
+    private static final int MAX_MISSED_FRAMES = 5;
+    private final ObjectTracker humanTracker = new ObjectTracker(MAX_MISSED_FRAMES, 2);
+    private final ObjectTracker objectTracker = new ObjectTracker(MAX_MISSED_FRAMES, 2);
+    private volatile boolean trackingResetRequested = false;
+    
+    // Sub-pixel object motion from sparse optical flow on top of the tracker
+    private final ObjectFlowTracker objectFlow = new ObjectFlowTracker();
+    private volatile boolean opticalFlowEnabled = true;
+    
+    // Scratch buffers reused across frames (no per-frame Mat allocation)
+    private final ScratchMatPool scratch;
     
     // Sensitivity parameters (0-100, default 50)
-    private int humanSensitivity = 50;
+    private volatile int humanSensitivity = 50;
+    
+    // Motion analysis runs on a frame downscaled to this width (0 = full
+    // resolution). Results are mapped back to the input frame coordinates.
+    public static final int DEFAULT_ANALYSIS_WIDTH = 320;
+    private int analysisWidth = DEFAULT_ANALYSIS_WIDTH;
+    private double analysisScale = 1.0;
+    private final Size analysisSize = new Size();
+    
+    // Region of interest; analysis is cropped to its bounding box and the
+    // mask clears excluded pixels before morphology
+    private RoiMask roiMask;
+    private volatile RoiMask pendingRoiMask;
+    private volatile boolean roiMaskChanged = false;
+    private final Rect appliedCrop = new Rect();
+    private int cropX = 0;
+    private int cropY = 0;
+    // Area of the whole frame at analysis resolution; thresholds are
+    // relative to it even when only a crop is analyzed
+    private double analysisFrameArea;
+    
+    // Contour area thresholds as a fraction of the analyzed frame area, so
+    // results do not depend on resolution. Equivalent pixel values on a
+    // 1280x720 frame are given for reference.
+    private static final double MIN_AREA_BASE = 0.0022;          // 2000 px
+    private static final double MIN_AREA_RANGE = 0.0054;         // 5000 px
+    private static final double MIN_HUMAN_AREA_BASE = 0.0087;    // 8000 px
+    private static final double MIN_HUMAN_AREA_RANGE = 0.0163;   // 15000 px
+    private static final double MIN_GARBAGE_AREA = 0.0054;       // 5000 px
+    private static final double MAX_GARBAGE_AREA = 0.0163;       // 15000 px
+    
+    // Optional person detector replacing the blob shape heuristic for humans
+    private PersonDetectionWorker personWorker;
+    private volatile PersonDetectionWorker pendingPersonWorker;
+    private volatile boolean personWorkerChanged = false;
+    // Blob statistics of the cleaned foreground mask
+    private BlobExtractor blobExtractor = new BlobExtractor(BlobExtractor.Method.CONNECTED_COMPONENTS);
+    private volatile BlobExtractor.Method pendingBlobMethod;
+    
+    // Boxes of all blobs above the minimum area, handed to the person detector
+    private final List<Rect> motionRegions = new ArrayList<>();
+    // Reused for every frame: the result and the blob boxes it refers to
+    private final DetectionResult result = new DetectionResult();
+    private final List<Rect> rectPool = new ArrayList<>();
+    // Header onto the ROI crop of the input frame, kept while the frame
+    // buffer and crop stay the same
+    private Mat cropHeader;
+    private long cropHeaderData;
+    private final Rect cropHeaderRect = new Rect();
+    
+    // Whether results carry an overlay description; off for headless runs
+    private volatile boolean overlayEnabled = true;
     
     public DetectionProcessor() {
         // Note: For production, you would need to load trained cascade classifiers
         // For this implementation, we'll use motion detection and contour analysis
         // to detect humans and objects
-        previousFrame = new Mat();
+        segmenter = new FrameDifferenceSegmenter();
+        scratch = new ScratchMatPool();
     }
     
     public void setHumanSensitivity(int sensitivity) {
         this.humanSensitivity = Math.max(0, Math.min(100, sensitivity));
     }
     
+    /**
+     * Replaces the motion segmentation stage. Takes effect on the next frame,
+     * on the thread that calls detect(); the old segmenter is released there.
+     */
+    public void setMotionSegmenter(MotionSegmenter segmenter) {
+        this.pendingSegmenter = segmenter;
+    }
+    
+    /**
+     * Sets the width motion analysis runs at. Frames wider than this are
+     * downscaled before processing; 0 disables downscaling.
+     */
+    public void setAnalysisWidth(int width) {
+        this.analysisWidth = Math.max(0, width);
+    }
+    
+    /**
+     * Whether to describe tracks in {@link DetectionResult#overlay}. Nothing
+     * is ever drawn into the analyzed frames.
+     */
+    public void setOverlayEnabled(boolean enabled) {
+        this.overlayEnabled = enabled;
+    }
+    
+    public boolean isOverlayEnabled() {
+        return overlayEnabled;
+    }
+    
+    /**
+     * How blobs are extracted from the foreground mask; connected components
+     * by default. Takes effect on the next frame.
+     */
+    public void setBlobMethod(BlobExtractor.Method method) {
+        this.pendingBlobMethod = method;
+    }
+    
+    /**
+     * Whether object positions and velocities are refined with optical flow
+     * (on by default). Without it they come from the blob centroids.
+     */
+    public void setOpticalFlowEnabled(boolean enabled) {
+        this.opticalFlowEnabled = enabled;
+    }
+    
+    /**
+     * Restricts analysis to a region of interest, or removes the
+     * restriction when null. Takes effect on the next frame, on the thread
+     * that calls detect(); the previous mask is released there.
+     */
+    public void setRoiMask(RoiMask mask) {
+        pendingRoiMask = mask;
+        roiMaskChanged = true;
+    }
+    
+    /**
+     * Detects humans with a person detector instead of by blob shape, or
+     * goes back to the shape heuristic when null. The worker is started
+     * here and closed when it is replaced or on release(). Takes effect on
+     * the next frame.
+     */
+    public void setPersonDetection(PersonDetectionWorker worker) {
+        if (worker != null) {
+            worker.start();
+        }
+        pendingPersonWorker = worker;
+        personWorkerChanged = true;
+    }
+    
     public DetectionResult detect(Mat gray, Mat rgba) {
-        DetectionResult result = new DetectionResult();
+        return detect(gray, System.nanoTime());
+    }
+    
+    /**
+     * Once tracks and buffers have settled this allocates nothing, on the
+     * Java heap or natively, with the default connected-components blob
+     * extraction and without a person detector.
+     *
+     * @param timestampNs capture time of the frame, carried into the result
+     * @return the result for this frame; reused, so only valid until the
+     *         next call
+     */
+    public DetectionResult detect(Mat gray, long timestampNs) {
+        updateSegmenter();
+        updateRoiMask();
+        updatePersonWorker();
+        updateBlobExtractor();
+        
+        // Pixels outside the ROI bounding box are never touched
+        Rect crop = roiMask != null ? roiMask.getBounds(gray.cols(), gray.rows()) : null;
+        boolean cropped = crop != null && (crop.width < gray.cols() || crop.height < gray.rows());
+        if (!cropped) {
+            crop = null;
+        }
+        updateCrop(crop, gray);
+        Mat region = cropped ? cropRegion(gray, crop) : gray;
+        Mat analysisFrame = toAnalysisResolution(gray, region);
+        scratch.ensureSize(analysisFrame.cols(), analysisFrame.rows());
         
-        if (isFirstFrame) {
-            gray.copyTo(previousFrame);
-            isFirstFrame = false;
+        // Foreground mask; false while the background model is seeding
+        Mat foreground = scratch.thresh();
+        result.reset(timestampNs);
+        if (!segmenter.apply(analysisFrame, foreground)) {
+            result.overlay.reset(gray.cols(), gray.rows());
             return result;
         }
+        if (roiMask != null) {
+            Mat mask = roiMask.getMask(gray.cols(), gray.rows(),
+                cropped ? crop : roiMask.getBounds(gray.cols(), gray.rows()),
+                foreground.cols(), foreground.rows());
+            if (mask != null) {
+                Core.bitwise_and(foreground, mask, foreground);
+            }
+        }
         
         // Detect human using full-body detection (simplified approach)
-        result = detectHumanAndObjects(gray, rgba);
+        detectHumanAndObjects(foreground);
         
-        // Update previous frame
-        gray.copyTo(previousFrame);
+        if (trackingResetRequested) {
+            trackingResetRequested = false;
+            humanTracker.reset();
+            objectTracker.reset();
+            objectFlow.reset();
+        }
+        if (personWorker != null) {
+            personWorker.offer(gray, motionRegions);
+            List<Rect> people = personWorker.poll();
+            if (people != null) {
+                setHumans(result, people);
+                result.humanTracks = humanTracker.update(people);
+            } else {
+                // No fresh detection: tracks follow their motion model
+                result.humanTracks = humanTracker.coast();
+            }
+        } else {
+            result.humanTracks = humanTracker.update(result.humans);
+        }
+        result.objectTracks = objectTracker.update(result.objects);
+        if (opticalFlowEnabled) {
+            result.objectTracks = objectFlow.refine(gray, result.objectTracks);
+        } else {
+            objectFlow.reset();
+        }
         
+        result.overlay.reset(gray.cols(), gray.rows());
+        if (overlayEnabled) {
+            describeTracks(result.overlay, result.humanTracks, "Human #", Overlay.HUMAN_COLOR, 3);
+            describeTracks(result.overlay, result.objectTracks, "Object #", Overlay.OBJECT_COLOR, 2);
+        }
         return result;
     }
     
-    private DetectionResult detectHumanAndObjects(Mat gray, Mat rgba) {
-        DetectionResult result = new DetectionResult();
-        
-        // Frame difference for motion detection
-        Mat frameDiff = new Mat();
-        Core.absdiff(previousFrame, gray, frameDiff);
-        
-        // Threshold to create binary image (adjust based on sensitivity)
-        Mat thresh = new Mat();
-        int threshold = (int)(30 * (100 - humanSensitivity) / 100.0) + 10; // Lower threshold = more sensitive
-        Imgproc.threshold(frameDiff, thresh, threshold, 255, Imgproc.THRESH_BINARY);
+    private static void describeTracks(Overlay overlay, java.util.List<TrackedObject> tracks,
+                                       String label, int color, float lineWidth) {
+        for (int i = 0; i < tracks.size(); i++) {
+            TrackedObject track = tracks.get(i);
+            overlay.addBox(track.rect.x, track.rect.y, track.rect.width, track.rect.height,
+                color, lineWidth, label, track.id);
+        }
+    }
+    
+    // Applies segmenter and sensitivity changes on the analysis thread
+    private void updateSegmenter() {
+        MotionSegmenter next = pendingSegmenter;
+        if (next != null) {
+            pendingSegmenter = null;
+            segmenter.release();
+            segmenter = next;
+            appliedSensitivity = -1;
+        }
+        int sensitivity = humanSensitivity;
+        if (sensitivity != appliedSensitivity) {
+            segmenter.setSensitivity(sensitivity);
+            appliedSensitivity = sensitivity;
+        }
+    }
+    
+    private static void setHumans(DetectionResult result, List<Rect> people) {
+        // Indexed loop: addAll() copies into a temporary array
+        for (int i = 0; i < people.size(); i++) {
+            result.humans.add(people.get(i));
+        }
+        if (!people.isEmpty()) {
+            Rect first = people.get(0);
+            result.hasHuman = true;
+            result.humanRect = first;
+            result.humanPosition.x = first.x + first.width / 2.0;
+            result.humanPosition.y = first.y + first.height / 2.0;
+        }
+    }
+    
+    private void updateBlobExtractor() {
+        BlobExtractor.Method method = pendingBlobMethod;
+        if (method != null) {
+            pendingBlobMethod = null;
+            if (method != blobExtractor.getMethod()) {
+                blobExtractor.release();
+                blobExtractor = new BlobExtractor(method);
+            }
+        }
+    }
+    
+    // Swaps the person detector on the analysis thread
+    private void updatePersonWorker() {
+        if (!personWorkerChanged) {
+            return;
+        }
+        personWorkerChanged = false;
+        PersonDetectionWorker next = pendingPersonWorker;
+        if (personWorker != null && personWorker != next) {
+            personWorker.close();
+        }
+        personWorker = next;
+        humanTracker.reset();
+    }
+    
+    // Applies a new ROI mask on the analysis thread
+    private void updateRoiMask() {
+        if (!roiMaskChanged) {
+            return;
+        }
+        roiMaskChanged = false;
+        RoiMask next = pendingRoiMask;
+        if (roiMask != null && roiMask != next) {
+            roiMask.release();
+        }
+        roiMask = next != null && !next.isEmpty() ? next : null;
+    }
+    
+    // A different crop invalidates the background model
+    private void updateCrop(Rect crop, Mat gray) {
+        int x = crop != null ? crop.x : 0;
+        int y = crop != null ? crop.y : 0;
+        int width = crop != null ? crop.width : gray.cols();
+        int height = crop != null ? crop.height : gray.rows();
+        if (x != appliedCrop.x || y != appliedCrop.y
+                || width != appliedCrop.width || height != appliedCrop.height) {
+            appliedCrop.x = x;
+            appliedCrop.y = y;
+            appliedCrop.width = width;
+            appliedCrop.height = height;
+            segmenter.reset();
+        }
+        cropX = x;
+        cropY = y;
+    }
+    
+    // Header onto the crop of gray. submat() allocates a Java Mat, so the
+    // header is only rebuilt when the frame buffer or the crop changes.
+    private Mat cropRegion(Mat gray, Rect crop) {
+        if (cropHeader == null || cropHeaderData != gray.dataAddr()
+                || cropHeaderRect.x != crop.x || cropHeaderRect.y != crop.y
+                || cropHeaderRect.width != crop.width || cropHeaderRect.height != crop.height
+                || crop.x + crop.width > gray.cols() || crop.y + crop.height > gray.rows()) {
+            releaseCropHeader();
+            cropHeader = gray.submat(crop);
+            cropHeaderData = gray.dataAddr();
+            cropHeaderRect.x = crop.x;
+            cropHeaderRect.y = crop.y;
+            cropHeaderRect.width = crop.width;
+            cropHeaderRect.height = crop.height;
+        }
+        return cropHeader;
+    }
+    
+    private void releaseCropHeader() {
+        if (cropHeader != null) {
+            cropHeader.release();
+            cropHeader = null;
+        }
+    }
+    
+    // Downscales the region of gray to be analyzed; the scale is set by the
+    // full frame width so thresholds do not depend on the crop
+    private Mat toAnalysisResolution(Mat gray, Mat region) {
+        if (analysisWidth <= 0 || gray.cols() <= analysisWidth) {
+            analysisScale = 1.0;
+            analysisFrameArea = (double) gray.cols() * gray.rows();
+            if (region == gray) {
+                return gray;
+            }
+            Mat analysisFrame = scratch.analysisFrame();
+            region.copyTo(analysisFrame);
+            return analysisFrame;
+        }
+        analysisScale = analysisWidth / (double) gray.cols();
+        analysisFrameArea = (double) gray.cols() * gray.rows() * analysisScale * analysisScale;
+        analysisSize.width = Math.max(1, Math.round(region.cols() * analysisScale));
+        analysisSize.height = Math.max(1, Math.round(region.rows() * analysisScale));
+        Mat analysisFrame = scratch.analysisFrame();
+        Imgproc.resize(region, analysisFrame, analysisSize, 0, 0, Imgproc.INTER_AREA);
+        return analysisFrame;
+    }
+    
+    // Maps a rect from analysis coordinates back to the input frame, in place
+    private void mapToFrame(Rect rect) {
+        if (analysisScale != 1.0) {
+            double inverse = 1.0 / analysisScale;
+            rect.x = (int) Math.round(rect.x * inverse);
+            rect.y = (int) Math.round(rect.y * inverse);
+            rect.width = (int) Math.round(rect.width * inverse);
+            rect.height = (int) Math.round(rect.height * inverse);
+        }
+        rect.x += cropX;
+        rect.y += cropY;
+    }
+    
+    // Blob boxes are taken from a pool, one slot per blob of this frame
+    private Rect pooledRect(int index) {
+        if (index == rectPool.size()) {
+            rectPool.add(new Rect());
+        }
+        return rectPool.get(index);
+    }
+    
+    private void detectHumanAndObjects(Mat thresh) {
         
         // Morphological operations to clean up
-        Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new org.opencv.core.Size(5, 5));
+        Mat kernel = scratch.kernel();
         Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_CLOSE, kernel);
         Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_OPEN, kernel);
         
-        // Find contours
-        java.util.List<org.opencv.core.MatOfPoint> contours = new java.util.ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(thresh, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-        
-        // Analyze contours to detect humans and objects
+        // Analyze blobs to detect humans and objects
         // Adjust thresholds based on sensitivity (higher sensitivity = lower thresholds)
-        double minArea = 5000 * (100 - humanSensitivity) / 100.0 + 2000;
-        double minHumanArea = 15000 * (100 - humanSensitivity) / 100.0 + 8000;
+        double frameArea = analysisFrameArea;
+        double minArea = frameArea * (MIN_AREA_RANGE * (100 - humanSensitivity) / 100.0 + MIN_AREA_BASE);
+        double minHumanArea = frameArea * (MIN_HUMAN_AREA_RANGE * (100 - humanSensitivity) / 100.0 + MIN_HUMAN_AREA_BASE);
+        double minGarbageArea = frameArea * MIN_GARBAGE_AREA;
+        double maxGarbageArea = frameArea * MAX_GARBAGE_AREA;
         double minAspectRatio = 1.5 - (humanSensitivity / 200.0); // More lenient with higher sensitivity
         double maxAspectRatio = 3.5 + (humanSensitivity / 100.0);
+        // With a person detector, humans come from it and tall blobs are
+        // only reported as motion
+        boolean shapeHumans = personWorker == null;
+        motionRegions.clear();
         
-        for (org.opencv.core.MatOfPoint contour : contours) {
-            double area = Imgproc.contourArea(contour);
+        // Statistics of all blobs above minArea in a few native calls
+        int blobs = blobExtractor.extract(thresh, minArea);
+        for (int i = 0; i < blobs; i++) {
+            double area = blobExtractor.getArea(i);
+            Rect boundingRect = pooledRect(i);
+            boundingRect.x = blobExtractor.getX(i);
+            boundingRect.y = blobExtractor.getY(i);
+            boundingRect.width = blobExtractor.getWidth(i);
+            boundingRect.height = blobExtractor.getHeight(i);
+            double aspectRatio = (double) boundingRect.height / boundingRect.width;
+            double extent = area / (boundingRect.width * boundingRect.height);
+            // Shape tests are scale invariant; positions are reported
+            // in input frame coordinates
+            mapToFrame(boundingRect);
+            motionRegions.add(boundingRect);
             
-            if (area > minArea) {
-                Rect boundingRect = Imgproc.boundingRect(contour);
-                double aspectRatio = (double) boundingRect.height / boundingRect.width;
-                double extent = area / (boundingRect.width * boundingRect.height);
-                
-                // Human detection: typically taller than wide, moderate extent
-                if (aspectRatio > minAspectRatio && aspectRatio < maxAspectRatio && 
-                    extent > 0.25 && area > minHumanArea) {
-                    result.hasHuman = true;
-                    result.humanPosition = new Point(
-                        boundingRect.x + boundingRect.width / 2.0,
-                        boundingRect.y + boundingRect.height / 2.0
-                    );
-                    result.humanRect = boundingRect;
-                    
-                    // Draw rectangle around human
-                    Imgproc.rectangle(rgba, boundingRect.tl(), boundingRect.br(), 
-                        new Scalar(0, 255, 0), 3);
-                    Imgproc.putText(rgba, "Human", new Point(boundingRect.x, boundingRect.y - 10),
-                        Imgproc.FONT_HERSHEY_SIMPLEX, 0.7, new Scalar(0, 255, 0), 2);
-                }
-                // Object/garbage detection: smaller, can be various shapes
-                else if (area > 5000 && area < 15000 && extent > 0.4) {
-                    result.hasGarbage = true;
-                    result.garbagePosition = new Point(
-                        boundingRect.x + boundingRect.width / 2.0,
-                        boundingRect.y + boundingRect.height / 2.0
-                    );
-                    result.garbageRect = boundingRect;
-                    
-                    // Draw rectangle around object
-                    Imgproc.rectangle(rgba, boundingRect.tl(), boundingRect.br(), 
-                        new Scalar(255, 0, 0), 2);
-                    Imgproc.putText(rgba, "Object", new Point(boundingRect.x, boundingRect.y - 10),
-                        Imgproc.FONT_HERSHEY_SIMPLEX, 0.6, new Scalar(255, 0, 0), 2);
+            // Human detection: typically taller than wide, moderate extent
+            if (aspectRatio > minAspectRatio && aspectRatio < maxAspectRatio && 
+                extent > 0.25 && area > minHumanArea) {
+                if (!shapeHumans) {
+                    continue;
                 }
+                result.hasHuman = true;
+                result.humanPosition.x = boundingRect.x + boundingRect.width / 2.0;
+                result.humanPosition.y = boundingRect.y + boundingRect.height / 2.0;
+                result.humanRect = boundingRect;
+                result.humans.add(boundingRect);
+            }
+            // Object/garbage detection: smaller, can be various shapes
+            else if (area > minGarbageArea && area < maxGarbageArea && extent > 0.4) {
+                result.hasGarbage = true;
+                result.garbagePosition.x = boundingRect.x + boundingRect.width / 2.0;
+                result.garbagePosition.y = boundingRect.y + boundingRect.height / 2.0;
+                result.garbageRect = boundingRect;
+                result.objects.add(boundingRect);
             }
         }
-        
-        // Clean up
-        frameDiff.release();
-        thresh.release();
-        kernel.release();
-        hierarchy.release();
-        for (org.opencv.core.MatOfPoint contour : contours) {
-            contour.release();
-        }
-        
-        return result;
+    }
+    
+    /**
+     * Number of native buffer (re)allocations done by the scratch pool.
+     * Constant after the first frame as long as the resolution is stable.
+     */
+    public long getScratchAllocationCount() {
+        return scratch.getAllocationCount();
+    }
+    
+    /**
+     * OpenCV calls made by blob extraction so far; with connected components
+     * a fixed three per frame.
+     */
+    public long getBlobOpenCvCallCount() {
+        return blobExtractor.getOpenCvCallCount();
+    }
+    
+    /** Drops all tracks; applied on the analysis thread at the next frame. */
+    public void resetTracking() {
+        trackingResetRequested = true;
     }
     
     public void release() {
-        if (previousFrame != null) {
-            previousFrame.release();
+        humanTracker.reset();
+        objectTracker.reset();
+        objectFlow.release();
+        blobExtractor.release();
+        segmenter.release();
+        scratch.release();
+        releaseCropHeader();
+        if (personWorker != null) {
+            personWorker.close();
+            personWorker = null;
+        }
+        if (roiMask != null) {
+            roiMask.release();
         }
     }
 }
@@ -3,13 +3,50 @@ package com.garbagethrowdetector;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Detections of one frame.
+ *
+ * DetectionProcessor reuses one result, its rects and its track snapshots
+ * for every frame, so a result is only valid until the next detect() call.
+ * Copy what needs to outlive it, e.g. the overlay with Overlay.copyFrom().
+ */
 public class DetectionResult {
+    // Capture time of the analyzed frame, nanoseconds
+    public long timestampNs = 0;
     public boolean hasHuman = false;
     public boolean hasGarbage = false;
-    public Point humanPosition = null;
-    public Point garbagePosition = null;
+    // Centre of the last human / object detection; valid when hasHuman /
+    // hasGarbage is set
+    public final Point humanPosition = new Point();
+    public final Point garbagePosition = new Point();
     public Rect humanRect = null;
     public Rect garbageRect = null;
-}
 
+    // All detections in this frame
+    public final List<Rect> humans = new ArrayList<>();
+    public final List<Rect> objects = new ArrayList<>();
+
+    // Tracked objects with persistent IDs
+    public List<TrackedObject> humanTracks = new ArrayList<>();
+    public List<TrackedObject> objectTracks = new ArrayList<>();
 
+    // What to draw for this frame; empty when overlays are disabled
+    public final Overlay overlay = new Overlay();
+
+    /** Empties the result for the next frame. */
+    public void reset(long timestampNs) {
+        this.timestampNs = timestampNs;
+        hasHuman = false;
+        hasGarbage = false;
+        humanRect = null;
+        garbageRect = null;
+        humans.clear();
+        objects.clear();
+        humanTracks = Collections.<TrackedObject>emptyList();
+        objectTracks = Collections.<TrackedObject>emptyList();
+    }
+}
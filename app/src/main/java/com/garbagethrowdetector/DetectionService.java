@@ -0,0 +1,281 @@
+package com.garbagethrowdetector;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.hardware.camera2.CameraAccessException;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Foreground service that keeps detecting with the screen off and no
+ * Activity: a {@link CameraPipeline} fed by an {@link ImageReaderFrameSource},
+ * so there is no preview surface, no Bitmap conversion and, unless a viewer
+ * is attached, no overlay drawing.
+ *
+ * Started with {@link #ACTION_START} and stopped with {@link #ACTION_STOP}
+ * (also from the notification). An Activity can bind to it and attach as a
+ * viewer with {@link #setViewer(CameraPipeline.Listener)}; the service keeps
+ * running when the viewer goes away.
+ */
+public class DetectionService extends Service {
+    private static final String TAG = "DetectionService";
+
+    public static final String ACTION_START = "com.garbagethrowdetector.action.START_DETECTION";
+    public static final String ACTION_STOP = "com.garbagethrowdetector.action.STOP_DETECTION";
+
+    private static final String CHANNEL_ID = "detection";
+    private static final int NOTIFICATION_ID = 1;
+    private static final int STOPPED_NOTIFICATION_ID = 2;
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+
+    /** Binder for viewers in the same process. */
+    public class LocalBinder extends Binder {
+        public DetectionService getService() {
+            return DetectionService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Main thread
+    private ImageReaderFrameSource source;
+    private PipelineExecutor executor;
+    private EvidenceWriter evidenceWriter;
+    private volatile CameraPipeline pipeline;
+    private volatile CameraPipeline.Listener viewer;
+    private long notifiedThrows = 0;
+
+    /**
+     * Starts detection in the background.
+     *
+     * @return false without the camera permission, which a camera
+     *         foreground service cannot run without
+     */
+    public static boolean start(Context context) {
+        if (context.checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "Camera permission not granted");
+            return false;
+        }
+        Intent intent = new Intent(context, DetectionService.class).setAction(ACTION_START);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
+        }
+        return true;
+    }
+
+    public static void stop(Context context) {
+        context.startService(new Intent(context, DetectionService.class).setAction(ACTION_STOP));
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        // A camera foreground service needs the permission up front; with
+        // it missing startForeground() would throw
+        if (checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "Camera permission not granted");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        // Must be called promptly after startForegroundService, even if we
+        // stop again right away
+        startForegroundWithType(buildNotification(0));
+        if (pipeline == null && !startPipeline()) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        // Not restarted after the process is killed: a restart from the
+        // background cannot get camera access
+        return START_NOT_STICKY;
+    }
+
+    private void startForegroundWithType(Notification notification) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_CAMERA);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+    }
+
+    private boolean startPipeline() {
+        if (!OpenCVLoader.initDebug()) {
+            Log.e(TAG, "OpenCV initialization failed");
+            return false;
+        }
+
+        // Same portrait orientation as the activity, so ROI polygons match
+        source = new ImageReaderFrameSource(this, FRAME_WIDTH, FRAME_HEIGHT, Core.ROTATE_90_CLOCKWISE);
+        source.setListener(reason -> mainHandler.post(() -> onCameraFailed(reason)));
+        try {
+            source.start();
+        } catch (CameraAccessException | SecurityException e) {
+            Log.e(TAG, "Cannot open camera", e);
+            source.close();
+            source = null;
+            return false;
+        }
+
+        DetectionProcessor detectionProcessor = new DetectionProcessor();
+        detectionProcessor.setRoiMask(RoiSettings.load(this));
+        // Overlays are only built while a viewer is attached
+        detectionProcessor.setOverlayEnabled(viewer != null);
+        evidenceWriter = new EvidenceWriter(new MediaStoreEvidenceSink(getContentResolver()),
+            new EvidenceWriter.Listener() {
+                @Override
+                public void onSaved(String name) {
+                    Log.d(TAG, "Evidence saved: " + name);
+                }
+
+                @Override
+                public void onFailed(String name, Exception error) {
+                    Log.e(TAG, "Evidence failed: " + name, error);
+                }
+            });
+        evidenceWriter.start();
+        executor = new PipelineExecutor();
+        CameraPipeline started = new CameraPipeline("camera", source, detectionProcessor,
+            new ThrowDetector(), evidenceWriter, executor);
+        started.setListener(this::onFrameAnalyzed);
+        pipeline = started;
+        started.start();
+        Log.d(TAG, "Headless detection started");
+        return true;
+    }
+
+    // Main thread. Detection cannot go on, so stop instead of leaving a
+    // notification that claims it is running
+    private void onCameraFailed(String reason) {
+        if (pipeline == null) {
+            return;
+        }
+        Log.e(TAG, "Stopping: " + reason);
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.notify(STOPPED_NOTIFICATION_ID, newNotificationBuilder()
+            .setSmallIcon(R.drawable.ic_launcher_foreground)
+            .setContentTitle("Garbage throw detection stopped")
+            .setContentText(reason)
+            .setAutoCancel(true)
+            .build());
+        stopSelf();
+    }
+
+    // Executor thread
+    private void onFrameAnalyzed(CameraPipeline analyzed, Mat rgba, DetectionResult result,
+                                 boolean throwDetected) {
+        if (rgba == null && analyzed.isEvidencePending()) {
+            // Frames are gray only; convert the next one for the evidence
+            source.requestRgba();
+        }
+        if (throwDetected) {
+            updateNotification(analyzed.getThrowCount());
+        }
+        CameraPipeline.Listener v = viewer;
+        if (v != null) {
+            v.onFrameAnalyzed(analyzed, rgba, result, throwDetected);
+        }
+    }
+
+    private synchronized void updateNotification(long throwCount) {
+        if (throwCount == notifiedThrows) {
+            return;
+        }
+        notifiedThrows = throwCount;
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.notify(NOTIFICATION_ID, buildNotification(throwCount));
+    }
+
+    @SuppressWarnings("deprecation")
+    private Notification.Builder newNotificationBuilder() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Detection",
+                NotificationManager.IMPORTANCE_LOW));
+            return new Notification.Builder(this, CHANNEL_ID);
+        }
+        return new Notification.Builder(this);
+    }
+
+    private Notification buildNotification(long throwCount) {
+        Notification.Builder builder = newNotificationBuilder();
+        PendingIntent openApp = PendingIntent.getActivity(this, 0,
+            new Intent(this, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent stop = PendingIntent.getService(this, 1,
+            new Intent(this, DetectionService.class).setAction(ACTION_STOP), PendingIntent.FLAG_IMMUTABLE);
+        return builder
+            .setSmallIcon(R.drawable.ic_launcher_foreground)
+            .setContentTitle("Garbage throw detection running")
+            .setContentText("Throws detected: " + throwCount)
+            .setContentIntent(openApp)
+            .addAction(new Notification.Action.Builder(null, "Stop", stop).build())
+            .setOngoing(true)
+            .build();
+    }
+
+    /**
+     * Attaches a viewer that receives every analyzed frame on the analysis
+     * thread, with overlays; null detaches. Main thread only.
+     */
+    public void setViewer(CameraPipeline.Listener viewer) {
+        this.viewer = viewer;
+        CameraPipeline current = pipeline;
+        if (current != null) {
+            current.getDetectionProcessor().setOverlayEnabled(viewer != null);
+        }
+    }
+
+    /** The running pipeline, for its counters; null when not detecting. */
+    public CameraPipeline getPipeline() {
+        return pipeline;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        viewer = null;
+        mainHandler.removeCallbacksAndMessages(null);
+        CameraPipeline stopped = pipeline;
+        pipeline = null;
+        if (stopped != null) {
+            // Also closes the source and with it the camera
+            stopped.close();
+            Log.d(TAG, "Stopped: " + stopped);
+        }
+        if (executor != null) {
+            executor.close();
+        }
+        if (evidenceWriter != null) {
+            evidenceWriter.close();
+        }
+        source = null;
+        executor = null;
+        evidenceWriter = null;
+    }
+}
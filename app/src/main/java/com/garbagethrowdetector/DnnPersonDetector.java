@@ -0,0 +1,131 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.DetectionModel;
+import org.opencv.dnn.Dnn;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+
+/**
+ * Person detector on a pretrained network through org.opencv.dnn.
+ *
+ * Supports the two small detectors that run acceptably on a phone CPU:
+ * MobileNet-SSD (Caffe, PASCAL VOC classes) and YOLO-tiny (Darknet, COCO
+ * classes). Preprocessing defaults follow the published models; the input
+ * size can be lowered to trade accuracy for speed.
+ *
+ * The network is fed the gray frame expanded to three channels, so no
+ * colour conversion is needed upstream. Configure the detector before it is
+ * handed to a {@link PersonDetectionWorker}.
+ */
+public class DnnPersonDetector implements PersonDetector {
+
+    public enum Architecture {
+        SSD_MOBILENET(300, 300, 1 / 127.5, 127.5, false, 15),
+        YOLO(416, 416, 1 / 255.0, 0, true, 0);
+
+        final int defaultWidth;
+        final int defaultHeight;
+        final double scale;
+        final double mean;
+        final boolean swapRB;
+        final int personClassId;
+
+        Architecture(int defaultWidth, int defaultHeight, double scale, double mean,
+                     boolean swapRB, int personClassId) {
+            this.defaultWidth = defaultWidth;
+            this.defaultHeight = defaultHeight;
+            this.scale = scale;
+            this.mean = mean;
+            this.swapRB = swapRB;
+            this.personClassId = personClassId;
+        }
+    }
+
+    private static final float DEFAULT_CONFIDENCE = 0.5f;
+    private static final float NMS_THRESHOLD = 0.4f;
+
+    private final Architecture architecture;
+    private final DetectionModel model;
+    private float confidenceThreshold = DEFAULT_CONFIDENCE;
+
+    // Reused across calls
+    private final Mat bgr = new Mat();
+    private final MatOfInt classIds = new MatOfInt();
+    private final MatOfFloat confidences = new MatOfFloat();
+    private final MatOfRect boxes = new MatOfRect();
+
+    /**
+     * @param modelPath  weights (.caffemodel, .weights)
+     * @param configPath network description (.prototxt, .cfg)
+     */
+    public DnnPersonDetector(Architecture architecture, String modelPath, String configPath) {
+        this.architecture = architecture;
+        model = new DetectionModel(modelPath, configPath);
+        model.setInputParams(architecture.scale,
+            new Size(architecture.defaultWidth, architecture.defaultHeight),
+            new Scalar(architecture.mean, architecture.mean, architecture.mean),
+            architecture.swapRB);
+        model.setPreferableBackend(Dnn.DNN_BACKEND_OPENCV);
+        model.setPreferableTarget(Dnn.DNN_TARGET_CPU);
+    }
+
+    /** Network input size; smaller is faster and misses distant people. */
+    public void setInputSize(int width, int height) {
+        model.setInputSize(width, height);
+    }
+
+    /** One of the Dnn.DNN_BACKEND_* and Dnn.DNN_TARGET_* constants. */
+    public void setBackend(int backendId, int targetId) {
+        model.setPreferableBackend(backendId);
+        model.setPreferableTarget(targetId);
+    }
+
+    public void setConfidenceThreshold(float threshold) {
+        this.confidenceThreshold = threshold;
+    }
+
+    /**
+     * Threads OpenCV may use for inference. This is process wide: it also
+     * limits the parallel loops of the motion stage.
+     */
+    public static void setThreadCount(int threads) {
+        Core.setNumThreads(threads);
+    }
+
+    public Architecture getArchitecture() {
+        return architecture;
+    }
+
+    @Override
+    public void detect(Mat gray, List<Rect> motionRegions, List<Rect> people) {
+        Imgproc.cvtColor(gray, bgr, Imgproc.COLOR_GRAY2BGR);
+        model.detect(bgr, classIds, confidences, boxes, confidenceThreshold, NMS_THRESHOLD);
+        if (classIds.empty()) {
+            return;
+        }
+        int[] ids = classIds.toArray();
+        Rect[] rects = boxes.toArray();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == architecture.personClassId) {
+                people.add(rects[i]);
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        bgr.release();
+        classIds.release();
+        confidences.release();
+        boxes.release();
+    }
+}
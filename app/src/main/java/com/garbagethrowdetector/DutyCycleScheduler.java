@@ -0,0 +1,210 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Decides per frame whether the full detection pipeline should run, so an
+ * empty scene does not cost full CPU.
+ *
+ * Every checked frame is reduced to a tiny thumbnail and compared with the
+ * previous one; the motion score is the fraction of thumbnail pixels that
+ * changed. While the scene moves the scheduler stays ACTIVE and every frame
+ * is analyzed. Once the score has stayed below the threshold for
+ * idleAfterMs it switches to IDLE, where only one frame per
+ * idleCheckIntervalMs is checked and nothing is analyzed. The first checked
+ * frame with motion switches back to ACTIVE and is itself analyzed.
+ *
+ * Time spent in each mode is accumulated from the frame timestamps.
+ */
+public class DutyCycleScheduler {
+
+    public enum Mode {
+        ACTIVE,
+        IDLE
+    }
+
+    /** Called on the thread calling shouldAnalyze() when the mode changes. */
+    public interface Listener {
+        void onModeChanged(Mode mode);
+    }
+
+    // Intensity change that counts a thumbnail pixel as changed
+    private static final double PIXEL_THRESHOLD = 20;
+
+    private final Listener listener;
+    private double motionThreshold = 0.002;
+    private long idleAfterNs = 5000000000L;
+    private long idleCheckIntervalNs = 500000000L;
+    private int checkWidth = 64;
+
+    // Calling thread only
+    private Mat thumbnail = new Mat();
+    private Mat previous = new Mat();
+    private final Mat diff = new Mat();
+    private final Size thumbnailSize = new Size();
+    private boolean hasPrevious = false;
+    private volatile Mode mode = Mode.ACTIVE;
+    private long lastTimestampNs = 0;
+    private long lastCheckNs = 0;
+    private long lastMotionNs = 0;
+    private boolean started = false;
+
+    // Counters, read from any thread
+    private final long[] modeNs = new long[Mode.values().length];
+    private long switchCount = 0;
+    private long skippedFrames = 0;
+    private volatile double lastScore = 0;
+
+    public DutyCycleScheduler(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Fraction of changed pixels (0-1) that counts as motion. */
+    public void setMotionThreshold(double fraction) {
+        this.motionThreshold = Math.max(0, fraction);
+    }
+
+    /** How long the scene must be still before going idle. */
+    public void setIdleAfterMs(long ms) {
+        this.idleAfterNs = Math.max(0, ms) * 1000000L;
+    }
+
+    /** How often frames are checked for motion while idle. */
+    public void setIdleCheckIntervalMs(long ms) {
+        this.idleCheckIntervalNs = Math.max(0, ms) * 1000000L;
+    }
+
+    /** Width of the thumbnail the motion score is computed on. */
+    public void setCheckWidth(int width) {
+        this.checkWidth = Math.max(8, width);
+    }
+
+    /**
+     * Checks the frame and updates the mode.
+     *
+     * @return true if the frame should go through full analysis
+     */
+    public boolean shouldAnalyze(Mat gray, long timestampNs) {
+        if (started) {
+            long elapsed = timestampNs - lastTimestampNs;
+            if (elapsed > 0) {
+                synchronized (this) {
+                    modeNs[mode.ordinal()] += elapsed;
+                }
+            }
+        } else {
+            started = true;
+            lastMotionNs = timestampNs;
+        }
+        lastTimestampNs = timestampNs;
+
+        if (mode == Mode.IDLE && timestampNs - lastCheckNs < idleCheckIntervalNs) {
+            synchronized (this) {
+                skippedFrames++;
+            }
+            return false;
+        }
+        lastCheckNs = timestampNs;
+
+        double score = motionScore(gray);
+        lastScore = score;
+        if (score >= motionThreshold) {
+            lastMotionNs = timestampNs;
+            if (mode == Mode.IDLE) {
+                switchTo(Mode.ACTIVE);
+            }
+        } else if (mode == Mode.ACTIVE && timestampNs - lastMotionNs >= idleAfterNs) {
+            switchTo(Mode.IDLE);
+        }
+        if (mode == Mode.IDLE) {
+            synchronized (this) {
+                skippedFrames++;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    // Fraction of thumbnail pixels that changed since the last check
+    private double motionScore(Mat gray) {
+        thumbnailSize.width = checkWidth;
+        thumbnailSize.height = Math.max(1, Math.round((double) gray.rows() * checkWidth / gray.cols()));
+        Imgproc.resize(gray, thumbnail, thumbnailSize, 0, 0, Imgproc.INTER_AREA);
+        double score = 1.0;
+        if (hasPrevious && previous.size().equals(thumbnail.size())) {
+            Core.absdiff(thumbnail, previous, diff);
+            Imgproc.threshold(diff, diff, PIXEL_THRESHOLD, 255, Imgproc.THRESH_BINARY);
+            score = Core.countNonZero(diff) / (double) diff.total();
+        }
+        Mat swap = previous;
+        previous = thumbnail;
+        thumbnail = swap;
+        hasPrevious = true;
+        return score;
+    }
+
+    private void switchTo(Mode next) {
+        mode = next;
+        synchronized (this) {
+            switchCount++;
+        }
+        if (listener != null) {
+            listener.onModeChanged(next);
+        }
+    }
+
+    /**
+     * Forgets the previous thumbnail and goes back to ACTIVE, e.g. after the
+     * camera was restarted. Call on the thread calling shouldAnalyze().
+     */
+    public void reset() {
+        hasPrevious = false;
+        started = false;
+        if (mode != Mode.ACTIVE) {
+            switchTo(Mode.ACTIVE);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** Motion score of the last checked frame. */
+    public double getLastScore() {
+        return lastScore;
+    }
+
+    public synchronized double getTimeInModeMs(Mode m) {
+        return modeNs[m.ordinal()] / 1e6;
+    }
+
+    public synchronized long getSwitchCount() {
+        return switchCount;
+    }
+
+    /** Frames not analyzed because the scheduler was idle. */
+    public synchronized long getSkippedFrameCount() {
+        return skippedFrames;
+    }
+
+    @Override
+    public synchronized String toString() {
+        double active = modeNs[Mode.ACTIVE.ordinal()] / 1e6;
+        double idle = modeNs[Mode.IDLE.ordinal()] / 1e6;
+        double total = active + idle;
+        return String.format(java.util.Locale.US,
+            "active %.1fs, idle %.1fs (%.0f%%), %d switches, %d frames skipped",
+            active / 1000, idle / 1000, total > 0 ? idle * 100 / total : 0, switchCount, skippedFrames);
+    }
+
+    /** Frees the thumbnails; the next frame is checked from scratch. */
+    public void release() {
+        hasPrevious = false;
+        thumbnail.release();
+        previous.release();
+        diff.release();
+    }
+}
@@ -0,0 +1,255 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Saves evidence frames as JPEG on a single background thread.
+ *
+ * Frames are copied into a fixed pool of preallocated Mats, so a burst of
+ * throws never allocates more than the pool. When every slot is taken the
+ * configured {@link Backpressure} policy applies: the frame is dropped, or
+ * it replaces the newest frame that has not been written yet. Both cases are
+ * counted.
+ *
+ * Encoding goes straight from the Mat through Imgcodecs.imencode into a
+ * reused MatOfByte and byte buffer; there is no Bitmap round trip.
+ */
+public class EvidenceWriter {
+
+    /** Destination of encoded images, called on the writer thread. */
+    public interface Sink {
+        /**
+         * @param data   encoded JPEG, only valid for the duration of the call
+         * @param length number of valid bytes in data
+         */
+        void write(String name, byte[] data, int length) throws IOException;
+    }
+
+    public interface Listener {
+        void onSaved(String name);
+
+        void onFailed(String name, Exception error);
+    }
+
+    public enum Backpressure {
+        /** Keep the frames already queued, drop the new one. */
+        DROP,
+        /** Overwrite the newest queued frame, so the latest frame of a burst is kept. */
+        COALESCE
+    }
+
+    private static class Request {
+        final Mat rgba = new Mat();
+        String name;
+    }
+
+    private static final int DEFAULT_POOL_SIZE = 3;
+    private static final int JPEG_QUALITY = 90;
+
+    private final Sink sink;
+    private final Listener listener;
+    private final Backpressure backpressure;
+    private final Request[] allRequests;
+    private final ArrayDeque<Request> free;
+    private final ArrayDeque<Request> pending;
+
+    // Writer thread only
+    private final Mat bgr = new Mat();
+    private final MatOfByte encoded = new MatOfByte();
+    private final MatOfInt encodeParams = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
+    private byte[] buffer = new byte[0];
+
+    private long writtenCount = 0;
+    private long droppedCount = 0;
+    private long coalescedCount = 0;
+    private long failedCount = 0;
+    private boolean closed = false;
+    private Thread thread;
+
+    public EvidenceWriter(Sink sink, Listener listener) {
+        this(sink, listener, DEFAULT_POOL_SIZE, Backpressure.COALESCE);
+    }
+
+    public EvidenceWriter(Sink sink, Listener listener, int poolSize, Backpressure backpressure) {
+        this.sink = sink;
+        this.listener = listener;
+        this.backpressure = backpressure;
+        allRequests = new Request[Math.max(1, poolSize)];
+        free = new ArrayDeque<>(allRequests.length);
+        pending = new ArrayDeque<>(allRequests.length);
+        for (int i = 0; i < allRequests.length; i++) {
+            allRequests[i] = new Request();
+            free.add(allRequests[i]);
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null || closed) {
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "EvidenceWriter");
+        thread.start();
+    }
+
+    /**
+     * Copies the frame and queues it for writing. Never blocks on encoding or
+     * I/O.
+     *
+     * @return false if the frame was dropped or the writer is closed
+     */
+    public boolean submit(Mat rgba, String name) {
+        Request request;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            request = free.pollFirst();
+            if (request == null) {
+                if (backpressure == Backpressure.DROP || pending.isEmpty()) {
+                    // All slots busy (or the only one is being written)
+                    droppedCount++;
+                    return false;
+                }
+                request = pending.pollLast();
+                coalescedCount++;
+            }
+        }
+
+        rgba.copyTo(request.rgba);
+        request.name = name;
+
+        synchronized (this) {
+            if (closed) {
+                free.add(request);
+                return false;
+            }
+            pending.addLast(request);
+            notifyAll();
+        }
+        return true;
+    }
+
+    private void runLoop() {
+        while (true) {
+            Request request;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                // Pending frames are still written after close()
+                request = pending.pollFirst();
+                if (request == null) {
+                    return;
+                }
+            }
+
+            String name = request.name;
+            try {
+                int length = encode(request.rgba);
+                // The slot can be reused while the sink does its I/O
+                recycle(request);
+                request = null;
+                sink.write(name, buffer, length);
+                synchronized (this) {
+                    writtenCount++;
+                }
+                if (listener != null) {
+                    listener.onSaved(name);
+                }
+            } catch (Exception e) {
+                synchronized (this) {
+                    failedCount++;
+                }
+                if (listener != null) {
+                    listener.onFailed(name, e);
+                }
+            } finally {
+                if (request != null) {
+                    recycle(request);
+                }
+            }
+        }
+    }
+
+    private int encode(Mat rgba) throws IOException {
+        Imgproc.cvtColor(rgba, bgr, Imgproc.COLOR_RGBA2BGR);
+        if (!Imgcodecs.imencode(".jpg", bgr, encoded, encodeParams)) {
+            throw new IOException("JPEG encoding failed");
+        }
+        int length = (int) encoded.total();
+        if (buffer.length < length) {
+            // Grows to the largest image seen, then stays
+            buffer = new byte[length + length / 4];
+        }
+        encoded.get(0, 0, buffer);
+        return length;
+    }
+
+    private synchronized void recycle(Request request) {
+        request.name = null;
+        free.add(request);
+    }
+
+    /**
+     * Stops accepting frames, writes what is still queued and frees the
+     * buffers. Blocks until the writer thread has finished.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            t = thread;
+            thread = null;
+            notifyAll();
+        }
+        if (t != null) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            for (Request request : allRequests) {
+                request.rgba.release();
+            }
+            pending.clear();
+            free.clear();
+        }
+        bgr.release();
+        encoded.release();
+        encodeParams.release();
+    }
+
+    public synchronized long getWrittenCount() {
+        return writtenCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+}
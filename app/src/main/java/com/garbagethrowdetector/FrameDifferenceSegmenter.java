@@ -0,0 +1,58 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Two-frame differencing: foreground is whatever changed since the previous
+ * frame. Cheapest option, but slow movers fade out and fast objects split
+ * into leading and trailing edges.
+ */
+public class FrameDifferenceSegmenter implements MotionSegmenter {
+    private final Mat previousFrame = new Mat();
+    private final Mat frameDiff = new Mat();
+    private boolean seeded = false;
+    private int threshold;
+
+    public FrameDifferenceSegmenter() {
+        setSensitivity(50);
+    }
+
+    @Override
+    public boolean apply(Mat gray, Mat foregroundMask) {
+        if (!seeded || previousFrame.cols() != gray.cols() || previousFrame.rows() != gray.rows()) {
+            gray.copyTo(previousFrame);
+            seeded = true;
+            return false;
+        }
+
+        Core.absdiff(previousFrame, gray, frameDiff);
+        Imgproc.threshold(frameDiff, foregroundMask, threshold, 255, Imgproc.THRESH_BINARY);
+        gray.copyTo(previousFrame);
+        return true;
+    }
+
+    @Override
+    public void setSensitivity(int sensitivity) {
+        // Lower threshold = more sensitive
+        threshold = (int) (30 * (100 - sensitivity) / 100.0) + 10;
+    }
+
+    @Override
+    public void setLearningRate(double learningRate) {
+        // The model is always the previous frame
+    }
+
+    @Override
+    public void reset() {
+        seeded = false;
+    }
+
+    @Override
+    public void release() {
+        previousFrame.release();
+        frameDiff.release();
+        seeded = false;
+    }
+}
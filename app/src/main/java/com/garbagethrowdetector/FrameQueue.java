@@ -0,0 +1,190 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded hand-off of frames from the camera thread to the analysis worker.
+ *
+ * Frame slots are preallocated and recycled, so enqueueing a frame is a
+ * plain copy into an existing buffer. When the consumer falls behind the
+ * oldest pending frame is dropped, so the worker always sees the most recent
+ * frames and the camera thread never blocks.
+ */
+public class FrameQueue {
+
+    public static class Slot {
+        public final Mat gray = new Mat();
+        public final Mat rgba = new Mat();
+        // False when the frame was offered without a colour image
+        public boolean hasRgba;
+        public long sequence;
+        public long timestampNs;
+        public long enqueueTimeNs;
+
+        void release() {
+            gray.release();
+            rgba.release();
+        }
+    }
+
+    private final int capacity;
+    private final Slot[] allSlots;
+    private final ArrayDeque<Slot> free;
+    private final ArrayDeque<Slot> pending;
+
+    private long nextSequence = 0;
+    private long droppedCount = 0;
+    private boolean closed = false;
+
+    public FrameQueue(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        // One extra slot for the producer while it copies and one for the
+        // frame the consumer is currently analyzing
+        allSlots = new Slot[this.capacity + 2];
+        free = new ArrayDeque<>(allSlots.length);
+        pending = new ArrayDeque<>(allSlots.length);
+        for (int i = 0; i < allSlots.length; i++) {
+            allSlots[i] = new Slot();
+            free.add(allSlots[i]);
+        }
+    }
+
+    /**
+     * Copies the frame into a queue slot. Never blocks; drops the oldest
+     * pending frame when the queue is full. rgba may be null.
+     *
+     * @return false if the queue has been closed
+     */
+    public boolean offer(Mat gray, Mat rgba, long timestampNs) {
+        Slot slot;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (pending.size() >= capacity) {
+                free.add(pending.pollFirst());
+                droppedCount++;
+            }
+            slot = free.pollFirst();
+        }
+
+        gray.copyTo(slot.gray);
+        if (rgba != null) {
+            rgba.copyTo(slot.rgba);
+        }
+        slot.hasRgba = rgba != null;
+
+        synchronized (this) {
+            if (closed) {
+                free.add(slot);
+                return false;
+            }
+            slot.sequence = nextSequence++;
+            slot.timestampNs = timestampNs;
+            slot.enqueueTimeNs = System.nanoTime();
+            pending.addLast(slot);
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Takes a slot for the producer to fill in place, for example straight
+     * from a {@link FrameSource}, which saves the copy made by offer(). The
+     * slot must be handed back through {@link #commit(Slot, long, boolean)}
+     * or {@link #recycle(Slot)}.
+     *
+     * @return a free slot, or null if the queue has been closed
+     */
+    public synchronized Slot acquire() {
+        if (closed) {
+            return null;
+        }
+        Slot slot = free.pollFirst();
+        if (slot == null) {
+            // Only with several producers; give up the oldest pending frame
+            slot = pending.pollFirst();
+            droppedCount++;
+        }
+        return slot;
+    }
+
+    /**
+     * Queues a slot filled after {@link #acquire()}, dropping the oldest
+     * pending frame when the queue is full.
+     *
+     * @return false if the queue has been closed
+     */
+    public synchronized boolean commit(Slot slot, long timestampNs, boolean hasRgba) {
+        if (closed) {
+            free.add(slot);
+            return false;
+        }
+        if (pending.size() >= capacity) {
+            free.add(pending.pollFirst());
+            droppedCount++;
+        }
+        slot.hasRgba = hasRgba;
+        slot.sequence = nextSequence++;
+        slot.timestampNs = timestampNs;
+        slot.enqueueTimeNs = System.nanoTime();
+        pending.addLast(slot);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Non-blocking variant of {@link #take()}.
+     *
+     * @return the oldest pending frame, or null if there is none or the
+     *         queue is closed
+     */
+    public synchronized Slot poll() {
+        return closed ? null : pending.pollFirst();
+    }
+
+    /**
+     * Blocks until a frame is available. The caller must hand the slot back
+     * through {@link #recycle(Slot)} once done with it.
+     *
+     * @return the oldest pending frame, or null once the queue is closed
+     */
+    public synchronized Slot take() throws InterruptedException {
+        while (pending.isEmpty() && !closed) {
+            wait();
+        }
+        return closed ? null : pending.pollFirst();
+    }
+
+    public synchronized void recycle(Slot slot) {
+        free.add(slot);
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Frees the native buffers. Only call after both producer and consumer
+     * have stopped using the queue.
+     */
+    public synchronized void release() {
+        closed = true;
+        for (Slot slot : allSlots) {
+            slot.release();
+        }
+        pending.clear();
+        free.clear();
+    }
+}
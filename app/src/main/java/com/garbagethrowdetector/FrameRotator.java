@@ -0,0 +1,41 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Rotates camera frames by a multiple of 90 degrees into persistent output
+ * buffers.
+ *
+ * Uses Core.rotate (a transpose + flip) instead of warpAffine, so there is no
+ * interpolation and no rotation matrix to allocate. The returned Mats are
+ * owned by the rotator and are overwritten on the next call.
+ */
+public class FrameRotator {
+    private final int rotateCode;
+    private final Mat rotatedRgba = new Mat();
+    private final Mat rotatedGray = new Mat();
+
+    /**
+     * @param rotateCode one of Core.ROTATE_90_CLOCKWISE, Core.ROTATE_180 or
+     *                   Core.ROTATE_90_COUNTERCLOCKWISE
+     */
+    public FrameRotator(int rotateCode) {
+        this.rotateCode = rotateCode;
+    }
+
+    public Mat rotateRgba(Mat rgba) {
+        Core.rotate(rgba, rotatedRgba, rotateCode);
+        return rotatedRgba;
+    }
+
+    public Mat rotateGray(Mat gray) {
+        Core.rotate(gray, rotatedGray, rotateCode);
+        return rotatedGray;
+    }
+
+    public void release() {
+        rotatedRgba.release();
+        rotatedGray.release();
+    }
+}
@@ -0,0 +1,27 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+
+/**
+ * A sequence of frames for the detection pipeline, independent of where the
+ * frames come from (live camera, video file, recorded raw frames).
+ */
+public interface FrameSource {
+
+    /**
+     * Reads the next frame into the given Mats, reallocating them if needed.
+     * rgba receives a CV_8UC4 RGBA image and gray the matching CV_8UC1 image.
+     * Gray-only sources may leave rgba empty for some or all frames.
+     *
+     * @return false once the source is exhausted or closed
+     */
+    boolean read(Mat rgba, Mat gray);
+
+    /**
+     * Capture time of the frame returned by the last successful read(), in
+     * nanoseconds. Only differences between timestamps are meaningful.
+     */
+    long getTimestampNs();
+
+    void close();
+}
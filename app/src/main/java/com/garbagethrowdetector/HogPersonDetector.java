@@ -0,0 +1,178 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.HOGDescriptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CPU-only person detector using OpenCV's HOG descriptor with the default
+ * people SVM.
+ *
+ * A full-frame HOG pyramid is expensive, so the search is restricted to the
+ * moving regions found by the motion stage: each region is padded, grown to
+ * at least one detection window, overlapping regions are merged and only
+ * those crops are scanned. Frames without motion cost nothing.
+ *
+ * The cost is tuned with the window stride, the pyramid scale step, the
+ * maximum number of pyramid levels and the width the frame is downscaled to
+ * before searching.
+ */
+public class HogPersonDetector implements PersonDetector {
+
+    public static final int DEFAULT_MAX_LEVELS = 64;
+    public static final int DEFAULT_WIN_STRIDE = 8;
+    public static final double DEFAULT_SCALE = 1.05;
+    public static final int DEFAULT_FRAME_WIDTH = 640;
+
+    // Window of the default people detector
+    private static final int WIN_WIDTH = 64;
+    private static final int WIN_HEIGHT = 128;
+    // Context added around a motion region, as a fraction of its size
+    private static final double REGION_PADDING = 0.25;
+
+    private final HOGDescriptor hog;
+    private final Size winStride = new Size(DEFAULT_WIN_STRIDE, DEFAULT_WIN_STRIDE);
+    private final Size padding = new Size(0, 0);
+    private double scale = DEFAULT_SCALE;
+    private double hitThreshold = 0;
+    private int frameWidth = DEFAULT_FRAME_WIDTH;
+
+    // Reused across calls
+    private final Mat scaled = new Mat();
+    private final Size scaledSize = new Size();
+    private final MatOfRect found = new MatOfRect();
+    private final MatOfDouble weights = new MatOfDouble();
+    private final List<Rect> regions = new ArrayList<>();
+
+    public HogPersonDetector() {
+        this(DEFAULT_MAX_LEVELS);
+    }
+
+    /**
+     * @param maxLevels maximum number of pyramid levels; fewer levels stop
+     *                  the search at smaller (more distant) people
+     */
+    public HogPersonDetector(int maxLevels) {
+        hog = new HOGDescriptor(new Size(WIN_WIDTH, WIN_HEIGHT), new Size(16, 16), new Size(8, 8),
+            new Size(8, 8), 9, 1, -1, HOGDescriptor.L2Hys, 0.2, true, Math.max(1, maxLevels));
+        hog.setSVMDetector(HOGDescriptor.getDefaultPeopleDetector());
+    }
+
+    /** Step of the detection window in pixels; a multiple of 8. */
+    public void setWinStride(int stride) {
+        winStride.width = Math.max(8, stride / 8 * 8);
+        winStride.height = winStride.width;
+    }
+
+    /** Pyramid scale step, greater than 1; larger steps mean fewer levels. */
+    public void setScale(double scale) {
+        this.scale = Math.max(1.01, scale);
+    }
+
+    /** SVM score a window needs to count as a person. */
+    public void setHitThreshold(double hitThreshold) {
+        this.hitThreshold = hitThreshold;
+    }
+
+    /** Width frames are downscaled to before searching; 0 keeps full size. */
+    public void setFrameWidth(int width) {
+        this.frameWidth = Math.max(0, width);
+    }
+
+    @Override
+    public void detect(Mat gray, List<Rect> motionRegions, List<Rect> people) {
+        if (motionRegions.isEmpty()) {
+            return;
+        }
+        Mat frame = gray;
+        double factor = 1.0;
+        if (frameWidth > 0 && gray.cols() > frameWidth) {
+            factor = (double) frameWidth / gray.cols();
+            scaledSize.width = frameWidth;
+            scaledSize.height = Math.round(gray.rows() * factor);
+            Imgproc.resize(gray, scaled, scaledSize, 0, 0, Imgproc.INTER_AREA);
+            frame = scaled;
+        }
+
+        collectRegions(motionRegions, factor, frame.cols(), frame.rows());
+        for (int i = 0; i < regions.size(); i++) {
+            Rect region = regions.get(i);
+            Mat crop = frame.submat(region);
+            try {
+                hog.detectMultiScale(crop, found, weights, hitThreshold, winStride, padding, scale, 2);
+            } finally {
+                crop.release();
+            }
+            if (found.empty()) {
+                continue;
+            }
+            Rect[] boxes = found.toArray();
+            for (Rect box : boxes) {
+                people.add(new Rect(
+                    (int) Math.round((box.x + region.x) / factor),
+                    (int) Math.round((box.y + region.y) / factor),
+                    (int) Math.round(box.width / factor),
+                    (int) Math.round(box.height / factor)));
+            }
+        }
+    }
+
+    // Pads the motion regions, grows them to one window, clips them to the
+    // frame and merges overlapping ones, in search frame coordinates
+    private void collectRegions(List<Rect> motionRegions, double factor, int width, int height) {
+        regions.clear();
+        if (width < WIN_WIDTH || height < WIN_HEIGHT) {
+            return;
+        }
+        for (int i = 0; i < motionRegions.size(); i++) {
+            Rect motion = motionRegions.get(i);
+            double w = Math.max(WIN_WIDTH, motion.width * factor * (1 + 2 * REGION_PADDING));
+            double h = Math.max(WIN_HEIGHT, motion.height * factor * (1 + 2 * REGION_PADDING));
+            double cx = (motion.x + motion.width / 2.0) * factor;
+            double cy = (motion.y + motion.height / 2.0) * factor;
+            int x0 = (int) Math.max(0, Math.min(width - WIN_WIDTH, Math.round(cx - w / 2)));
+            int y0 = (int) Math.max(0, Math.min(height - WIN_HEIGHT, Math.round(cy - h / 2)));
+            int x1 = (int) Math.min(width, Math.max(x0 + WIN_WIDTH, Math.round(cx + w / 2)));
+            int y1 = (int) Math.min(height, Math.max(y0 + WIN_HEIGHT, Math.round(cy + h / 2)));
+            regions.add(new Rect(x0, y0, x1 - x0, y1 - y0));
+        }
+
+        // Merge until no two regions overlap, so no pixel is scanned twice
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int a = 0; a < regions.size() && !merged; a++) {
+                for (int b = a + 1; b < regions.size(); b++) {
+                    Rect ra = regions.get(a);
+                    Rect rb = regions.get(b);
+                    if (ra.x < rb.x + rb.width && rb.x < ra.x + ra.width
+                            && ra.y < rb.y + rb.height && rb.y < ra.y + ra.height) {
+                        int x0 = Math.min(ra.x, rb.x);
+                        int y0 = Math.min(ra.y, rb.y);
+                        ra.width = Math.max(ra.x + ra.width, rb.x + rb.width) - x0;
+                        ra.height = Math.max(ra.y + ra.height, rb.y + rb.height) - y0;
+                        ra.x = x0;
+                        ra.y = y0;
+                        regions.remove(b);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        scaled.release();
+        found.release();
+        weights.release();
+    }
+}
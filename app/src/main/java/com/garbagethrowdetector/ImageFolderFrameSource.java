@@ -0,0 +1,73 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Frames from a directory of JPEG or PNG images, replayed in file name order.
+ * Timestamps are derived from the image index and the given frame rate.
+ */
+public class ImageFolderFrameSource implements FrameSource {
+    private final List<File> files = new ArrayList<>();
+    private final double fps;
+    private int frameIndex = 0;
+    private long timestampNs = 0;
+
+    public ImageFolderFrameSource(String directory, double fps) {
+        File[] entries = new File(directory).listFiles();
+        if (entries == null) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        for (File entry : entries) {
+            String name = entry.getName().toLowerCase(Locale.US);
+            if (entry.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png"))) {
+                files.add(entry);
+            }
+        }
+        // Recorders name frames with zero padded counters or timestamps
+        Collections.sort(files);
+        this.fps = fps > 0 ? fps : 30.0;
+    }
+
+    @Override
+    public boolean read(Mat rgba, Mat gray) {
+        while (frameIndex < files.size()) {
+            File file = files.get(frameIndex);
+            timestampNs = (long) (frameIndex * 1e9 / fps);
+            frameIndex++;
+
+            Mat decoded = Imgcodecs.imread(file.getPath(), Imgcodecs.IMREAD_COLOR);
+            if (decoded.empty()) {
+                // Unreadable file, skip it but keep the time line
+                decoded.release();
+                continue;
+            }
+            Imgproc.cvtColor(decoded, rgba, Imgproc.COLOR_BGR2RGBA);
+            Imgproc.cvtColor(decoded, gray, Imgproc.COLOR_BGR2GRAY);
+            decoded.release();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public int getFrameCount() {
+        return files.size();
+    }
+
+    @Override
+    public void close() {
+        files.clear();
+    }
+}
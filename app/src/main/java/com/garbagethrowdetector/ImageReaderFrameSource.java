@@ -0,0 +1,354 @@
+package com.garbagethrowdetector;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+/**
+ * Camera2 frames from an ImageReader as a {@link FrameSource}, without any
+ * view: nothing is drawn and only the Y plane is copied.
+ *
+ * read() returns gray frames and leaves rgba empty, except for the frame
+ * after {@link #requestRgba()}, which is also converted to colour (for
+ * evidence). Like {@link CameraFrameSource}, frames go through a small
+ * {@link FrameQueue} and the oldest is dropped when the reader falls behind.
+ */
+public class ImageReaderFrameSource implements FrameSource {
+
+    public interface Listener {
+        /**
+         * Called on the camera thread when the camera fails or is taken by
+         * another app; read() returns false from then on.
+         */
+        void onCameraError(String reason);
+    }
+
+    private static final String TAG = "ImageReaderFrameSource";
+    private static final int QUEUE_CAPACITY = 2;
+    private static final int MAX_IMAGES = 2;
+
+    private final Context context;
+    private final int requestedWidth;
+    private final int requestedHeight;
+    private final int rotateCode;
+    private final FrameQueue queue = new FrameQueue(QUEUE_CAPACITY);
+    private volatile boolean rgbaRequested = false;
+    private volatile Listener listener;
+    private long timestampNs = 0;
+
+    // Camera objects, created by start() and used on the camera thread
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+    private CameraDevice cameraDevice;
+    private CameraCaptureSession captureSession;
+    private ImageReader imageReader;
+
+    // Camera thread only
+    private final Mat rgba = new Mat();
+
+    /**
+     * @param rotateCode Core.ROTATE_* code applied to the frames, or -1 to
+     *                   keep the sensor orientation
+     */
+    public ImageReaderFrameSource(Context context, int width, int height, int rotateCode) {
+        this.context = context.getApplicationContext();
+        this.requestedWidth = width;
+        this.requestedHeight = height;
+        this.rotateCode = rotateCode;
+    }
+
+    /**
+     * Opens the first back facing camera. The caller must hold the camera
+     * permission.
+     */
+    @SuppressLint("MissingPermission")
+    public synchronized void start() throws CameraAccessException {
+        if (cameraThread != null) {
+            return;
+        }
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        String cameraId = findBackCamera(manager);
+        Size size = chooseSize(manager.getCameraCharacteristics(cameraId));
+        Log.d(TAG, "Camera " + cameraId + " at " + size.getWidth() + "x" + size.getHeight());
+
+        cameraThread = new HandlerThread("ImageReaderFrameSource");
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
+        imageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+            ImageFormat.YUV_420_888, MAX_IMAGES);
+        imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                Image image = reader.acquireLatestImage();
+                if (image == null) {
+                    return;
+                }
+                try {
+                    enqueue(image);
+                } finally {
+                    image.close();
+                }
+            }
+        }, cameraHandler);
+        manager.openCamera(cameraId, new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(CameraDevice camera) {
+                synchronized (ImageReaderFrameSource.this) {
+                    if (cameraThread == null) {
+                        // Closed before the camera opened
+                        camera.close();
+                        return;
+                    }
+                    cameraDevice = camera;
+                }
+                createSession(camera);
+            }
+
+            @Override
+            public void onDisconnected(CameraDevice camera) {
+                camera.close();
+                fail("Camera disconnected");
+            }
+
+            @Override
+            public void onError(CameraDevice camera, int error) {
+                camera.close();
+                fail("Camera error " + error);
+            }
+        }, cameraHandler);
+    }
+
+    private static String findBackCamera(CameraManager manager) throws CameraAccessException {
+        String[] ids = manager.getCameraIdList();
+        for (String id : ids) {
+            Integer facing = manager.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
+                return id;
+            }
+        }
+        if (ids.length == 0) {
+            throw new CameraAccessException(CameraAccessException.CAMERA_DISCONNECTED, "No camera");
+        }
+        return ids[0];
+    }
+
+    // Smallest YUV size at least as large as requested, else the largest
+    private Size chooseSize(CameraCharacteristics characteristics) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size best = null;
+        Size largest = null;
+        for (Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+            long area = (long) size.getWidth() * size.getHeight();
+            if (largest == null || area > (long) largest.getWidth() * largest.getHeight()) {
+                largest = size;
+            }
+            if (size.getWidth() >= requestedWidth && size.getHeight() >= requestedHeight
+                    && (best == null || area < (long) best.getWidth() * best.getHeight())) {
+                best = size;
+            }
+        }
+        return best != null ? best : largest;
+    }
+
+    private void createSession(final CameraDevice camera) {
+        try {
+            camera.createCaptureSession(Collections.singletonList(imageReader.getSurface()),
+                new CameraCaptureSession.StateCallback() {
+                    @Override
+                    public void onConfigured(CameraCaptureSession session) {
+                        synchronized (ImageReaderFrameSource.this) {
+                            if (cameraDevice == null) {
+                                // Closed in the meantime
+                                return;
+                            }
+                            captureSession = session;
+                        }
+                        try {
+                            CaptureRequest.Builder builder = camera.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+                            builder.addTarget(imageReader.getSurface());
+                            builder.set(CaptureRequest.CONTROL_AF_MODE,
+                                CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+                            session.setRepeatingRequest(builder.build(), null, cameraHandler);
+                        } catch (CameraAccessException | IllegalStateException e) {
+                            Log.e(TAG, "Cannot start capture", e);
+                            fail("Cannot start capture");
+                        }
+                    }
+
+                    @Override
+                    public void onConfigureFailed(CameraCaptureSession session) {
+                        fail("Capture session configuration failed");
+                    }
+                }, cameraHandler);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Cannot create capture session", e);
+            fail("Cannot create capture session");
+        }
+    }
+
+    // Camera thread. Ends read() and tells the listener, unless the source
+    // is being closed anyway
+    private void fail(String reason) {
+        synchronized (this) {
+            if (cameraThread == null) {
+                return;
+            }
+        }
+        Log.e(TAG, reason);
+        queue.close();
+        Listener l = listener;
+        if (l != null) {
+            l.onCameraError(reason);
+        }
+    }
+
+    // Camera thread
+    private void enqueue(Image image) {
+        FrameQueue.Slot slot = queue.acquire();
+        if (slot == null) {
+            return;
+        }
+        Image.Plane[] planes = image.getPlanes();
+        int w = image.getWidth();
+        int h = image.getHeight();
+        Mat y = new Mat(h, w, CvType.CV_8UC1, planes[0].getBuffer(), planes[0].getRowStride());
+        boolean withRgba = rgbaRequested;
+        try {
+            if (rotateCode >= 0) {
+                Core.rotate(y, slot.gray, rotateCode);
+            } else {
+                y.copyTo(slot.gray);
+            }
+            if (withRgba) {
+                rgbaRequested = false;
+                toRgba(planes, y, w, h);
+                if (rotateCode >= 0) {
+                    Core.rotate(rgba, slot.rgba, rotateCode);
+                } else {
+                    rgba.copyTo(slot.rgba);
+                }
+            }
+        } finally {
+            y.release();
+        }
+        queue.commit(slot, image.getTimestamp(), withRgba);
+    }
+
+    private void toRgba(Image.Plane[] planes, Mat y, int w, int h) {
+        if (planes[1].getPixelStride() != 2) {
+            // Planar chroma is rare on devices; keep the evidence in gray
+            Imgproc.cvtColor(y, rgba, Imgproc.COLOR_GRAY2RGBA);
+            return;
+        }
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        Mat uv1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, u, planes[1].getRowStride());
+        Mat uv2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, v, planes[2].getRowStride());
+        try {
+            // Interleaved chroma starting with U is NV12, with V it is NV21
+            if (uv2.dataAddr() > uv1.dataAddr()) {
+                Imgproc.cvtColorTwoPlane(y, uv1, rgba, Imgproc.COLOR_YUV2RGBA_NV12);
+            } else {
+                Imgproc.cvtColorTwoPlane(y, uv2, rgba, Imgproc.COLOR_YUV2RGBA_NV21);
+            }
+        } finally {
+            uv1.release();
+            uv2.release();
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Makes the next frame also carry an RGBA image. */
+    public void requestRgba() {
+        rgbaRequested = true;
+    }
+
+    @Override
+    public boolean read(Mat rgba, Mat gray) {
+        FrameQueue.Slot slot;
+        try {
+            slot = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (slot == null) {
+            return false;
+        }
+        slot.gray.copyTo(gray);
+        if (slot.hasRgba) {
+            slot.rgba.copyTo(rgba);
+        } else {
+            rgba.release();
+        }
+        timestampNs = slot.timestampNs;
+        queue.recycle(slot);
+        return true;
+    }
+
+    @Override
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public long getDroppedFrameCount() {
+        return queue.getDroppedCount();
+    }
+
+    /** Closes the camera and ends read(). */
+    @Override
+    public void close() {
+        queue.close();
+        HandlerThread thread;
+        synchronized (this) {
+            if (captureSession != null) {
+                captureSession.close();
+                captureSession = null;
+            }
+            if (cameraDevice != null) {
+                cameraDevice.close();
+                cameraDevice = null;
+            }
+            thread = cameraThread;
+            cameraThread = null;
+        }
+        if (thread != null) {
+            thread.quitSafely();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (imageReader != null) {
+            imageReader.close();
+            imageReader = null;
+        }
+        rgba.release();
+        queue.release();
+    }
+}
@@ -0,0 +1,32 @@
+package com.garbagethrowdetector;
+
+import org.opencv.video.BackgroundSubtractor;
+import org.opencv.video.BackgroundSubtractorKNN;
+import org.opencv.video.Video;
+
+/**
+ * K-nearest-neighbours background model. Usually cleaner masks than MOG2 when
+ * foreground covers a small part of the frame, at a somewhat higher cost.
+ */
+public class KnnSegmenter extends BackgroundSubtractorSegmenter {
+
+    @Override
+    protected BackgroundSubtractor createSubtractor() {
+        return Video.createBackgroundSubtractorKNN(history, dist2Threshold(), detectShadows);
+    }
+
+    @Override
+    protected void applySensitivity(BackgroundSubtractor subtractor) {
+        ((BackgroundSubtractorKNN) subtractor).setDist2Threshold(dist2Threshold());
+    }
+
+    @Override
+    protected void applyDetectShadows(BackgroundSubtractor subtractor) {
+        ((BackgroundSubtractorKNN) subtractor).setDetectShadows(detectShadows);
+    }
+
+    // OpenCV default of 400 at medium sensitivity
+    private double dist2Threshold() {
+        return 200 + 400 * (100 - sensitivity) / 100.0;
+    }
+}
@@ -0,0 +1,87 @@
+package com.garbagethrowdetector;
+
+/**
+ * Running latency counters for one pipeline stage.
+ *
+ * Written by a single thread (the stage owner) and read from any thread for
+ * display or logging, so the accessors are synchronized on the instance.
+ * The most recent samples are kept in a fixed ring for percentiles; the ring
+ * is only sorted when a percentile is requested.
+ */
+public class LatencyStats {
+    private static final int SAMPLE_CAPACITY = 8192;
+
+    private final String name;
+    private final long[] samples = new long[SAMPLE_CAPACITY];
+    private int sampleHead = 0;
+
+    private long count = 0;
+    private long totalNs = 0;
+    private long maxNs = 0;
+    private long lastNs = 0;
+
+    public LatencyStats(String name) {
+        this.name = name;
+    }
+
+    public synchronized void record(long durationNs) {
+        count++;
+        totalNs += durationNs;
+        lastNs = durationNs;
+        samples[sampleHead] = durationNs;
+        sampleHead = (sampleHead + 1) % SAMPLE_CAPACITY;
+        if (durationNs > maxNs) {
+            maxNs = durationNs;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMs() {
+        return count == 0 ? 0 : totalNs / (double) count / 1e6;
+    }
+
+    public synchronized double getMaxMs() {
+        return maxNs / 1e6;
+    }
+
+    public synchronized double getLastMs() {
+        return lastNs / 1e6;
+    }
+
+    /**
+     * Latency at the given percentile (0-100) over the most recent samples.
+     */
+    public synchronized double getPercentileMs(double percentile) {
+        int n = (int) Math.min(count, SAMPLE_CAPACITY);
+        if (n == 0) {
+            return 0;
+        }
+        long[] sorted = java.util.Arrays.copyOf(samples, n);
+        java.util.Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, rank))] / 1e6;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        totalNs = 0;
+        maxNs = 0;
+        lastNs = 0;
+        sampleHead = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(java.util.Locale.US,
+            "%s: n=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+            name, count, getMeanMs(), getPercentileMs(50), getPercentileMs(95),
+            getPercentileMs(99), getMaxMs());
+    }
+}
@@ -1,14 +1,16 @@
 package com.garbagethrowdetector;
 
 import android.Manifest;
-import android.content.ContentValues;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
-import android.provider.MediaStore;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -18,10 +20,14 @@ import android.widget.Toast;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
@@ -32,13 +38,8 @@ import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.Point;
-import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
 
 public class MainActivity extends AppCompatActivity implements CameraBridgeViewBase.CvCameraViewListener2 {
 
@@ -54,17 +55,91 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
     private SeekBar throwSensitivitySlider;
     private TextView humanSensitivityValue;
     private TextView throwSensitivityValue;
-    private boolean isProcessing = false;
+    private volatile boolean isProcessing = false;
     
     // For image capture
-    private Mat currentFrameForCapture;
     private boolean shouldCaptureImage = false;
+    private EvidenceWriter evidenceWriter;
+    private ClipRecorder clipRecorder;
     
-    // Litter count
-    private int litterCount = 0;
+    // Incremented on the analysis thread, read on the main thread
+    private final AtomicInteger litterCount = new AtomicInteger();
+    
+    // Status text updates, only on change and rate limited
+    private static final int STATUS_UPDATES_PER_SECOND = 4;
+    private StatusPublisher statusPublisher;
 
     private DetectionProcessor detectionProcessor;
     private ThrowDetector throwDetector;
+    
+    // Person detector network, used instead of the blob shape heuristic
+    // when both files are bundled in the app assets
+    private static final String PERSON_MODEL_ASSET = "MobileNetSSD_deploy.caffemodel";
+    private static final String PERSON_CONFIG_ASSET = "MobileNetSSD_deploy.prototxt";
+    private static final int PERSON_DETECTION_INTERVAL = 5;
+    private static final int PERSON_DETECTION_THREADS = 2;
+    // Without a bundled model, use the HOG people detector on moving regions
+    private static final boolean HOG_PERSON_DETECTOR = false;
+    private static final int HOG_DETECTION_INTERVAL = 3;
+    
+    // Runs detection off the camera thread when PIPELINED_ANALYSIS is set
+    private static final boolean PIPELINED_ANALYSIS = true;
+    private AnalysisWorker analysisWorker;
+    
+    // Overlays are drawn into the preview frame, or on the OverlayView
+    // when OVERLAY_ON_CANVAS is set; never into the analyzed frames
+    private static final boolean OVERLAY_ON_CANVAS = false;
+    // The camera renders the preview into the view's surface by itself when
+    // the direct preview setting is on (see PreviewSettings), so frames are
+    // never converted to a Bitmap or blitted; overlays then always go on the
+    // OverlayView. Set in onCreate, before the camera starts.
+    private boolean overlayOnView = OVERLAY_ON_CANVAS;
+    private final MatOverlayRenderer overlayRenderer = new MatOverlayRenderer();
+    // Camera thread copy of the worker's latest overlay
+    private final Overlay previewOverlay = new Overlay();
+    private OverlayView overlayView;
+    
+    // Skips analysis of a static scene; optionally also lowers the camera
+    // frame rate while idle
+    private static final boolean LOWER_CAMERA_FPS_WHEN_IDLE = true;
+    private final DutyCycleScheduler dutyCycle = new DutyCycleScheduler(this::onDutyCycleModeChanged);
+    private volatile boolean dutyCycleResetRequested = false;
+    
+    // Frames converted to RGBA for the preview: every frame (1), every Nth
+    // frame, or none (0) for a headless run. Analysis always reads the Y
+    // plane; frames that are not shown are only converted when the clip
+    // recorder or the evidence writer takes them
+    private static final int PREVIEW_INTERVAL = 1;
+    private long previewFrameCounter = 0;
+    // Evidence waiting for the next colour frame, when the throw was found
+    // in a frame analyzed without one
+    private final AtomicReference<String> pendingEvidenceName = new AtomicReference<>();
+    
+    // Detection runs in DetectionService when HEADLESS_SERVICE is set, and
+    // keeps running with the screen off; the activity never opens the
+    // camera and only shows the service's status and overlays while visible
+    private static final boolean HEADLESS_SERVICE = false;
+    private DetectionService detectionService;
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            detectionService = ((DetectionService.LocalBinder) binder).getService();
+            detectionService.setViewer(MainActivity.this::onServiceFrameAnalyzed);
+            // Without auto-create this only connects to a started service
+            startButton.setText("Stop Detection");
+            statusPublisher.invalidate();
+            statusPublisher.update(StatusPublisher.Status.DETECTING, litterCount.get());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            detectionService = null;
+        }
+    };
+    
+    // Portrait orientation fix, reuses its output buffers across frames
+    private final FrameRotator frameRotator = new FrameRotator(Core.ROTATE_90_CLOCKWISE);
+    private final NativeHeapMonitor nativeHeapMonitor = new NativeHeapMonitor(300, 100);
 
     private BaseLoaderCallback mLoaderCallback = new BaseLoaderCallback(this) {
         @Override
@@ -72,6 +147,12 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
             switch (status) {
                 case LoaderCallbackInterface.SUCCESS:
                     Log.d(TAG, "OpenCV loaded successfully");
+                    if (HEADLESS_SERVICE) {
+                        // The service owns the camera and the pipeline
+                        statusTextView.setText("Ready to detect in the background.");
+                        startButton.setEnabled(true);
+                        break;
+                    }
                     Log.d(TAG, "Enabling camera view...");
                     // Check camera permission before enabling
                     if (ContextCompat.checkSelfPermission(MainActivity.this, Manifest.permission.CAMERA)
@@ -87,10 +168,26 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
                         });
                     }
                     detectionProcessor = new DetectionProcessor();
+                    detectionProcessor.setRoiMask(RoiSettings.load(MainActivity.this));
+                    PersonDetectionWorker personDetection = createPersonDetection();
+                    if (personDetection != null) {
+                        detectionProcessor.setPersonDetection(personDetection);
+                    }
                     throwDetector = new ThrowDetector();
                     // Initialize sensitivity from sliders
                     detectionProcessor.setHumanSensitivity(humanSensitivitySlider.getProgress());
                     throwDetector.setThrowSensitivity(throwSensitivitySlider.getProgress());
+                    analysisWorker = new AnalysisWorker(detectionProcessor, throwDetector,
+                        MainActivity.this::onFrameAnalyzed);
+                    analysisWorker.start();
+                    evidenceWriter = new EvidenceWriter(
+                        new MediaStoreEvidenceSink(getContentResolver()),
+                        evidenceListener);
+                    evidenceWriter.start();
+                    clipRecorder = new ClipRecorder(
+                        getExternalFilesDir(Environment.DIRECTORY_MOVIES),
+                        clipListener);
+                    clipRecorder.start();
                     statusTextView.setText("OpenCV initialized. Ready to detect.");
                     startButton.setEnabled(true);
                     break;
@@ -101,12 +198,43 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         }
     };
 
+    private final EvidenceWriter.Listener evidenceListener = new EvidenceWriter.Listener() {
+        @Override
+        public void onSaved(String name) {
+            Log.d(TAG, "Image saved to gallery: " + name);
+            runOnUiThread(() -> {
+                Toast.makeText(MainActivity.this, "Image saved: " + name, Toast.LENGTH_SHORT).show();
+            });
+        }
+
+        @Override
+        public void onFailed(String name, Exception error) {
+            Log.e(TAG, "Error saving image: " + error.getMessage());
+            runOnUiThread(() -> {
+                Toast.makeText(MainActivity.this, "Failed to save image: " + error.getMessage(), Toast.LENGTH_SHORT).show();
+            });
+        }
+    };
+
+    private final ClipRecorder.Listener clipListener = new ClipRecorder.Listener() {
+        @Override
+        public void onClipSaved(File file, int frameCount) {
+            Log.d(TAG, "Clip saved: " + file + " (" + frameCount + " frames)");
+        }
+
+        @Override
+        public void onClipFailed(File file, Exception error) {
+            Log.e(TAG, "Error saving clip " + file + ": " + error.getMessage());
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
         mOpenCvCameraView = findViewById(R.id.camera_view);
+        overlayView = findViewById(R.id.overlay_view);
         statusTextView = findViewById(R.id.status_text);
         litterCountText = findViewById(R.id.litter_count_text);
         startButton = findViewById(R.id.start_button);
@@ -117,25 +245,53 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         
         // Initialize litter count display
         updateLitterCount();
+        
+        RoiSettings.updateFromIntent(this, getIntent());
+        PreviewSettings.updateFromIntent(this, getIntent());
+        boolean directPreview = PreviewSettings.isDirectPreview(this);
+        overlayOnView = OVERLAY_ON_CANVAS || directPreview;
+        
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        statusPublisher = new StatusPublisher(mainHandler::postDelayed, STATUS_UPDATES_PER_SECOND);
+        statusPublisher.addListener(this::showStatus);
 
         mOpenCvCameraView.setVisibility(CameraBridgeViewBase.VISIBLE);
         mOpenCvCameraView.setCvCameraViewListener(this);
+        mOpenCvCameraView.setDirectPreview(directPreview);
+        overlayView.setStretchToFill(directPreview);
         // Use back camera (better for detecting people throwing garbage)
         mOpenCvCameraView.setCameraIndex(CameraBridgeViewBase.CAMERA_ID_BACK);
 
         startButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                if (HEADLESS_SERVICE) {
+                    toggleDetectionService();
+                    return;
+                }
                 isProcessing = !isProcessing;
+                statusPublisher.invalidate();
                 if (isProcessing) {
+                    dutyCycleResetRequested = true;
                     startButton.setText("Stop Detection");
-                    statusTextView.setText("Detecting...");
+                    statusPublisher.update(StatusPublisher.Status.DETECTING, litterCount.get());
                 } else {
                     startButton.setText("Start Detection");
-                    statusTextView.setText("Paused");
+                    statusPublisher.update(StatusPublisher.Status.PAUSED, litterCount.get());
+                    if (LOWER_CAMERA_FPS_WHEN_IDLE) {
+                        // The duty cycle is not consulted while paused, so an
+                        // idle frame rate would last for the whole pause
+                        mOpenCvCameraView.setTargetFpsRange(null);
+                    }
                     if (throwDetector != null) {
                         throwDetector.reset();
                     }
+                    if (detectionProcessor != null) {
+                        detectionProcessor.resetTracking();
+                    }
+                    if (analysisWorker != null) {
+                        analysisWorker.clearLatestOverlay();
+                    }
                 }
             }
         });
@@ -177,6 +333,50 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         checkCameraPermission();
     }
 
+    // Returns null when no model is bundled or it fails to load
+    private PersonDetectionWorker createPersonDetection() {
+        try {
+            File model = copyAssetToFile(PERSON_MODEL_ASSET);
+            File config = copyAssetToFile(PERSON_CONFIG_ASSET);
+            DnnPersonDetector detector = new DnnPersonDetector(
+                DnnPersonDetector.Architecture.SSD_MOBILENET, model.getPath(), config.getPath());
+            DnnPersonDetector.setThreadCount(PERSON_DETECTION_THREADS);
+            Log.d(TAG, "Person detector loaded, running every " + PERSON_DETECTION_INTERVAL + " frames");
+            return new PersonDetectionWorker(detector, PERSON_DETECTION_INTERVAL, true);
+        } catch (IOException e) {
+            Log.d(TAG, "No person detector model: " + e.getMessage());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load person detector", e);
+        }
+        if (HOG_PERSON_DETECTOR) {
+            Log.d(TAG, "Using HOG person detector every " + HOG_DETECTION_INTERVAL + " frames");
+            return new PersonDetectionWorker(new HogPersonDetector(), HOG_DETECTION_INTERVAL, true);
+        }
+        Log.d(TAG, "Detecting humans by blob shape");
+        return null;
+    }
+    
+    // The DNN module reads models from files, not from the APK
+    private File copyAssetToFile(String name) throws IOException {
+        File file = new File(getFilesDir(), name);
+        if (file.exists()) {
+            return file;
+        }
+        File partial = new File(getFilesDir(), name + ".tmp");
+        try (InputStream in = getAssets().open(name);
+             OutputStream out = new FileOutputStream(partial)) {
+            byte[] buffer = new byte[16384];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!partial.renameTo(file)) {
+            throw new IOException("Cannot store " + file);
+        }
+        return file;
+    }
+    
     private void updateSensitivityLabel(TextView textView, int value, String type) {
         String level;
         if (value < 25) {
@@ -191,9 +391,41 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         textView.setText(level + " (" + value + "%)");
     }
     
+    // Main thread, called by the status publisher on changes only
+    private void showStatus(StatusPublisher.Status status, int count) {
+        litterCountText.setText(String.valueOf(count));
+        switch (status) {
+            case THROW:
+                statusTextView.setText("⚠️ GARBAGE THROW DETECTED! Total: " + count);
+                statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
+                break;
+            case HUMAN_AND_OBJECT:
+                statusTextView.setText("Monitoring: Human and object detected");
+                statusTextView.setTextColor(getResources().getColor(android.R.color.holo_green_dark, null));
+                break;
+            case HUMAN:
+                statusTextView.setText("Human detected. Waiting for object...");
+                statusTextView.setTextColor(getResources().getColor(android.R.color.holo_blue_dark, null));
+                break;
+            case IDLE:
+                statusTextView.setText("Idle: no motion");
+                statusTextView.setTextColor(getResources().getColor(android.R.color.darker_gray, null));
+                break;
+            case DETECTING:
+                statusTextView.setText("Detecting...");
+                statusTextView.setTextColor(getResources().getColor(android.R.color.black, null));
+                break;
+            case PAUSED:
+            default:
+                statusTextView.setText("Paused");
+                statusTextView.setTextColor(getResources().getColor(android.R.color.black, null));
+                break;
+        }
+    }
+    
     private void updateLitterCount() {
         runOnUiThread(() -> {
-            litterCountText.setText(String.valueOf(litterCount));
+            litterCountText.setText(String.valueOf(litterCount.get()));
         });
     }
     
@@ -269,6 +501,16 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
     @Override
     public void onPause() {
         super.onPause();
+        if (HEADLESS_SERVICE) {
+            // Detection goes on without a viewer
+            if (detectionService != null) {
+                detectionService.setViewer(null);
+                detectionService = null;
+            }
+            unbindService(serviceConnection);
+            overlayView.setOverlay(null);
+            return;
+        }
         if (mOpenCvCameraView != null)
             mOpenCvCameraView.disableView();
     }
@@ -276,6 +518,11 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
     @Override
     public void onResume() {
         super.onResume();
+        if (HEADLESS_SERVICE) {
+            // No auto-create: connects once the service runs
+            bindService(new Intent(this, DetectionService.class), serviceConnection, 0);
+            return;
+        }
         // Reinitialize OpenCV if needed (using static libraries)
         if (OpenCVLoader.initDebug()) {
             Log.d(TAG, "OpenCV ready on resume");
@@ -293,11 +540,33 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         super.onDestroy();
         if (mOpenCvCameraView != null)
             mOpenCvCameraView.disableView();
+        if (analysisWorker != null) {
+            analysisWorker.stop();
+        }
+        if (detectionProcessor != null) {
+            // Stops the person detection thread and frees the detector
+            detectionProcessor.release();
+        }
+        if (clipRecorder != null) {
+            clipRecorder.close();
+            Log.d(TAG, "Clips: " + clipRecorder.getClipsWritten() + " written, "
+                + clipRecorder.getDroppedInputCount() + " frames dropped, "
+                + clipRecorder.getEvictedForCapCount() + " evicted by the buffer cap");
+        }
+        if (evidenceWriter != null) {
+            evidenceWriter.close();
+            Log.d(TAG, "Evidence: " + evidenceWriter.getWrittenCount() + " written, "
+                + evidenceWriter.getDroppedCount() + " dropped, "
+                + evidenceWriter.getCoalescedCount() + " coalesced, "
+                + evidenceWriter.getFailedCount() + " failed");
+        }
     }
 
     @Override
     public void onCameraViewStarted(int width, int height) {
         Log.d(TAG, "Camera view started: " + width + "x" + height);
+        // Also after a camera restart: time without frames is not idle time
+        dutyCycleResetRequested = true;
         runOnUiThread(() -> {
             statusTextView.setText("Camera active: " + width + "x" + height);
         });
@@ -306,126 +575,193 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
     @Override
     public void onCameraViewStopped() {
         Log.d(TAG, "Camera view stopped");
+        frameRotator.release();
+        if (analysisWorker != null) {
+            for (LatencyStats stats : analysisWorker.getStageStats()) {
+                Log.d(TAG, "Pipeline " + stats);
+            }
+            Log.d(TAG, "Pipeline dropped frames: " + analysisWorker.getDroppedFrameCount());
+        }
+        Log.d(TAG, "Duty cycle: " + dutyCycle);
+        Log.d(TAG, "RGBA conversions: " + mOpenCvCameraView.getRgbaConversionCount());
+        Log.d(TAG, "Camera frames: " + mOpenCvCameraView.getDeliveryStats());
+        dutyCycle.release();
+        Log.d(TAG, "Status: " + statusPublisher.getUpdateCount() + " updates, "
+            + statusPublisher.getPostCount() + " main thread posts, "
+            + statusPublisher.getPublishCount() + " published");
     }
 
     @Override
     public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
-        Mat rgba = inputFrame.rgba();
+        // Zero-copy view of the Y plane
         Mat gray = inputFrame.gray();
+        long timestampNs = inputFrame.timestamp();
+        nativeHeapMonitor.onFrame();
+
+        if (dutyCycleResetRequested) {
+            // Detection restarted; do not count the pause as idle time
+            dutyCycleResetRequested = false;
+            dutyCycle.reset();
+        }
+        // The motion check does not care about orientation, so idle frames
+        // are never rotated or copied for analysis
+        boolean analyze = isProcessing && analysisWorker != null && dutyCycle.shouldAnalyze(gray, timestampNs);
+        // The session draws frames itself while the surface is being sized
+        // for the direct preview
+        boolean preview = !mOpenCvCameraView.isDirectPreview() && PREVIEW_INTERVAL > 0
+            && previewFrameCounter++ % PREVIEW_INTERVAL == 0;
+        // A clip in progress gets its post-roll even when the duty cycle idles
+        boolean clip = clipRecorder != null && (analyze || clipRecorder.isRecording())
+            && clipRecorder.wantsFrame(timestampNs);
+        String evidenceName = pendingEvidenceName.getAndSet(null);
         
-        // Rotate the frame 90 degrees clockwise to fix orientation in portrait mode
-        Mat rotated = new Mat();
-        Mat M = Imgproc.getRotationMatrix2D(new Point(rgba.cols() / 2.0, rgba.rows() / 2.0), -90, 1.0);
-        Imgproc.warpAffine(rgba, rotated, M, new Size(rgba.rows(), rgba.cols()));
+        // YUV to RGBA conversion only for frames that are shown or saved
+        Mat rotated = null;
+        if (preview || clip || evidenceName != null) {
+            // Rotate the frame 90 degrees clockwise to fix orientation in portrait mode
+            rotated = frameRotator.rotateRgba(inputFrame.rgba());
+        }
+        // Before the overlay is drawn into the frame
+        if (clip) {
+            clipRecorder.offer(rotated, timestampNs);
+        }
+        if (evidenceName != null) {
+            saveImageToGallery(rotated, evidenceName);
+        }
         
-        // Also rotate gray frame for processing
-        Mat grayRotated = new Mat();
-        Imgproc.warpAffine(gray, grayRotated, M, new Size(gray.rows(), gray.cols()));
-        gray = grayRotated;
-
-        if (isProcessing && detectionProcessor != null && throwDetector != null) {
-            // Detect objects (human and garbage)
-            DetectionResult result = detectionProcessor.detect(gray, rotated);
-            
-            // Check for throwing motion
-            if (result.hasHuman && result.hasGarbage) {
-                boolean throwingDetected = throwDetector.detectThrow(
-                    result.humanPosition,
-                    result.garbagePosition,
-                    rotated
-                );
-
-                if (throwingDetected) {
-                    // Capture image when throw is detected
-                    if (!shouldCaptureImage) {
-                        shouldCaptureImage = true;
-                        litterCount++; // Increment litter count
-                        updateLitterCount();
-                        rotated.copyTo(currentFrameForCapture = new Mat());
-                        saveImageToGallery(currentFrameForCapture);
-                    }
-                    
-                    runOnUiThread(() -> {
-                        statusTextView.setText("⚠️ GARBAGE THROW DETECTED! Total: " + litterCount);
-                        statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
-                    });
-                } else {
-                    shouldCaptureImage = false; // Reset flag when throw is no longer detected
-                    runOnUiThread(() -> {
-                        statusTextView.setText("Monitoring: Human and object detected");
-                        statusTextView.setTextColor(getResources().getColor(android.R.color.holo_green_dark, null));
-                    });
-                }
-            } else if (result.hasHuman) {
-                shouldCaptureImage = false;
-                runOnUiThread(() -> {
-                    statusTextView.setText("Human detected. Waiting for object...");
-                    statusTextView.setTextColor(getResources().getColor(android.R.color.holo_blue_dark, null));
-                });
+        if (analyze) {
+            // Also rotate gray frame for processing
+            gray = frameRotator.rotateGray(gray);
+            // Shown frames go along so a throw saves the analyzed frame itself
+            Mat analyzedRgba = preview ? rotated : null;
+            if (PIPELINED_ANALYSIS) {
+                // Camera thread only copies the frame; the preview shows the
+                // latest result the worker has produced
+                analysisWorker.submit(gray, analyzedRgba, timestampNs);
             } else {
-                shouldCaptureImage = false;
-                runOnUiThread(() -> {
-                    statusTextView.setText("Detecting...");
-                    statusTextView.setTextColor(getResources().getColor(android.R.color.black, null));
-                });
+                analysisWorker.analyzeInline(gray, analyzedRgba, timestampNs);
+            }
+            if (!overlayOnView && preview) {
+                analysisWorker.copyLatestOverlay(previewOverlay);
+                overlayRenderer.render(previewOverlay, rotated);
             }
         }
 
-        return rotated;
+        // Null leaves the preview unchanged
+        return preview ? rotated : null;
     }
     
-    private void saveImageToGallery(Mat frame) {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    // Convert Mat to Bitmap
-                    Bitmap bitmap = Bitmap.createBitmap(frame.cols(), frame.rows(), Bitmap.Config.ARGB_8888);
-                    Utils.matToBitmap(frame, bitmap);
-                    
-                    // Save to gallery
-                    String filename = "Litter_Detection_" + 
+    // Called on the camera thread
+    private void onDutyCycleModeChanged(DutyCycleScheduler.Mode mode) {
+        Log.d(TAG, "Duty cycle " + mode + ", motion score " + dutyCycle.getLastScore());
+        if (mode == DutyCycleScheduler.Mode.IDLE) {
+            if (analysisWorker != null) {
+                analysisWorker.clearLatestOverlay();
+            }
+            statusPublisher.update(StatusPublisher.Status.IDLE, litterCount.get());
+        } else {
+            statusPublisher.update(StatusPublisher.Status.DETECTING, litterCount.get());
+        }
+        if (LOWER_CAMERA_FPS_WHEN_IDLE) {
+            // Checked here too in case detection was paused meanwhile
+            mOpenCvCameraView.setTargetFpsRange(mode == DutyCycleScheduler.Mode.IDLE && isProcessing
+                ? mOpenCvCameraView.getLowestFpsRange() : null);
+        }
+    }
+    
+    private void toggleDetectionService() {
+        statusPublisher.invalidate();
+        if (detectionService != null && detectionService.getPipeline() != null) {
+            DetectionService.stop(this);
+            startButton.setText("Start Detection");
+            overlayView.setOverlay(null);
+            statusPublisher.update(StatusPublisher.Status.PAUSED, litterCount.get());
+        } else {
+            if (!DetectionService.start(this)) {
+                Toast.makeText(this, "Camera permission is required", Toast.LENGTH_LONG).show();
+                return;
+            }
+            startButton.setText("Stop Detection");
+            statusPublisher.update(StatusPublisher.Status.DETECTING, litterCount.get());
+        }
+    }
+    
+    // Called on the service's analysis thread while attached as viewer
+    private void onServiceFrameAnalyzed(CameraPipeline pipeline, Mat rgba, DetectionResult result,
+                                        boolean throwDetected) {
+        overlayView.setOverlay(result.overlay);
+        StatusPublisher.Status status;
+        if (throwDetected) {
+            status = StatusPublisher.Status.THROW;
+        } else if (result.hasHuman && result.hasGarbage) {
+            status = StatusPublisher.Status.HUMAN_AND_OBJECT;
+        } else if (result.hasHuman) {
+            status = StatusPublisher.Status.HUMAN;
+        } else {
+            status = StatusPublisher.Status.DETECTING;
+        }
+        statusPublisher.update(status, (int) pipeline.getThrowCount());
+    }
+    
+    private void onFrameAnalyzed(Mat rgba, DetectionResult result, boolean throwingDetected) {
+        if (!isProcessing) {
+            // Frame was queued before detection was paused
+            return;
+        }
+        if (overlayOnView) {
+            overlayView.setOverlay(result.overlay);
+        }
+        
+        // Tracks can coast through a frame without detections, so a throw
+        // may be reported even when this frame has no fresh object
+        if (throwingDetected || (result.hasHuman && result.hasGarbage)) {
+            if (throwingDetected) {
+                // Capture image when throw is detected
+                if (!shouldCaptureImage) {
+                    shouldCaptureImage = true;
+                    ThrowEvent event = throwDetector.getLastThrowEvent();
+                    if (event != null) {
+                        Log.d(TAG, "Throw: human #" + event.humanId + " object #" + event.objectId
+                            + " launch speed " + event.getLaunchSpeed()
+                            + " residual " + event.fitResidual);
+                    }
+                    litterCount.incrementAndGet();
+                    String name = "Litter_Detection_" +
                         new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date()) + ".jpg";
-                    
-                    ContentValues values = new ContentValues();
-                    values.put(MediaStore.Images.Media.DISPLAY_NAME, filename);
-                    values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
-                    
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                        values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/GarbageThrowDetector");
-                        values.put(MediaStore.Images.Media.IS_PENDING, 1);
+                    if (rgba != null) {
+                        saveImageToGallery(rgba, name);
+                    } else {
+                        // Analyzed without colour; save the next camera frame
+                        pendingEvidenceName.set(name);
                     }
-                    
-                    Uri uri = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-                    
-                    if (uri != null) {
-                        OutputStream outputStream = getContentResolver().openOutputStream(uri);
-                        if (outputStream != null) {
-                            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, outputStream);
-                            outputStream.close();
-                            
-                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                                values.clear();
-                                values.put(MediaStore.Images.Media.IS_PENDING, 0);
-                                getContentResolver().update(uri, values, null, null);
-                            }
-                            
-                            runOnUiThread(() -> {
-                                Toast.makeText(MainActivity.this, "Image saved: " + filename, Toast.LENGTH_SHORT).show();
-                                Log.d(TAG, "Image saved to gallery: " + filename);
-                            });
-                        }
+                    if (clipRecorder != null) {
+                        clipRecorder.trigger("Litter_Clip_" + new SimpleDateFormat("yyyyMMdd_HHmmss",
+                            Locale.getDefault()).format(new Date()), result.timestampNs);
                     }
-                    
-                    bitmap.recycle();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error saving image: " + e.getMessage());
-                    runOnUiThread(() -> {
-                        Toast.makeText(MainActivity.this, "Failed to save image: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    });
                 }
+                
+                statusPublisher.update(StatusPublisher.Status.THROW, litterCount.get());
+            } else {
+                shouldCaptureImage = false; // Reset flag when throw is no longer detected
+                statusPublisher.update(StatusPublisher.Status.HUMAN_AND_OBJECT, litterCount.get());
             }
-        }).start();
+        } else if (result.hasHuman) {
+            shouldCaptureImage = false;
+            statusPublisher.update(StatusPublisher.Status.HUMAN, litterCount.get());
+        } else {
+            shouldCaptureImage = false;
+            statusPublisher.update(StatusPublisher.Status.DETECTING, litterCount.get());
+        }
+    }
+    
+    private void saveImageToGallery(Mat frame, String filename) {
+        if (evidenceWriter == null) {
+            return;
+        }
+        // Copies the frame; encoding and I/O happen on the writer thread
+        if (!evidenceWriter.submit(frame, filename)) {
+            Log.w(TAG, "Evidence writer busy, frame dropped: " + filename);
+        }
     }
 }
 
@@ -0,0 +1,76 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Draws an {@link Overlay} into an RGBA Mat with Imgproc, e.g. into the
+ * preview frame. Points and the colour Scalar are reused, so rendering does
+ * not allocate.
+ */
+public class MatOverlayRenderer {
+    private static final double LABEL_OFFSET = 10;
+    private static final double ARROW_TIP_LENGTH = 0.3;
+
+    private final Point from = new Point();
+    private final Point to = new Point();
+    private final Scalar color = new Scalar(0, 0, 0, 255);
+    private boolean enabled = true;
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param rgba frame in the overlay's coordinate system
+     */
+    public void render(Overlay overlay, Mat rgba) {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < overlay.size(); i++) {
+            setColor(overlay.getColor(i));
+            from.x = overlay.getX1(i);
+            from.y = overlay.getY1(i);
+            to.x = overlay.getX2(i);
+            to.y = overlay.getY2(i);
+            int thickness = Math.max(1, Math.round(overlay.getWidth(i)));
+            switch (overlay.getKind(i)) {
+                case Overlay.BOX:
+                    Imgproc.rectangle(rgba, from, to, color, thickness);
+                    String label = overlay.getLabel(i);
+                    if (label != null) {
+                        from.y -= LABEL_OFFSET;
+                        Imgproc.putText(rgba, label, from, Imgproc.FONT_HERSHEY_SIMPLEX, 0.6, color, 2);
+                    }
+                    break;
+                case Overlay.ARROW:
+                    Imgproc.arrowedLine(rgba, from, to, color, thickness, Imgproc.LINE_8, 0, ARROW_TIP_LENGTH);
+                    break;
+                case Overlay.MARKER:
+                    Imgproc.circle(rgba, from, (int) Math.round(overlay.getX2(i)), color, -1);
+                    break;
+                case Overlay.TEXT:
+                    Imgproc.putText(rgba, overlay.getLabel(i), from, Imgproc.FONT_HERSHEY_SIMPLEX,
+                        overlay.getWidth(i), color, 3);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // ARGB int to the Scalar order of an RGBA Mat
+    private void setColor(int argb) {
+        color.val[0] = (argb >> 16) & 0xFF;
+        color.val[1] = (argb >> 8) & 0xFF;
+        color.val[2] = argb & 0xFF;
+        color.val[3] = (argb >>> 24) & 0xFF;
+    }
+}
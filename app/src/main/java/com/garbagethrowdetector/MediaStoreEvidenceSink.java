@@ -0,0 +1,63 @@
+package com.garbagethrowdetector;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes evidence JPEGs into the shared Pictures/GarbageThrowDetector
+ * gallery folder.
+ */
+public class MediaStoreEvidenceSink implements EvidenceWriter.Sink {
+    private static final String RELATIVE_PATH = Environment.DIRECTORY_PICTURES + "/GarbageThrowDetector";
+
+    private final ContentResolver resolver;
+    private final ContentValues values = new ContentValues();
+
+    public MediaStoreEvidenceSink(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public void write(String name, byte[] data, int length) throws IOException {
+        values.clear();
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, name);
+        values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, RELATIVE_PATH);
+            values.put(MediaStore.Images.Media.IS_PENDING, 1);
+        }
+
+        Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) {
+            throw new IOException("MediaStore insert failed for " + name);
+        }
+        try {
+            OutputStream outputStream = resolver.openOutputStream(uri);
+            if (outputStream == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            try {
+                outputStream.write(data, 0, length);
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Do not leave an empty pending entry behind
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.clear();
+            values.put(MediaStore.Images.Media.IS_PENDING, 0);
+            resolver.update(uri, values, null, null);
+        }
+    }
+}
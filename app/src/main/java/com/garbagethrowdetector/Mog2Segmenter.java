@@ -0,0 +1,32 @@
+package com.garbagethrowdetector;
+
+import org.opencv.video.BackgroundSubtractor;
+import org.opencv.video.BackgroundSubtractorMOG2;
+import org.opencv.video.Video;
+
+/**
+ * Gaussian mixture background model (MOG2). Adapts to gradual lighting
+ * changes and repetitive background motion such as swaying trees.
+ */
+public class Mog2Segmenter extends BackgroundSubtractorSegmenter {
+
+    @Override
+    protected BackgroundSubtractor createSubtractor() {
+        return Video.createBackgroundSubtractorMOG2(history, varThreshold(), detectShadows);
+    }
+
+    @Override
+    protected void applySensitivity(BackgroundSubtractor subtractor) {
+        ((BackgroundSubtractorMOG2) subtractor).setVarThreshold(varThreshold());
+    }
+
+    @Override
+    protected void applyDetectShadows(BackgroundSubtractor subtractor) {
+        ((BackgroundSubtractorMOG2) subtractor).setDetectShadows(detectShadows);
+    }
+
+    // OpenCV default of 16 at medium sensitivity
+    private double varThreshold() {
+        return 6 + 20 * (100 - sensitivity) / 100.0;
+    }
+}
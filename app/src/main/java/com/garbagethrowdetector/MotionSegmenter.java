@@ -0,0 +1,60 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+
+/**
+ * Produces a binary foreground mask for the motion detection stage.
+ *
+ * Implementations keep whatever background model they need between frames.
+ * The mask is written into a caller owned Mat as CV_8UC1 with foreground
+ * pixels set to 255 and everything else (including shadows) set to 0.
+ */
+public interface MotionSegmenter {
+
+    enum Type {
+        FRAME_DIFFERENCE,
+        RUNNING_AVERAGE,
+        MOG2,
+        KNN;
+
+        public MotionSegmenter create() {
+            switch (this) {
+                case RUNNING_AVERAGE:
+                    return new RunningAverageSegmenter();
+                case MOG2:
+                    return new Mog2Segmenter();
+                case KNN:
+                    return new KnnSegmenter();
+                case FRAME_DIFFERENCE:
+                default:
+                    return new FrameDifferenceSegmenter();
+            }
+        }
+    }
+
+    /**
+     * Updates the background model with the given gray frame and writes the
+     * foreground mask.
+     *
+     * @return false while the model is still seeding and the mask is not
+     *         meaningful yet (e.g. on the first frame)
+     */
+    boolean apply(Mat gray, Mat foregroundMask);
+
+    /**
+     * Detection sensitivity 0-100; higher values mark smaller intensity
+     * changes as foreground.
+     */
+    void setSensitivity(int sensitivity);
+
+    /**
+     * How fast the background adapts, 0-1. A negative value selects the
+     * implementation's automatic rate where supported.
+     */
+    void setLearningRate(double learningRate);
+
+    /** Drops the background model; the next frame seeds a new one. */
+    void reset();
+
+    void release();
+}
@@ -0,0 +1,57 @@
+package com.garbagethrowdetector;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Samples the native heap every N frames and logs its growth relative to a
+ * baseline taken after warm-up. A leak in the frame path shows up as a
+ * steadily increasing growth value; a healthy pipeline stays flat.
+ */
+public class NativeHeapMonitor {
+    private static final String TAG = "NativeHeapMonitor";
+
+    private final int sampleInterval;
+    private final int warmupFrames;
+
+    private long frameCount = 0;
+    private long baselineBytes = -1;
+    private long lastGrowthBytes = 0;
+    private long maxGrowthBytes = 0;
+
+    public NativeHeapMonitor(int sampleInterval, int warmupFrames) {
+        this.sampleInterval = Math.max(1, sampleInterval);
+        this.warmupFrames = warmupFrames;
+    }
+
+    public void onFrame() {
+        frameCount++;
+        if (frameCount < warmupFrames || frameCount % sampleInterval != 0) {
+            return;
+        }
+
+        long allocated = Debug.getNativeHeapAllocatedSize();
+        if (baselineBytes < 0) {
+            baselineBytes = allocated;
+            Log.d(TAG, "Native heap baseline: " + (allocated / 1024) + " KB");
+            return;
+        }
+
+        lastGrowthBytes = allocated - baselineBytes;
+        maxGrowthBytes = Math.max(maxGrowthBytes, lastGrowthBytes);
+        Log.d(TAG, "Native heap after " + frameCount + " frames: "
+            + (allocated / 1024) + " KB (growth " + (lastGrowthBytes / 1024) + " KB)");
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getLastGrowthBytes() {
+        return lastGrowthBytes;
+    }
+
+    public long getMaxGrowthBytes() {
+        return maxGrowthBytes;
+    }
+}
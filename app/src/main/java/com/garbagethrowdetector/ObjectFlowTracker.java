@@ -0,0 +1,340 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Refines the positions and velocities of small object tracks with sparse
+ * Lucas-Kanade optical flow.
+ *
+ * Blob centroids jump around as the segmented shape changes from frame to
+ * frame. Instead, a few corner features are picked inside each object's
+ * box and followed with pyramidal LK; the median feature displacement gives
+ * a sub-pixel motion estimate that is integrated into the position.
+ * Features are only re-detected when too many of them have been lost.
+ *
+ * Flow runs on small patches around each object rather than the whole
+ * frame. For each track the patch of the next search area is kept from the
+ * previous frame, so only those few patches are copied and their pyramids
+ * are tiny. (The Java bindings take plain Mats for calcOpticalFlowPyrLK, so
+ * prebuilt pyramids cannot be passed in and reused directly.)
+ *
+ * Nothing is allocated per frame once the tracks have settled: patches are
+ * copied with getRectSubPix into per-track buffers that only grow (in steps
+ * of PATCH_STEP), point sets are padded to MAX_FEATURES so the LK outputs
+ * keep their size, and flow states are pooled.
+ *
+ * Analysis thread only.
+ */
+public class ObjectFlowTracker {
+
+    private static final Size WIN_SIZE = new Size(11, 11);
+    private static final int MAX_LEVEL = 2;
+    private static final int MAX_FEATURES = 12;
+    private static final int MIN_FEATURES = 4;
+    private static final double FEATURE_QUALITY = 0.01;
+    private static final double FEATURE_MIN_DISTANCE = 2;
+    // Search area around the object box, in multiples of its larger side
+    private static final double SEARCH_MARGIN = 1.0;
+    private static final int MIN_SEARCH_MARGIN = 16;
+    // Boxes larger than this (pixels per side) are not small objects
+    private static final int MAX_OBJECT_SIZE = 200;
+    // Patch sizes are rounded up to this so small size changes reuse the buffers
+    private static final int PATCH_STEP = 32;
+
+    private static class FlowState {
+        int id;
+        long seenFrame;
+        // Search area of the previous frame, and the same area of this one
+        Mat patch = new Mat();
+        Mat current = new Mat();
+        final Mat featureMask = new Mat();
+        final Rect patchRect = new Rect();
+        boolean hasPatch = false;
+        // Feature positions in frame coordinates
+        final float[] features = new float[2 * MAX_FEATURES];
+        int featureCount = 0;
+        // Flow integrated position and velocity in pixels per frame
+        double x;
+        double y;
+        double vx;
+        double vy;
+        boolean valid = false;
+
+        void clear() {
+            hasPatch = false;
+            featureCount = 0;
+            valid = false;
+        }
+
+        void release() {
+            patch.release();
+            current.release();
+            featureMask.release();
+        }
+    }
+
+    private final List<FlowState> states = new ArrayList<>();
+    private final List<FlowState> freeStates = new ArrayList<>();
+    private long frameCount = 0;
+
+    // Scratch, reused across frames
+    private final MatOfPoint2f prevPoints = new MatOfPoint2f();
+    private final MatOfPoint2f nextPoints = new MatOfPoint2f();
+    private final MatOfByte status = new MatOfByte();
+    private final MatOfFloat error = new MatOfFloat();
+    private final MatOfPoint corners = new MatOfPoint();
+    private final Size patchSize = new Size();
+    private final Point patchCenter = new Point();
+    private final Point maskFrom = new Point();
+    private final Point maskTo = new Point();
+    private final Scalar maskOff = new Scalar(0);
+    private final Scalar maskOn = new Scalar(255);
+    private final float[] pointBuffer = new float[2 * MAX_FEATURES];
+    private final byte[] statusBuffer = new byte[MAX_FEATURES];
+    private final int[] cornerBuffer = new int[2 * MAX_FEATURES];
+    private final double[] dxBuffer = new double[MAX_FEATURES];
+    private final double[] dyBuffer = new double[MAX_FEATURES];
+
+    public ObjectFlowTracker() {
+        prevPoints.create(MAX_FEATURES, 1, CvType.CV_32FC2);
+    }
+
+    /**
+     * Follows the given object tracks into this frame, replacing their
+     * positions and velocities with the flow estimate where flow could be
+     * followed.
+     *
+     * @param gray full resolution frame the track boxes refer to
+     * @return the same list
+     */
+    public List<TrackedObject> refine(Mat gray, List<TrackedObject> objects) {
+        frameCount++;
+        for (int i = 0; i < objects.size(); i++) {
+            TrackedObject object = objects.get(i);
+            if (object.rect.width > MAX_OBJECT_SIZE || object.rect.height > MAX_OBJECT_SIZE) {
+                continue;
+            }
+            FlowState state = findOrCreate(object.id);
+            boolean followed = follow(state, gray, object);
+            prepareNext(state, gray, object, followed);
+            if (followed) {
+                object.position.x = state.x;
+                object.position.y = state.y;
+                object.velocityX = state.vx;
+                object.velocityY = state.vy;
+            }
+        }
+
+        // Drop tracks that ended
+        for (int i = states.size() - 1; i >= 0; i--) {
+            if (states.get(i).seenFrame != frameCount) {
+                freeStates.add(states.remove(i));
+            }
+        }
+        return objects;
+    }
+
+    private FlowState findOrCreate(int id) {
+        for (int i = 0; i < states.size(); i++) {
+            if (states.get(i).id == id) {
+                states.get(i).seenFrame = frameCount;
+                return states.get(i);
+            }
+        }
+        FlowState state = freeStates.isEmpty()
+            ? new FlowState() : freeStates.remove(freeStates.size() - 1);
+        state.clear();
+        state.id = id;
+        state.seenFrame = frameCount;
+        states.add(state);
+        return state;
+    }
+
+    // Copies a rect of gray into dst; parts outside the frame repeat the
+    // border. The centre is on the pixel grid, so this is a plain copy.
+    private void copyArea(Mat gray, Rect rect, Mat dst) {
+        patchSize.width = rect.width;
+        patchSize.height = rect.height;
+        patchCenter.x = rect.x + (rect.width - 1) / 2.0;
+        patchCenter.y = rect.y + (rect.height - 1) / 2.0;
+        Imgproc.getRectSubPix(gray, patchSize, patchCenter, dst);
+    }
+
+    // Tracks the features from the stored patch into the same area of this
+    // frame; false if there was nothing to follow or too few survived
+    private boolean follow(FlowState state, Mat gray, TrackedObject object) {
+        if (state.featureCount == 0 || !state.hasPatch
+                || state.patchRect.x >= gray.cols() || state.patchRect.y >= gray.rows()) {
+            state.valid = false;
+            return false;
+        }
+        int n = state.featureCount;
+        for (int i = 0; i < MAX_FEATURES; i++) {
+            // Unused slots repeat the last feature; their results are ignored
+            int f = Math.min(i, n - 1);
+            pointBuffer[2 * i] = state.features[2 * f] - state.patchRect.x;
+            pointBuffer[2 * i + 1] = state.features[2 * f + 1] - state.patchRect.y;
+        }
+        prevPoints.put(0, 0, pointBuffer);
+
+        copyArea(gray, state.patchRect, state.current);
+        Video.calcOpticalFlowPyrLK(state.patch, state.current, prevPoints, nextPoints, status, error,
+            WIN_SIZE, MAX_LEVEL);
+        nextPoints.get(0, 0, pointBuffer);
+        status.get(0, 0, statusBuffer);
+
+        int good = 0;
+        for (int i = 0; i < n; i++) {
+            if (statusBuffer[i] == 0) {
+                continue;
+            }
+            float nx = pointBuffer[2 * i] + state.patchRect.x;
+            float ny = pointBuffer[2 * i + 1] + state.patchRect.y;
+            dxBuffer[good] = nx - state.features[2 * i];
+            dyBuffer[good] = ny - state.features[2 * i + 1];
+            state.features[2 * good] = nx;
+            state.features[2 * good + 1] = ny;
+            good++;
+        }
+        state.featureCount = good;
+        if (good < MIN_FEATURES) {
+            state.valid = false;
+            return false;
+        }
+
+        double dx = median(dxBuffer, good);
+        double dy = median(dyBuffer, good);
+        if (!state.valid) {
+            state.x = object.position.x;
+            state.y = object.position.y;
+        }
+        state.x += dx;
+        state.y += dy;
+        state.vx = dx;
+        state.vy = dy;
+
+        // Features may have locked onto the background; fall back to the
+        // track if the flow estimate wandered outside its box
+        double limit = Math.max(object.rect.width, object.rect.height);
+        if (Math.abs(state.x - object.position.x) > limit || Math.abs(state.y - object.position.y) > limit) {
+            state.valid = false;
+            state.featureCount = 0;
+            return false;
+        }
+        state.valid = true;
+        return true;
+    }
+
+    // Keeps the search area around the object for the next frame and tops
+    // up the features if too many were lost
+    private void prepareNext(FlowState state, Mat gray, TrackedObject object, boolean followed) {
+        Rect box = object.rect;
+        int margin = (int) Math.max(MIN_SEARCH_MARGIN, SEARCH_MARGIN * Math.max(box.width, box.height));
+        int x0 = Math.max(0, box.x - margin);
+        int y0 = Math.max(0, box.y - margin);
+        int x1 = Math.min(gray.cols(), box.x + box.width + margin);
+        int y1 = Math.min(gray.rows(), box.y + box.height + margin);
+        if (x1 - x0 < WIN_SIZE.width || y1 - y0 < WIN_SIZE.height) {
+            state.clear();
+            return;
+        }
+        // Grow only, also for later tracks reusing the pooled state, so the
+        // buffers settle at the largest area seen whether a box breathes or
+        // is clipped by the frame edge
+        int width = Math.max(roundUp(x1 - x0), state.patchRect.width);
+        int height = Math.max(roundUp(y1 - y0), state.patchRect.height);
+        boolean sameArea = followed && state.patchRect.x == x0 && state.patchRect.y == y0
+            && state.patchRect.width == width && state.patchRect.height == height;
+        state.patchRect.x = x0;
+        state.patchRect.y = y0;
+        state.patchRect.width = width;
+        state.patchRect.height = height;
+        if (sameArea) {
+            // This frame's copy of the area was made by follow()
+            Mat previous = state.patch;
+            state.patch = state.current;
+            state.current = previous;
+        } else {
+            copyArea(gray, state.patchRect, state.patch);
+        }
+        state.hasPatch = true;
+
+        if (state.featureCount >= MIN_FEATURES) {
+            return;
+        }
+        // Look for corners inside the object box only
+        int bx0 = Math.max(0, box.x - x0);
+        int by0 = Math.max(0, box.y - y0);
+        int bx1 = Math.min(x1 - x0, box.x + box.width - x0);
+        int by1 = Math.min(y1 - y0, box.y + box.height - y0);
+        if (bx1 <= bx0 || by1 <= by0) {
+            return;
+        }
+        // Drawn rather than setTo(), whose binding returns a new Mat header
+        state.featureMask.create(height, width, CvType.CV_8UC1);
+        maskFrom.x = 0;
+        maskFrom.y = 0;
+        maskTo.x = width - 1;
+        maskTo.y = height - 1;
+        Imgproc.rectangle(state.featureMask, maskFrom, maskTo, maskOff, Imgproc.FILLED);
+        maskFrom.x = bx0;
+        maskFrom.y = by0;
+        maskTo.x = bx1 - 1;
+        maskTo.y = by1 - 1;
+        Imgproc.rectangle(state.featureMask, maskFrom, maskTo, maskOn, Imgproc.FILLED);
+        Imgproc.goodFeaturesToTrack(state.patch, corners, MAX_FEATURES,
+            FEATURE_QUALITY, FEATURE_MIN_DISTANCE, state.featureMask);
+        int found = (int) Math.min(MAX_FEATURES, corners.total());
+        if (found > 0) {
+            corners.get(0, 0, cornerBuffer);
+        }
+        for (int i = 0; i < found; i++) {
+            state.features[2 * i] = cornerBuffer[2 * i] + x0;
+            state.features[2 * i + 1] = cornerBuffer[2 * i + 1] + y0;
+        }
+        state.featureCount = found;
+    }
+
+    private static int roundUp(int size) {
+        return (size + PATCH_STEP - 1) / PATCH_STEP * PATCH_STEP;
+    }
+
+    // Median of the first n values; reorders them
+    private static double median(double[] values, int n) {
+        Arrays.sort(values, 0, n);
+        return n % 2 == 1 ? values[n / 2] : (values[n / 2 - 1] + values[n / 2]) / 2;
+    }
+
+    public void reset() {
+        freeStates.addAll(states);
+        states.clear();
+    }
+
+    public void release() {
+        reset();
+        for (int i = 0; i < freeStates.size(); i++) {
+            freeStates.get(i).release();
+        }
+        freeStates.clear();
+        prevPoints.release();
+        nextPoints.release();
+        status.release();
+        error.release();
+        corners.release();
+    }
+}
@@ -0,0 +1,190 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps persistent IDs for detections across frames.
+ *
+ * Each frame, existing tracks are advanced by their Kalman filter and
+ * greedily matched to the new detections, best match first. A pair matches
+ * when the boxes overlap by at least MIN_IOU or, for small fast objects that
+ * no longer overlap, when the detection centre lies within a gate scaled to
+ * the track size. Unmatched detections start new tracks; tracks that go
+ * unmatched for too many frames are dropped.
+ *
+ * Tracks and snapshots are pooled, so a steady scene allocates nothing. The
+ * returned list and its snapshots are overwritten by the next update().
+ */
+public class ObjectTracker {
+    private static final double MIN_IOU = 0.1;
+    // Centroid gate as a multiple of the track's larger box dimension
+    private static final double CENTROID_GATE = 1.5;
+
+    private final int maxMissedFrames;
+    private final int minHits;
+    private final List<Track> tracks = new ArrayList<>();
+    // Dropped tracks kept for reuse
+    private final List<Track> freeTracks = new ArrayList<>();
+    // Returned by update() and coast(), refilled from the snapshot pool
+    private final List<TrackedObject> confirmed = new ArrayList<>();
+    private final List<TrackedObject> snapshots = new ArrayList<>();
+    private int nextId = 1;
+
+    // Scratch for greedy matching, grown as needed
+    private boolean[] trackMatched = new boolean[0];
+    private boolean[] detectionMatched = new boolean[0];
+
+    /**
+     * @param maxMissedFrames frames a track survives without a matching
+     *                        detection before it is dropped
+     * @param minHits         matches needed before a track is reported
+     */
+    public ObjectTracker(int maxMissedFrames, int minHits) {
+        this.maxMissedFrames = maxMissedFrames;
+        this.minHits = minHits;
+    }
+
+    /**
+     * Associates this frame's detections with the existing tracks.
+     *
+     * @return snapshots of the confirmed tracks, including ones coasting on
+     *         their prediction for a few frames
+     */
+    public List<TrackedObject> update(List<Rect> detections) {
+        for (int i = 0; i < tracks.size(); i++) {
+            tracks.get(i).predict();
+        }
+
+        if (trackMatched.length < tracks.size()) {
+            trackMatched = new boolean[tracks.size() * 2];
+        }
+        if (detectionMatched.length < detections.size()) {
+            detectionMatched = new boolean[detections.size() * 2];
+        }
+        java.util.Arrays.fill(trackMatched, false);
+        java.util.Arrays.fill(detectionMatched, false);
+
+        // Greedy association: repeatedly take the best remaining pair
+        while (true) {
+            int bestTrack = -1;
+            int bestDetection = -1;
+            double bestScore = 0;
+            for (int t = 0; t < tracks.size(); t++) {
+                if (trackMatched[t]) {
+                    continue;
+                }
+                Track track = tracks.get(t);
+                for (int d = 0; d < detections.size(); d++) {
+                    if (detectionMatched[d]) {
+                        continue;
+                    }
+                    double score = matchScore(track, detections.get(d));
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestTrack = t;
+                        bestDetection = d;
+                    }
+                }
+            }
+            if (bestTrack < 0) {
+                break;
+            }
+            tracks.get(bestTrack).correct(detections.get(bestDetection));
+            trackMatched[bestTrack] = true;
+            detectionMatched[bestDetection] = true;
+        }
+
+        int existing = tracks.size();
+        for (int t = existing - 1; t >= 0; t--) {
+            if (!trackMatched[t]) {
+                Track track = tracks.get(t);
+                track.markMissed();
+                if (track.getMissedFrames() > maxMissedFrames) {
+                    freeTracks.add(tracks.remove(t));
+                }
+            }
+        }
+
+        for (int d = 0; d < detections.size(); d++) {
+            if (!detectionMatched[d]) {
+                tracks.add(newTrack(detections.get(d)));
+            }
+        }
+
+        return confirmedSnapshots();
+    }
+
+    /**
+     * Advances the tracks by one frame without detections, for the frames
+     * between runs of a detector that does not see every frame. Unlike
+     * update() with no detections, tracks are not counted as missed, so they
+     * move along their predicted path until the next detection.
+     */
+    public List<TrackedObject> coast() {
+        for (int i = 0; i < tracks.size(); i++) {
+            tracks.get(i).predict();
+        }
+        return confirmedSnapshots();
+    }
+
+    private Track newTrack(Rect detection) {
+        if (freeTracks.isEmpty()) {
+            return new Track(nextId++, detection);
+        }
+        Track track = freeTracks.remove(freeTracks.size() - 1);
+        track.restart(nextId++, detection);
+        return track;
+    }
+
+    private List<TrackedObject> confirmedSnapshots() {
+        confirmed.clear();
+        for (int i = 0; i < tracks.size(); i++) {
+            Track track = tracks.get(i);
+            if (track.getHits() >= minHits) {
+                if (confirmed.size() == snapshots.size()) {
+                    snapshots.add(new TrackedObject());
+                }
+                TrackedObject snapshot = snapshots.get(confirmed.size());
+                track.snapshot(snapshot);
+                confirmed.add(snapshot);
+            }
+        }
+        return confirmed;
+    }
+
+    // Match quality in (0, 2]: IoU matches score above 1, centroid-gated
+    // matches below 1, no match scores 0
+    private static double matchScore(Track track, Rect detection) {
+        double halfW = track.getWidth() / 2.0;
+        double halfH = track.getHeight() / 2.0;
+        double left = Math.max(track.getCenterX() - halfW, detection.x);
+        double top = Math.max(track.getCenterY() - halfH, detection.y);
+        double right = Math.min(track.getCenterX() + halfW, detection.x + detection.width);
+        double bottom = Math.min(track.getCenterY() + halfH, detection.y + detection.height);
+        double intersection = Math.max(0, right - left) * Math.max(0, bottom - top);
+        double union = (double) track.getWidth() * track.getHeight()
+            + (double) detection.width * detection.height - intersection;
+        double iou = union > 0 ? intersection / union : 0;
+        if (iou >= MIN_IOU) {
+            return 1.0 + iou;
+        }
+
+        double dx = detection.x + detection.width / 2.0 - track.getCenterX();
+        double dy = detection.y + detection.height / 2.0 - track.getCenterY();
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double gate = CENTROID_GATE * Math.max(track.getWidth(), track.getHeight());
+        if (distance < gate) {
+            return 1.0 - distance / gate;
+        }
+        return 0;
+    }
+
+    public void reset() {
+        freeTracks.addAll(tracks);
+        tracks.clear();
+        confirmed.clear();
+    }
+}
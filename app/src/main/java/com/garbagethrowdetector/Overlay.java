@@ -0,0 +1,187 @@
+package com.garbagethrowdetector;
+
+import java.util.Arrays;
+
+/**
+ * Description of what to draw over an analyzed frame: boxes, arrows,
+ * markers and labels in frame pixel coordinates.
+ *
+ * Analysis only fills this in; renderers (MatOverlayRenderer, OverlayView)
+ * turn it into pixels, so the analyzed and saved frames stay clean and
+ * headless runs can skip drawing altogether. Shapes are kept in parallel
+ * primitive arrays and the overlay can be cleared, refilled and copied
+ * without allocating once it has grown to the usual shape count. Labels are
+ * a constant prefix plus an optional number, so numbering tracks does not
+ * build strings on the analysis thread.
+ */
+public class Overlay {
+
+    public static final int BOX = 0;
+    public static final int ARROW = 1;
+    public static final int MARKER = 2;
+    public static final int TEXT = 3;
+
+    // Colours are ARGB, as used by android.graphics.Color
+    public static final int HUMAN_COLOR = 0xFF00FF00;
+    public static final int OBJECT_COLOR = 0xFFFF0000;
+    public static final int MOTION_COLOR = 0xFFFFFF00;
+    public static final int THROW_COLOR = 0xFF0000FF;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int frameWidth;
+    private int frameHeight;
+    private int size = 0;
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] colors = new int[INITIAL_CAPACITY];
+    private float[] widths = new float[INITIAL_CAPACITY];
+    private double[] x1 = new double[INITIAL_CAPACITY];
+    private double[] y1 = new double[INITIAL_CAPACITY];
+    private double[] x2 = new double[INITIAL_CAPACITY];
+    private double[] y2 = new double[INITIAL_CAPACITY];
+    private String[] labels = new String[INITIAL_CAPACITY];
+    // Appended to the label unless NO_NUMBER
+    private int[] labelNumbers = new int[INITIAL_CAPACITY];
+
+    private static final int NO_NUMBER = Integer.MIN_VALUE;
+
+    /** Empties the overlay for a frame of the given size. */
+    public void reset(int frameWidth, int frameHeight) {
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        Arrays.fill(labels, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Axis aligned box; the label, if any, is drawn above its top left
+     * corner.
+     */
+    public void addBox(double x, double y, double width, double height, int color,
+                       float lineWidth, String label) {
+        add(BOX, x, y, x + width, y + height, color, lineWidth, label, NO_NUMBER);
+    }
+
+    /** Box labelled with a prefix and a number, e.g. a track id. */
+    public void addBox(double x, double y, double width, double height, int color,
+                       float lineWidth, String labelPrefix, int labelNumber) {
+        add(BOX, x, y, x + width, y + height, color, lineWidth, labelPrefix, labelNumber);
+    }
+
+    public void addArrow(double fromX, double fromY, double toX, double toY, int color, float lineWidth) {
+        add(ARROW, fromX, fromY, toX, toY, color, lineWidth, null, NO_NUMBER);
+    }
+
+    /** Filled circle. */
+    public void addMarker(double x, double y, double radius, int color) {
+        add(MARKER, x, y, radius, 0, color, 0, null, NO_NUMBER);
+    }
+
+    /** Text with its baseline starting at (x, y); size is a multiple of the default font size. */
+    public void addText(double x, double y, String text, int color, float size) {
+        add(TEXT, x, y, 0, 0, color, size, text, NO_NUMBER);
+    }
+
+    private void add(int kind, double ax, double ay, double bx, double by, int color,
+                     float width, String label, int labelNumber) {
+        if (size == kinds.length) {
+            grow(size + 1);
+        }
+        kinds[size] = kind;
+        x1[size] = ax;
+        y1[size] = ay;
+        x2[size] = bx;
+        y2[size] = by;
+        colors[size] = color;
+        widths[size] = width;
+        labels[size] = label;
+        labelNumbers[size] = labelNumber;
+        size++;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, kinds.length * 2);
+        kinds = Arrays.copyOf(kinds, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        x1 = Arrays.copyOf(x1, capacity);
+        y1 = Arrays.copyOf(y1, capacity);
+        x2 = Arrays.copyOf(x2, capacity);
+        y2 = Arrays.copyOf(y2, capacity);
+        labels = Arrays.copyOf(labels, capacity);
+        labelNumbers = Arrays.copyOf(labelNumbers, capacity);
+    }
+
+    /**
+     * Makes this overlay an exact copy of another one, e.g. to hand it to
+     * a thread that draws it while the original is refilled.
+     */
+    public void copyFrom(Overlay other) {
+        if (other.size > kinds.length) {
+            grow(other.size);
+        }
+        Arrays.fill(labels, 0, size, null);
+        frameWidth = other.frameWidth;
+        frameHeight = other.frameHeight;
+        size = other.size;
+        System.arraycopy(other.kinds, 0, kinds, 0, size);
+        System.arraycopy(other.colors, 0, colors, 0, size);
+        System.arraycopy(other.widths, 0, widths, 0, size);
+        System.arraycopy(other.x1, 0, x1, 0, size);
+        System.arraycopy(other.y1, 0, y1, 0, size);
+        System.arraycopy(other.x2, 0, x2, 0, size);
+        System.arraycopy(other.y2, 0, y2, 0, size);
+        System.arraycopy(other.labels, 0, labels, 0, size);
+        System.arraycopy(other.labelNumbers, 0, labelNumbers, 0, size);
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getKind(int i) {
+        return kinds[i];
+    }
+
+    public int getColor(int i) {
+        return colors[i];
+    }
+
+    /** Line width for boxes and arrows, font scale for text. */
+    public float getWidth(int i) {
+        return widths[i];
+    }
+
+    public double getX1(int i) {
+        return x1[i];
+    }
+
+    public double getY1(int i) {
+        return y1[i];
+    }
+
+    /** Second corner or arrow head; radius (x2) for markers. */
+    public double getX2(int i) {
+        return x2[i];
+    }
+
+    public double getY2(int i) {
+        return y2[i];
+    }
+
+    /** Label text including its number; builds a string for numbered labels. */
+    public String getLabel(int i) {
+        if (labelNumbers[i] == NO_NUMBER || labels[i] == null) {
+            return labels[i];
+        }
+        return labels[i] + labelNumbers[i];
+    }
+}
@@ -0,0 +1,143 @@
+package com.garbagethrowdetector;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Transparent view that draws an {@link Overlay} on top of the camera
+ * preview with Canvas, so the frames themselves are never drawn on.
+ *
+ * The overlay is scaled to fit the view and centred, matching how the
+ * preview scales camera frames, or stretched to fill it when the camera
+ * renders the preview directly.
+ */
+public class OverlayView extends View {
+    // Canvas text size for an Overlay font scale of 1.0
+    private static final float TEXT_SIZE_PX = 36f;
+    private static final float LABEL_OFFSET = 10f;
+    private static final float ARROW_HEAD = 0.3f;
+
+    private final Paint strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    // Latest overlay handed in, guarded by itself, and the copy being drawn
+    private final Overlay pending = new Overlay();
+    private final Overlay drawn = new Overlay();
+    private volatile boolean stretchToFill = false;
+
+    public OverlayView(Context context) {
+        super(context);
+        init();
+    }
+
+    public OverlayView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        strokePaint.setStyle(Paint.Style.STROKE);
+        fillPaint.setStyle(Paint.Style.FILL);
+        textPaint.setStyle(Paint.Style.FILL);
+        setWillNotDraw(false);
+    }
+
+    /**
+     * Shows a copy of the given overlay, so the caller may reuse it right
+     * away. Can be called from any thread. Null clears the view.
+     */
+    public void setOverlay(Overlay overlay) {
+        synchronized (pending) {
+            if (overlay != null) {
+                pending.copyFrom(overlay);
+            } else {
+                pending.reset(0, 0);
+            }
+        }
+        postInvalidateOnAnimation();
+    }
+
+    /**
+     * Scales the overlay to fill the view rather than fit it, matching a
+     * camera preview surface that the system stretches to the view size.
+     */
+    public void setStretchToFill(boolean stretch) {
+        this.stretchToFill = stretch;
+        postInvalidateOnAnimation();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        synchronized (pending) {
+            drawn.copyFrom(pending);
+        }
+        Overlay current = drawn;
+        if (current.size() == 0 || current.getFrameWidth() <= 0) {
+            return;
+        }
+
+        float scaleX = getWidth() / (float) current.getFrameWidth();
+        float scaleY = getHeight() / (float) current.getFrameHeight();
+        canvas.save();
+        if (stretchToFill) {
+            canvas.scale(scaleX, scaleY);
+        } else {
+            float scale = Math.min(scaleX, scaleY);
+            canvas.translate((getWidth() - scale * current.getFrameWidth()) / 2f,
+                (getHeight() - scale * current.getFrameHeight()) / 2f);
+            canvas.scale(scale, scale);
+        }
+
+        for (int i = 0; i < current.size(); i++) {
+            int color = current.getColor(i);
+            float x1 = (float) current.getX1(i);
+            float y1 = (float) current.getY1(i);
+            float x2 = (float) current.getX2(i);
+            float y2 = (float) current.getY2(i);
+            switch (current.getKind(i)) {
+                case Overlay.BOX:
+                    strokePaint.setColor(color);
+                    strokePaint.setStrokeWidth(current.getWidth(i));
+                    canvas.drawRect(x1, y1, x2, y2, strokePaint);
+                    String label = current.getLabel(i);
+                    if (label != null) {
+                        textPaint.setColor(color);
+                        textPaint.setTextSize(TEXT_SIZE_PX * 0.6f);
+                        canvas.drawText(label, x1, y1 - LABEL_OFFSET, textPaint);
+                    }
+                    break;
+                case Overlay.ARROW:
+                    strokePaint.setColor(color);
+                    strokePaint.setStrokeWidth(current.getWidth(i));
+                    canvas.drawLine(x1, y1, x2, y2, strokePaint);
+                    drawArrowHead(canvas, x1, y1, x2, y2);
+                    break;
+                case Overlay.MARKER:
+                    fillPaint.setColor(color);
+                    canvas.drawCircle(x1, y1, x2, fillPaint);
+                    break;
+                case Overlay.TEXT:
+                    textPaint.setColor(color);
+                    textPaint.setTextSize(TEXT_SIZE_PX * current.getWidth(i));
+                    canvas.drawText(current.getLabel(i), x1, y1, textPaint);
+                    break;
+                default:
+                    break;
+            }
+        }
+        canvas.restore();
+    }
+
+    // Two strokes at +-45 degrees from the tip, like Imgproc.arrowedLine
+    private void drawArrowHead(Canvas canvas, float x1, float y1, float x2, float y2) {
+        float dx = (x1 - x2) * ARROW_HEAD;
+        float dy = (y1 - y2) * ARROW_HEAD;
+        float c = 0.70710678f;
+        canvas.drawLine(x2, y2, x2 + (dx - dy) * c, y2 + (dx + dy) * c, strokePaint);
+        canvas.drawLine(x2, y2, x2 + (dx + dy) * c, y2 + (dy - dx) * c, strokePaint);
+    }
+}
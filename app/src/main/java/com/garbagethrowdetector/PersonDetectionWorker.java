@@ -0,0 +1,194 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a {@link PersonDetector} on every Nth analyzed frame.
+ *
+ * The analysis thread offers every frame; when one is due and the detector
+ * is idle, the gray frame is copied into the single input buffer and
+ * detection runs on a separate thread, so motion analysis never waits for
+ * inference. A due frame arriving while the detector is still busy is
+ * skipped and the next frame is tried instead. The analysis thread picks up
+ * finished detections with {@link #poll()}; between them the human tracker
+ * coasts on its predictions.
+ *
+ * In inline mode detection runs on the offering thread instead, which makes
+ * replays and benchmarks deterministic.
+ */
+public class PersonDetectionWorker {
+
+    private final PersonDetector detector;
+    private final int interval;
+    private final boolean background;
+
+    // Input buffer, owned by the worker while busy
+    private final Mat input = new Mat();
+    private final List<Rect> inputRegions = new ArrayList<>();
+
+    // Analysis thread only
+    private long frameCount = 0;
+    private long nextDueFrame = 0;
+
+    // Guarded by this
+    private boolean busy = false;
+    private boolean closed = false;
+    private List<Rect> latest;
+    private long runCount = 0;
+    private long skippedBusyCount = 0;
+    private Thread thread;
+
+    private final LatencyStats inferenceStats = new LatencyStats("person");
+
+    /**
+     * @param interval   run the detector on every interval-th frame
+     * @param background run detection on a worker thread rather than inline
+     */
+    public PersonDetectionWorker(PersonDetector detector, int interval, boolean background) {
+        this.detector = detector;
+        this.interval = Math.max(1, interval);
+        this.background = background;
+    }
+
+    public synchronized void start() {
+        if (!background || thread != null || closed) {
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "PersonDetection");
+        thread.start();
+    }
+
+    /**
+     * Called by the analysis thread for every frame. Copies the frame only
+     * when detection is due and the detector is idle.
+     *
+     * @return true if detection was started for this frame
+     */
+    public boolean offer(Mat gray, List<Rect> motionRegions) {
+        frameCount++;
+        if (frameCount < nextDueFrame) {
+            return false;
+        }
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (busy) {
+                // Retried on the next frame
+                skippedBusyCount++;
+                return false;
+            }
+        }
+
+        gray.copyTo(input);
+        inputRegions.clear();
+        for (int i = 0; i < motionRegions.size(); i++) {
+            inputRegions.add(motionRegions.get(i).clone());
+        }
+        nextDueFrame = frameCount + interval;
+
+        if (!background) {
+            runDetection();
+            return true;
+        }
+        synchronized (this) {
+            busy = true;
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * @return people found by the latest finished detection not yet polled,
+     *         or null if there is none
+     */
+    public synchronized List<Rect> poll() {
+        List<Rect> people = latest;
+        latest = null;
+        return people;
+    }
+
+    private void runLoop() {
+        while (true) {
+            synchronized (this) {
+                while (!busy && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                runDetection();
+            } finally {
+                synchronized (this) {
+                    busy = false;
+                }
+            }
+        }
+    }
+
+    private void runDetection() {
+        List<Rect> people = new ArrayList<>();
+        long start = System.nanoTime();
+        detector.detect(input, inputRegions, people);
+        inferenceStats.record(System.nanoTime() - start);
+        synchronized (this) {
+            latest = people;
+            runCount++;
+        }
+    }
+
+    /**
+     * Stops the worker thread and releases the detector. Blocks until a
+     * detection in progress has finished.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            t = thread;
+            thread = null;
+            notifyAll();
+        }
+        if (t != null) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        detector.release();
+        input.release();
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public LatencyStats getInferenceStats() {
+        return inferenceStats;
+    }
+
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+    /** Due frames skipped because the previous detection was still running. */
+    public synchronized long getSkippedBusyCount() {
+        return skippedBusyCount;
+    }
+}
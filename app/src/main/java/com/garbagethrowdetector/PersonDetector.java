@@ -0,0 +1,29 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.List;
+
+/**
+ * Finds people in a frame, as an alternative to classifying motion blobs
+ * by their shape.
+ *
+ * Detectors are usually far more expensive than the motion stage, so they
+ * are run through a {@link PersonDetectionWorker} on every Nth frame and the
+ * human tracker carries the boxes in between.
+ */
+public interface PersonDetector {
+
+    /**
+     * Detects people in a gray frame and appends their boxes, in frame
+     * pixel coordinates, to people. Only called from one thread at a time.
+     *
+     * @param motionRegions boxes around moving blobs in this frame, in frame
+     *                      coordinates; detectors may restrict their search
+     *                      to them or ignore them
+     */
+    void detect(Mat gray, List<Rect> motionRegions, List<Rect> people);
+
+    void release();
+}
@@ -0,0 +1,147 @@
+package com.garbagethrowdetector;
+
+import java.util.ArrayDeque;
+
+/**
+ * Fixed pool of analysis threads shared by several {@link CameraPipeline}s.
+ *
+ * Scheduling is round robin over pipelines, not over frames: a pipeline with
+ * a pending frame waits in a single ready queue, runs one frame on a free
+ * thread and, if it has another frame by then, goes to the back of the queue.
+ * A camera delivering frames faster than they can be analyzed therefore
+ * gets its turn like every other camera and drops frames in its own
+ * pipeline queue instead of delaying the others. A pipeline never runs on
+ * two threads at once, so its processor and trackers stay single threaded.
+ */
+public class PipelineExecutor {
+
+    private final Thread[] threads;
+    // Guarded by this, as are the scheduled/running flags of the pipelines
+    private final ArrayDeque<CameraPipeline> ready = new ArrayDeque<>();
+    private boolean closed = false;
+    private long failedFrames = 0;
+
+    /** One thread per available core. */
+    public PipelineExecutor() {
+        this(defaultThreadCount());
+    }
+
+    public PipelineExecutor(int threadCount) {
+        threads = new Thread[Math.max(1, threadCount)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runLoop();
+                }
+            }, "PipelineExecutor-" + i);
+            threads[i].start();
+        }
+    }
+
+    public static int defaultThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getThreadCount() {
+        return threads.length;
+    }
+
+    /**
+     * Queues the pipeline for a turn unless it is queued or running already;
+     * a running pipeline is requeued after its frame if it has another one.
+     */
+    synchronized void schedule(CameraPipeline pipeline) {
+        if (closed || pipeline.closed || pipeline.scheduled) {
+            return;
+        }
+        pipeline.scheduled = true;
+        ready.addLast(pipeline);
+        notify();
+    }
+
+    /**
+     * Removes the pipeline from the queue and waits until a frame it is
+     * analyzing has finished. It is never scheduled again.
+     */
+    synchronized void cancel(CameraPipeline pipeline) {
+        pipeline.closed = true;
+        ready.remove(pipeline);
+        while (pipeline.running) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void runLoop() {
+        while (true) {
+            CameraPipeline pipeline;
+            synchronized (this) {
+                while (ready.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                pipeline = ready.pollFirst();
+                pipeline.running = true;
+            }
+
+            boolean failed = false;
+            try {
+                pipeline.analyzeNext();
+            } catch (RuntimeException e) {
+                // One broken camera must not take a pool thread with it
+                pipeline.recordFailure(e);
+                failed = true;
+            }
+
+            synchronized (this) {
+                pipeline.running = false;
+                pipeline.scheduled = false;
+                if (failed) {
+                    failedFrames++;
+                }
+                if (!pipeline.closed && pipeline.hasPendingFrame()) {
+                    pipeline.scheduled = true;
+                    ready.addLast(pipeline);
+                }
+                // Wakes a thread for the requeued pipeline and any cancel()
+                notifyAll();
+            }
+        }
+    }
+
+    /** Frames whose analysis threw, over all pipelines. */
+    public synchronized long getFailedFrameCount() {
+        return failedFrames;
+    }
+
+    /**
+     * Stops the threads after the frames being analyzed. Close the
+     * pipelines first; queued frames are not analyzed.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            ready.clear();
+            notifyAll();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.garbagethrowdetector;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Persists how the camera preview is shown, in shared preferences.
+ *
+ * The direct preview (the camera renders into the view's surface, see
+ * JavaCamera2View.setDirectPreview) is off until it has been measured on
+ * the device at hand. Switch it at launch without a UI:
+ * adb shell am start -n com.garbagethrowdetector/.MainActivity --ez direct_preview true
+ * and compare the "Camera frames" log lines of both modes.
+ */
+public final class PreviewSettings {
+    private static final String TAG = "PreviewSettings";
+    private static final String PREFS = "preview";
+    public static final String KEY_DIRECT_PREVIEW = "direct_preview";
+
+    private PreviewSettings() {
+    }
+
+    public static boolean isDirectPreview(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+            .getBoolean(KEY_DIRECT_PREVIEW, false);
+    }
+
+    /** Stores preview extras passed to the activity, if any. */
+    public static void updateFromIntent(Context context, Intent intent) {
+        if (intent == null || !intent.hasExtra(KEY_DIRECT_PREVIEW)) {
+            return;
+        }
+        boolean direct = intent.getBooleanExtra(KEY_DIRECT_PREVIEW, false);
+        Log.d(TAG, "Direct preview " + (direct ? "on" : "off"));
+        context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+            .putBoolean(KEY_DIRECT_PREVIEW, direct)
+            .apply();
+    }
+}
@@ -0,0 +1,66 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Frames from a raw file of back-to-back 8-bit gray images of a fixed size,
+ * e.g. Y planes dumped from the camera. Needs no video codec, so it replays
+ * the same bytes on any host.
+ */
+public class RawFrameFileSource implements FrameSource {
+    private final DataInputStream in;
+    private final int width;
+    private final int height;
+    private final double fps;
+    private final byte[] buffer;
+    private long frameIndex = 0;
+    private long timestampNs = 0;
+
+    public RawFrameFileSource(String path, int width, int height, double fps) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 20));
+        this.width = width;
+        this.height = height;
+        this.fps = fps > 0 ? fps : 30.0;
+        this.buffer = new byte[width * height];
+    }
+
+    @Override
+    public boolean read(Mat rgba, Mat gray) {
+        try {
+            in.readFully(buffer);
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read raw frame " + frameIndex, e);
+        }
+        gray.create(height, width, CvType.CV_8UC1);
+        gray.put(0, 0, buffer);
+        Imgproc.cvtColor(gray, rgba, Imgproc.COLOR_GRAY2RGBA);
+
+        timestampNs = (long) (frameIndex * 1e9 / fps);
+        frameIndex++;
+        return true;
+    }
+
+    @Override
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Runs the detection pipeline over a {@link FrameSource} without a camera or
+ * preview, writing a JSON-lines event log.
+ *
+ * By default frames are processed as fast as possible (batch mode); in
+ * realtime mode the runner waits so frames are processed at the pace of their
+ * timestamps. Each line is one JSON object with an "event" field:
+ * "frame" (per-frame timing and detection counts), "throw" (a detected
+ * throw) and a final "summary".
+ */
+public class ReplayRunner {
+
+    public static class Summary {
+        public long frames;
+        public long throwCount;
+        public long wallNs;
+        public final LatencyStats detectStats = new LatencyStats("detect");
+        public final LatencyStats throwStats = new LatencyStats("throw");
+
+        public double getFps() {
+            return wallNs > 0 ? frames * 1e9 / wallNs : 0;
+        }
+    }
+
+    private final DetectionProcessor detectionProcessor;
+    private final ThrowDetector throwDetector;
+    private boolean realtime = false;
+    private boolean frameEvents = true;
+    private final StringBuilder line = new StringBuilder(256);
+
+    public ReplayRunner(DetectionProcessor detectionProcessor, ThrowDetector throwDetector) {
+        this.detectionProcessor = detectionProcessor;
+        this.throwDetector = throwDetector;
+    }
+
+    /** Process frames at the pace of their timestamps instead of flat out. */
+    public void setRealtime(boolean realtime) {
+        this.realtime = realtime;
+    }
+
+    /** Whether to log a "frame" line for every frame or only throws. */
+    public void setFrameEvents(boolean frameEvents) {
+        this.frameEvents = frameEvents;
+    }
+
+    /**
+     * Replays the whole source. The source is not closed.
+     */
+    public Summary run(FrameSource source, Writer eventLog) throws IOException {
+        Summary summary = new Summary();
+        Mat rgba = new Mat();
+        Mat gray = new Mat();
+        long startNs = System.nanoTime();
+        long firstTimestampNs = -1;
+
+        try {
+            while (source.read(rgba, gray)) {
+                long timestampNs = source.getTimestampNs();
+                if (firstTimestampNs < 0) {
+                    firstTimestampNs = timestampNs;
+                }
+                if (realtime) {
+                    waitUntil(startNs + (timestampNs - firstTimestampNs));
+                }
+
+                long start = System.nanoTime();
+                DetectionResult result = detectionProcessor.detect(gray, timestampNs);
+                long detected = System.nanoTime();
+                boolean throwDetected = throwDetector.detectThrows(
+                    result.humanTracks,
+                    result.objectTracks,
+                    timestampNs,
+                    gray.cols(),
+                    gray.rows(),
+                    detectionProcessor.isOverlayEnabled() ? result.overlay : null
+                );
+                long end = System.nanoTime();
+                summary.detectStats.record(detected - start);
+                summary.throwStats.record(end - detected);
+
+                double timestampMs = (timestampNs - firstTimestampNs) / 1e6;
+                if (frameEvents) {
+                    beginEvent("frame", summary.frames, timestampMs);
+                    appendNumber("detectMs", (detected - start) / 1e6);
+                    appendNumber("throwMs", (end - detected) / 1e6);
+                    line.append(",\"humans\":").append(result.humans.size());
+                    line.append(",\"objects\":").append(result.objects.size());
+                    line.append(",\"humanTracks\":").append(result.humanTracks.size());
+                    line.append(",\"objectTracks\":").append(result.objectTracks.size());
+                    endEvent(eventLog);
+                }
+                ThrowEvent event = throwDetector.getLastThrowEvent();
+                if (throwDetected && event != null) {
+                    beginEvent("throw", summary.frames, timestampMs);
+                    line.append(",\"humanId\":").append(event.humanId);
+                    line.append(",\"objectId\":").append(event.objectId);
+                    appendNumber("launchVelocityX", event.launchVelocityX);
+                    appendNumber("launchVelocityY", event.launchVelocityY);
+                    appendNumber("fitResidual", event.fitResidual);
+                    appendNumber("separationX", event.separationX);
+                    appendNumber("separationY", event.separationY);
+                    endEvent(eventLog);
+                    summary.throwCount++;
+                }
+                summary.frames++;
+            }
+        } finally {
+            rgba.release();
+            gray.release();
+        }
+        summary.wallNs = System.nanoTime() - startNs;
+
+        line.setLength(0);
+        line.append("{\"event\":\"summary\",\"frames\":").append(summary.frames);
+        line.append(",\"throws\":").append(summary.throwCount);
+        appendNumber("wallMs", summary.wallNs / 1e6);
+        appendNumber("fps", summary.getFps());
+        appendNumber("detectP50Ms", summary.detectStats.getPercentileMs(50));
+        appendNumber("detectP95Ms", summary.detectStats.getPercentileMs(95));
+        appendNumber("detectP99Ms", summary.detectStats.getPercentileMs(99));
+        appendNumber("throwP95Ms", summary.throwStats.getPercentileMs(95));
+        endEvent(eventLog);
+        eventLog.flush();
+        return summary;
+    }
+
+    private void beginEvent(String type, long frame, double timestampMs) {
+        line.setLength(0);
+        line.append("{\"event\":\"").append(type).append("\",\"frame\":").append(frame);
+        appendNumber("timestampMs", timestampMs);
+    }
+
+    private void appendNumber(String key, double value) {
+        line.append(",\"").append(key).append("\":");
+        // JSON has no NaN or Infinity
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            line.append("null");
+        } else {
+            line.append(String.format(Locale.US, "%.3f", value));
+        }
+    }
+
+    private void endEvent(Writer eventLog) throws IOException {
+        line.append("}\n");
+        eventLog.append(line);
+    }
+
+    private static void waitUntil(long deadlineNs) {
+        long remainingNs = deadlineNs - System.nanoTime();
+        if (remainingNs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(remainingNs / 1000000, (int) (remainingNs % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
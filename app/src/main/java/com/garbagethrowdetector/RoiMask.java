@@ -0,0 +1,258 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Regions of interest and exclusion zones for motion analysis.
+ *
+ * Polygons are in normalized frame coordinates (0-1), so one configuration
+ * works at any resolution. Only pixels inside an include polygon (the whole
+ * frame if there is none) and outside every exclusion polygon are analyzed.
+ * The analysis is cropped to the bounding box of the include polygons, and
+ * the mask clears the rest of that box before morphology and contour
+ * finding.
+ *
+ * The polygon lists are fixed at construction. The rasterized mask is
+ * cached per size and must only be used from the analysis thread.
+ */
+public class RoiMask {
+
+    private final List<double[]> includes;
+    private final List<double[]> excludes;
+
+    // Cached bounds and mask, analysis thread only
+    private final Rect bounds = new Rect();
+    private int boundsWidth = -1;
+    private int boundsHeight = -1;
+    private final Mat mask = new Mat();
+    private final Rect maskRegion = new Rect();
+    private int maskWidth = -1;
+    private int maskHeight = -1;
+
+    /**
+     * @param includes polygons as flat x0,y0,x1,y1,... arrays of at least
+     *                 three points; empty means the whole frame
+     * @param excludes polygons that are never analyzed
+     */
+    public RoiMask(List<double[]> includes, List<double[]> excludes) {
+        this.includes = copyPolygons(includes);
+        this.excludes = copyPolygons(excludes);
+    }
+
+    private static List<double[]> copyPolygons(List<double[]> polygons) {
+        validate(polygons);
+        List<double[]> copy = new ArrayList<>(polygons.size());
+        for (double[] polygon : polygons) {
+            copy.add(polygon.clone());
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Checks polygons the way the constructor does, e.g. parsed settings
+     * before they are stored.
+     *
+     * @throws IllegalArgumentException if a polygon has fewer than three
+     *                                  x,y points
+     */
+    public static void validate(List<double[]> polygons) {
+        for (double[] polygon : polygons) {
+            if (polygon.length < 6 || polygon.length % 2 != 0) {
+                throw new IllegalArgumentException("Polygon needs at least three x,y points");
+            }
+        }
+    }
+
+    /** True if the mask does not restrict anything. */
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    public List<double[]> getIncludes() {
+        return includes;
+    }
+
+    public List<double[]> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Bounding box of the included area in pixels of a frame of the given
+     * size. The returned Rect is reused.
+     */
+    public Rect getBounds(int frameWidth, int frameHeight) {
+        if (frameWidth == boundsWidth && frameHeight == boundsHeight) {
+            return bounds;
+        }
+        boundsWidth = frameWidth;
+        boundsHeight = frameHeight;
+        if (includes.isEmpty()) {
+            bounds.x = 0;
+            bounds.y = 0;
+            bounds.width = frameWidth;
+            bounds.height = frameHeight;
+            return bounds;
+        }
+
+        double minX = 1;
+        double minY = 1;
+        double maxX = 0;
+        double maxY = 0;
+        for (double[] polygon : includes) {
+            for (int i = 0; i < polygon.length; i += 2) {
+                minX = Math.min(minX, polygon[i]);
+                maxX = Math.max(maxX, polygon[i]);
+                minY = Math.min(minY, polygon[i + 1]);
+                maxY = Math.max(maxY, polygon[i + 1]);
+            }
+        }
+        int x0 = clamp((int) Math.floor(minX * frameWidth), 0, frameWidth - 1);
+        int y0 = clamp((int) Math.floor(minY * frameHeight), 0, frameHeight - 1);
+        int x1 = clamp((int) Math.ceil(maxX * frameWidth), x0 + 1, frameWidth);
+        int y1 = clamp((int) Math.ceil(maxY * frameHeight), y0 + 1, frameHeight);
+        bounds.x = x0;
+        bounds.y = y0;
+        bounds.width = x1 - x0;
+        bounds.height = y1 - y0;
+        return bounds;
+    }
+
+    /**
+     * Mask for a crop of the frame, rasterized at the crop's analysis size:
+     * 255 where pixels are analyzed, 0 elsewhere.
+     *
+     * @param frameWidth  full frame size the normalized polygons refer to
+     * @param crop        region of the frame being analyzed, frame pixels
+     * @param width       size the crop is analyzed at
+     * @return the cached mask, or null if the whole crop is analyzed
+     */
+    public Mat getMask(int frameWidth, int frameHeight, Rect crop, int width, int height) {
+        if (excludes.isEmpty() && includes.size() <= 1 && isRectangle(includes)) {
+            // The crop already is the included area
+            return null;
+        }
+        if (width == maskWidth && height == maskHeight && crop.equals(maskRegion)) {
+            return mask;
+        }
+        maskWidth = width;
+        maskHeight = height;
+        maskRegion.x = crop.x;
+        maskRegion.y = crop.y;
+        maskRegion.width = crop.width;
+        maskRegion.height = crop.height;
+
+        double scaleX = (double) width / crop.width;
+        double scaleY = (double) height / crop.height;
+        if (includes.isEmpty()) {
+            mask.create(height, width, CvType.CV_8UC1);
+            mask.setTo(new Scalar(255));
+        } else {
+            mask.create(height, width, CvType.CV_8UC1);
+            mask.setTo(new Scalar(0));
+            fill(includes, frameWidth, frameHeight, crop, scaleX, scaleY, new Scalar(255));
+        }
+        fill(excludes, frameWidth, frameHeight, crop, scaleX, scaleY, new Scalar(0));
+        return mask;
+    }
+
+    private void fill(List<double[]> polygons, int frameWidth, int frameHeight, Rect crop,
+                      double scaleX, double scaleY, Scalar value) {
+        if (polygons.isEmpty()) {
+            return;
+        }
+        List<MatOfPoint> points = new ArrayList<>(polygons.size());
+        for (double[] polygon : polygons) {
+            Point[] vertices = new Point[polygon.length / 2];
+            for (int i = 0; i < vertices.length; i++) {
+                vertices[i] = new Point(
+                    (polygon[2 * i] * frameWidth - crop.x) * scaleX,
+                    (polygon[2 * i + 1] * frameHeight - crop.y) * scaleY);
+            }
+            points.add(new MatOfPoint(vertices));
+        }
+        Imgproc.fillPoly(mask, points, value);
+        for (int i = 0; i < points.size(); i++) {
+            points.get(i).release();
+        }
+    }
+
+    // An axis aligned rectangle given as four corners
+    private static boolean isRectangle(List<double[]> polygons) {
+        if (polygons.isEmpty()) {
+            return true;
+        }
+        double[] p = polygons.get(0);
+        if (p.length != 8) {
+            return false;
+        }
+        for (int i = 0; i < 8; i += 2) {
+            int next = (i + 2) % 8;
+            if (p[i] != p[next] && p[i + 1] != p[next + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public void release() {
+        mask.release();
+    }
+
+    /**
+     * Polygons as "x,y x,y x,y;x,y ..." with ';' between polygons, for
+     * storing in settings.
+     */
+    public static String format(List<double[]> polygons) {
+        StringBuilder builder = new StringBuilder();
+        for (int p = 0; p < polygons.size(); p++) {
+            if (p > 0) {
+                builder.append(';');
+            }
+            double[] polygon = polygons.get(p);
+            for (int i = 0; i < polygon.length; i += 2) {
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                builder.append(String.format(Locale.US, "%.4f,%.4f", polygon[i], polygon[i + 1]));
+            }
+        }
+        return builder.toString();
+    }
+
+    /** Inverse of {@link #format(List)}; empty or null gives no polygons. */
+    public static List<double[]> parse(String text) {
+        List<double[]> polygons = new ArrayList<>();
+        if (text == null || text.trim().isEmpty()) {
+            return polygons;
+        }
+        for (String polygonText : text.split(";")) {
+            String[] pointTexts = polygonText.trim().split("\\s+");
+            double[] polygon = new double[pointTexts.length * 2];
+            for (int i = 0; i < pointTexts.length; i++) {
+                String[] xy = pointTexts[i].split(",");
+                if (xy.length != 2) {
+                    throw new IllegalArgumentException("Bad ROI point: " + pointTexts[i]);
+                }
+                polygon[2 * i] = Double.parseDouble(xy[0]);
+                polygon[2 * i + 1] = Double.parseDouble(xy[1]);
+            }
+            polygons.add(polygon);
+        }
+        return polygons;
+    }
+}
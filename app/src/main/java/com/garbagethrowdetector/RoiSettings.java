@@ -0,0 +1,75 @@
+package com.garbagethrowdetector;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Persists the region of interest and exclusion zones in shared
+ * preferences, in the text format of {@link RoiMask#format}.
+ *
+ * Fixed installations can set them at launch without a UI:
+ * adb shell am start -n com.garbagethrowdetector/.MainActivity
+ *     --es roi_include "0.1,0.3 0.9,0.3 0.9,1 0.1,1" --es roi_exclude "0.7,0 1,0 1,0.3"
+ * An empty string clears the setting.
+ */
+public final class RoiSettings {
+    private static final String TAG = "RoiSettings";
+    private static final String PREFS = "roi";
+    public static final String KEY_INCLUDE = "roi_include";
+    public static final String KEY_EXCLUDE = "roi_exclude";
+
+    private RoiSettings() {
+    }
+
+    /**
+     * @return the stored mask, or null if none is configured or it cannot
+     *         be parsed
+     */
+    public static RoiMask load(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        try {
+            RoiMask mask = new RoiMask(
+                RoiMask.parse(prefs.getString(KEY_INCLUDE, null)),
+                RoiMask.parse(prefs.getString(KEY_EXCLUDE, null)));
+            return mask.isEmpty() ? null : mask;
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Ignoring invalid ROI settings: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static void save(Context context, RoiMask mask) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit();
+        if (mask == null) {
+            editor.remove(KEY_INCLUDE).remove(KEY_EXCLUDE);
+        } else {
+            editor.putString(KEY_INCLUDE, RoiMask.format(mask.getIncludes()));
+            editor.putString(KEY_EXCLUDE, RoiMask.format(mask.getExcludes()));
+        }
+        editor.apply();
+    }
+
+    /** Stores ROI extras passed to the activity, if any. */
+    public static void updateFromIntent(Context context, Intent intent) {
+        if (intent == null || (!intent.hasExtra(KEY_INCLUDE) && !intent.hasExtra(KEY_EXCLUDE))) {
+            return;
+        }
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit();
+        for (String key : new String[] { KEY_INCLUDE, KEY_EXCLUDE }) {
+            if (!intent.hasExtra(key)) {
+                continue;
+            }
+            String value = intent.getStringExtra(key);
+            try {
+                // Same checks as load(), so a stored value always loads
+                RoiMask.validate(RoiMask.parse(value));
+                editor.putString(key, value);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Ignoring invalid " + key + ": " + e.getMessage());
+            }
+        }
+        editor.apply();
+    }
+}
@@ -0,0 +1,65 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Lightweight background model: an exponential running average of past
+ * frames. Costs little more than frame differencing but keeps slow movers
+ * visible and smooths out single-frame flicker.
+ */
+public class RunningAverageSegmenter implements MotionSegmenter {
+    private static final double DEFAULT_LEARNING_RATE = 0.05;
+
+    private final Mat background = new Mat();
+    private final Mat background8u = new Mat();
+    private final Mat frameDiff = new Mat();
+    private boolean seeded = false;
+    private int threshold;
+    private double learningRate = DEFAULT_LEARNING_RATE;
+
+    public RunningAverageSegmenter() {
+        setSensitivity(50);
+    }
+
+    @Override
+    public boolean apply(Mat gray, Mat foregroundMask) {
+        if (!seeded || background.cols() != gray.cols() || background.rows() != gray.rows()) {
+            gray.convertTo(background, CvType.CV_32F);
+            seeded = true;
+            return false;
+        }
+
+        // Compare against the model before it absorbs the current frame
+        background.convertTo(background8u, CvType.CV_8U);
+        Core.absdiff(background8u, gray, frameDiff);
+        Imgproc.threshold(frameDiff, foregroundMask, threshold, 255, Imgproc.THRESH_BINARY);
+        Imgproc.accumulateWeighted(gray, background, learningRate);
+        return true;
+    }
+
+    @Override
+    public void setSensitivity(int sensitivity) {
+        threshold = (int) (30 * (100 - sensitivity) / 100.0) + 10;
+    }
+
+    @Override
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate < 0 ? DEFAULT_LEARNING_RATE : Math.min(1.0, learningRate);
+    }
+
+    @Override
+    public void reset() {
+        seeded = false;
+    }
+
+    @Override
+    public void release() {
+        background.release();
+        background8u.release();
+        frameDiff.release();
+        seeded = false;
+    }
+}
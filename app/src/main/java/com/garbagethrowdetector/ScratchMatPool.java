@@ -0,0 +1,77 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Per-resolution scratch buffers for the motion detection hot path.
+ *
+ * All Mats are allocated once for a given frame size and reused on every
+ * following frame. OpenCV writes into a destination Mat in place when its
+ * size and type already match, so after warm-up no native buffers are
+ * allocated as long as the resolution stays the same.
+ */
+public class ScratchMatPool {
+    private static final int KERNEL_SIZE = 5;
+
+    private final Mat kernel;
+    private final Mat analysisFrame = new Mat();
+    private final Mat thresh = new Mat();
+
+    private int width = -1;
+    private int height = -1;
+
+    // Number of times the pool had to (re)allocate its native buffers.
+    // Stays constant in steady state; grows only on resolution changes.
+    private long allocationCount = 0;
+
+    public ScratchMatPool() {
+        // Structuring element is resolution independent, build it once
+        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE,
+            new Size(KERNEL_SIZE, KERNEL_SIZE));
+    }
+
+    /**
+     * Makes sure all buffers match the given frame size. Cheap no-op when the
+     * size is unchanged.
+     */
+    public void ensureSize(int width, int height) {
+        if (this.width == width && this.height == height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        thresh.create(height, width, CvType.CV_8UC1);
+        allocationCount++;
+    }
+
+    public Mat kernel() {
+        return kernel;
+    }
+
+    /**
+     * Destination for the downscaled analysis frame. Sized by Imgproc.resize,
+     * which reuses the buffer while the analysis size is unchanged.
+     */
+    public Mat analysisFrame() {
+        return analysisFrame;
+    }
+
+    public Mat thresh() {
+        return thresh;
+    }
+
+    public long getAllocationCount() {
+        return allocationCount;
+    }
+
+    public void release() {
+        kernel.release();
+        analysisFrame.release();
+        thresh.release();
+        width = -1;
+        height = -1;
+    }
+}
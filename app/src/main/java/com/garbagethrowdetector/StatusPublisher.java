@@ -0,0 +1,153 @@
+package com.garbagethrowdetector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detection status shown in the UI, published only when it changes.
+ *
+ * The analysis thread calls {@link #update(Status, int)} on every frame.
+ * That is a field comparison unless the status or the litter count changed;
+ * only then is a message posted to the main thread, and at most
+ * maxUpdatesPerSecond of them. Changes inside the rate limit window are
+ * coalesced: the listeners see the latest state once the window ends, and a
+ * change that reverts before then is never published. A throw stays on
+ * screen for THROW_HOLD_NS even if the next frames report a lower status.
+ */
+public class StatusPublisher {
+
+    public enum Status {
+        PAUSED,
+        IDLE,
+        DETECTING,
+        HUMAN,
+        HUMAN_AND_OBJECT,
+        THROW
+    }
+
+    /** Called on the main thread with the new state. */
+    public interface Listener {
+        void onStatusChanged(Status status, int litterCount);
+    }
+
+    /** Posts work to the main thread, e.g. Handler::postDelayed. */
+    public interface Poster {
+        void post(Runnable runnable, long delayMs);
+    }
+
+    private static final long THROW_HOLD_NS = 2000000000L;
+
+    private final Poster poster;
+    private final long minIntervalNs;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    // Guarded by this
+    private Status requestedStatus = Status.PAUSED;
+    private int requestedCount = 0;
+    private Status publishedStatus = null;
+    private int publishedCount = -1;
+    private long lastPublishNs = 0;
+    private long throwUntilNs = 0;
+    private boolean postScheduled = false;
+    private long updateCalls = 0;
+    private long postCount = 0;
+    private long publishCount = 0;
+
+    private final Runnable publishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            publish();
+        }
+    };
+
+    public StatusPublisher(Poster poster, int maxUpdatesPerSecond) {
+        this.poster = poster;
+        this.minIntervalNs = 1000000000L / Math.max(1, maxUpdatesPerSecond);
+    }
+
+    /** Main thread only. */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /** Main thread only. */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Reports the status for the current frame. Cheap when nothing changed;
+     * safe to call from any thread.
+     */
+    public synchronized void update(Status status, int litterCount) {
+        updateCalls++;
+        long now = System.nanoTime();
+        if (status == Status.THROW) {
+            throwUntilNs = now + THROW_HOLD_NS;
+        } else if (status != Status.PAUSED && now < throwUntilNs) {
+            // Keep the throw visible for a moment
+            status = Status.THROW;
+        }
+        requestedStatus = status;
+        requestedCount = litterCount;
+
+        if (postScheduled || (status == publishedStatus && litterCount == publishedCount)) {
+            return;
+        }
+        long delayNs = Math.max(0, lastPublishNs + minIntervalNs - now);
+        postScheduled = true;
+        postCount++;
+        poster.post(publishRunnable, delayNs / 1000000);
+    }
+
+    /**
+     * Forgets the throw hold and what was last published, so the next update
+     * is shown even if it repeats the previous status. Use after the status
+     * text was changed directly.
+     */
+    public synchronized void invalidate() {
+        publishedStatus = null;
+        publishedCount = -1;
+        throwUntilNs = 0;
+    }
+
+    private void publish() {
+        Status status;
+        int count;
+        synchronized (this) {
+            postScheduled = false;
+            if (requestedStatus == publishedStatus && requestedCount == publishedCount) {
+                // Changed back within the rate limit window
+                return;
+            }
+            status = requestedStatus;
+            count = requestedCount;
+            publishedStatus = status;
+            publishedCount = count;
+            lastPublishNs = System.nanoTime();
+            publishCount++;
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onStatusChanged(status, count);
+        }
+    }
+
+    public synchronized Status getStatus() {
+        return requestedStatus;
+    }
+
+    /** Number of update() calls, i.e. analyzed frames. */
+    public synchronized long getUpdateCount() {
+        return updateCalls;
+    }
+
+    /** Number of messages posted to the main thread. */
+    public synchronized long getPostCount() {
+        return postCount;
+    }
+
+    /** Number of status changes delivered to the listeners. */
+    public synchronized long getPublishCount() {
+        return publishCount;
+    }
+}
@@ -2,31 +2,73 @@ package com.garbagethrowdetector;
 
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
-import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+import org.opencv.core.Rect;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class ThrowDetector {
-    private static final int HISTORY_SIZE = 10;
-    private double throwVelocityThreshold = 50.0; // pixels per frame (adjustable)
-    private double throwDistanceThreshold = 100.0; // pixels (adjustable)
-    private static final int COOLDOWN_FRAMES = 30; // frames to wait after detection
+    // Steps of recent motion the per-pair statistics cover; they are kept
+    // incrementally, so a longer window costs nothing per frame
+    private static final int DEFAULT_STATS_WINDOW = 5;
+    private static final int MAX_STATS_WINDOW = 60;
+    // Speeds and distances are in frame sizes (the larger frame dimension)
+    // and seconds, so sensitivity does not change with resolution or with
+    // the frame rate the pipeline manages to sustain
+    private double throwVelocityThreshold = 1.17; // frame sizes per second (adjustable)
+    private double throwDistanceThreshold = 0.08; // frame sizes (adjustable)
+    private static final long COOLDOWN_MS = 1000; // time to wait after detection
     
-    private List<Point> garbageHistory;
-    private List<Point> humanHistory;
-    private int framesSinceLastThrow;
-    private boolean throwInProgress;
+    // An object is only paired with a person when it starts out this close,
+    // measured in multiples of the person's box size
+    private static final double PAIRING_MARGIN = 1.0;
+    // Object counts as held while its centre is within the person's box
+    // grown by this fraction
+    private static final double ATTACHED_MARGIN = 0.1;
+    
+    // Ballistic fit over the points since separation
+    private static final int FIT_WINDOW = 15;
+    private static final int MIN_FIT_POINTS = 4;
+    // A flying object keeps its heading over the stats window; detection
+    // jitter does not
+    private static final double MIN_DIRECTION_CONSISTENCY = 0.8;
+    // Still moving at this fraction of the launch threshold, so a flight
+    // that has already landed is not reported late
+    private static final double MIN_FLIGHT_SPEED_FRACTION = 0.5;
+    // Upward acceleration (frame sizes per second^2) beyond which the object
+    // is being lifted rather than flying; generous for detection noise
+    private static final double MAX_UPWARD_ACCELERATION = 3.0;
+    // Largest RMS fit error still accepted as a free flight, as a fraction
+    // of the distance travelled plus a floor for detection jitter
+    private static final double MAX_RELATIVE_RESIDUAL = 0.15;
+    private static final double RESIDUAL_FLOOR = 0.0025;
+    // Growth in person-object distance that counts as moving away
+    private static final double MOVING_AWAY_MARGIN = 0.015;
+    
+    // Per (person track, object track) histories. Only a handful of pairs
+    // exist at a time, so a linear scan beats hashing (and boxing) here
+    private final List<PairHistory> pairs = new ArrayList<>();
+    // History for the single-pair detectThrow(Point, Point, Mat) entry point
+    private final PairHistory defaultPair;
+    private long frameCount = 0;
+    // Timestamp and pixel-to-frame-size factor of the frame being analyzed
+    private long currentTimeNs;
+    private double frameScale = 1.0;
+    private int statsWindow = DEFAULT_STATS_WINDOW;
+    private volatile boolean resetRequested = false;
+    private volatile ThrowEvent lastThrowEvent;
+    
+    // Optional drawing output for the frame being analyzed
+    private Overlay overlay;
+    // Overlay and renderer for the legacy detectThrow(Point, Point, Mat)
+    private Overlay legacyOverlay;
+    private MatOverlayRenderer legacyRenderer;
     
     // Sensitivity parameter (0-100, default 50)
     private int throwSensitivity = 50;
     
     public ThrowDetector() {
-        garbageHistory = new ArrayList<>();
-        humanHistory = new ArrayList<>();
-        framesSinceLastThrow = 0;
-        throwInProgress = false;
+        defaultPair = new PairHistory();
         updateThresholds();
     }
     
@@ -35,112 +77,290 @@ public class ThrowDetector {
         updateThresholds();
     }
     
+    /**
+     * Number of recent steps the per-pair velocity, acceleration and
+     * direction statistics cover. Applies to pairs formed afterwards.
+     */
+    public void setStatsWindow(int steps) {
+        this.statsWindow = Math.max(2, Math.min(MAX_STATS_WINDOW, steps));
+    }
+    
     private void updateThresholds() {
         // Higher sensitivity = lower thresholds (easier to detect)
         // Sensitivity 0 = very strict, Sensitivity 100 = very lenient
         double sensitivityFactor = (100 - throwSensitivity) / 100.0;
-        throwVelocityThreshold = 30.0 + (sensitivityFactor * 40.0); // Range: 30-70
-        throwDistanceThreshold = 50.0 + (sensitivityFactor * 100.0); // Range: 50-150
+        // Ranges match the former 30-70 px/frame and 50-150 px at 30 fps on
+        // a 1280 px frame
+        throwVelocityThreshold = 0.7 + (sensitivityFactor * 0.94); // Range: 0.7-1.64
+        throwDistanceThreshold = 0.04 + (sensitivityFactor * 0.08); // Range: 0.04-0.12
     }
     
+    /**
+     * Single pair analysis that draws straight into outputFrame. Kept for
+     * callers without tracking; the pipeline uses detectThrows().
+     */
     public boolean detectThrow(Point humanPos, Point garbagePos, Mat outputFrame) {
-        framesSinceLastThrow++;
-        
-        // Reset after cooldown period
-        if (framesSinceLastThrow > COOLDOWN_FRAMES) {
-            throwInProgress = false;
-        }
-        
-        // Add current positions to history
-        garbageHistory.add(new Point(garbagePos.x, garbagePos.y));
-        humanHistory.add(new Point(humanPos.x, humanPos.y));
-        
-        // Keep history size limited
-        if (garbageHistory.size() > HISTORY_SIZE) {
-            garbageHistory.remove(0);
-            humanHistory.remove(0);
+        if (legacyOverlay == null) {
+            legacyOverlay = new Overlay();
+            legacyRenderer = new MatOverlayRenderer();
         }
+        applyPendingReset();
+        legacyOverlay.reset(outputFrame.cols(), outputFrame.rows());
+        beginFrame(System.nanoTime(), outputFrame.cols(), outputFrame.rows(), legacyOverlay);
+        boolean throwDetected = defaultPair.update(humanPos, null, garbagePos);
+        legacyRenderer.render(legacyOverlay, outputFrame);
+        return throwDetected;
+    }
+    
+    /**
+     * Runs throw analysis for every tracked (person, object) pair. A pair is
+     * formed when an object track first appears near a person and lives as
+     * long as both tracks do, so trajectories never jump between people.
+     *
+     * @param timestampNs capture time of the frame; velocities and cooldowns
+     *                    are measured against it, so dropped frames do not
+     *                    distort them
+     * @param overlay     receives motion arrows and throw markers, or null
+     *                    to skip building them
+     * @return true if any pair registered a throw this frame
+     */
+    public boolean detectThrows(List<TrackedObject> humans, List<TrackedObject> objects,
+                                long timestampNs, int frameWidth, int frameHeight, Overlay overlay) {
+        applyPendingReset();
+        beginFrame(timestampNs, frameWidth, frameHeight, overlay);
+        boolean throwDetected = false;
         
-        // Need at least 3 frames to detect motion
-        if (garbageHistory.size() < 3 || throwInProgress) {
-            return false;
+        for (int h = 0; h < humans.size(); h++) {
+            TrackedObject human = humans.get(h);
+            for (int o = 0; o < objects.size(); o++) {
+                TrackedObject object = objects.get(o);
+                PairHistory pair = findPair(human.id, object.id);
+                if (pair == null) {
+                    if (!isNear(human.rect, object.position)) {
+                        continue;
+                    }
+                    pair = new PairHistory();
+                    pair.humanId = human.id;
+                    pair.objectId = object.id;
+                    pairs.add(pair);
+                }
+                pair.lastSeenFrame = frameCount;
+                if (pair.update(human.position, human.rect, object.position)) {
+                    throwDetected = true;
+                }
+            }
         }
         
-        // Calculate velocity and distance changes
-        boolean throwDetected = analyzeMotion(outputFrame);
-        
-        if (throwDetected) {
-            throwInProgress = true;
-            framesSinceLastThrow = 0;
-            return true;
+        // Forget pairs whose person or object track has ended
+        for (int i = pairs.size() - 1; i >= 0; i--) {
+            if (pairs.get(i).lastSeenFrame != frameCount) {
+                pairs.remove(i);
+            }
         }
         
-        return false;
+        return throwDetected;
     }
     
-    private boolean analyzeMotion(Mat outputFrame) {
-        int size = garbageHistory.size();
-        
-        // Get recent positions
-        Point currentGarbage = garbageHistory.get(size - 1);
-        Point previousGarbage = garbageHistory.get(size - 2);
-        Point olderGarbage = garbageHistory.get(size - 3);
-        
-        Point currentHuman = humanHistory.get(size - 1);
-        Point previousHuman = humanHistory.get(size - 2);
-        
-        // Calculate velocity (distance traveled in one frame)
-        double garbageVelocity = calculateDistance(currentGarbage, previousGarbage);
-        double garbageAcceleration = calculateDistance(currentGarbage, previousGarbage) - 
-                                     calculateDistance(previousGarbage, olderGarbage);
-        
-        // Calculate distance between human and garbage
-        double humanGarbageDistance = calculateDistance(currentHuman, currentGarbage);
-        double previousHumanGarbageDistance = calculateDistance(previousHuman, previousGarbage);
-        
-        // Detect upward and forward motion (typical throwing motion)
-        double verticalMotion = currentGarbage.y - previousGarbage.y; // Negative = upward
-        double horizontalMotion = Math.abs(currentGarbage.x - previousGarbage.x);
-        
-        // Draw motion vector
-        Imgproc.arrowedLine(outputFrame, previousGarbage, currentGarbage, 
-            new Scalar(255, 255, 0), 3, 8, 0, 0.3);
-        
-        // Throw detection criteria:
-        // 1. High velocity of garbage object
-        // 2. Upward motion (negative Y change)
-        // 3. Object moving away from human
-        // 4. Significant horizontal or vertical displacement
-        boolean highVelocity = garbageVelocity > throwVelocityThreshold;
-        boolean upwardMotion = verticalMotion < -10; // Moving up
-        boolean movingAway = humanGarbageDistance > previousHumanGarbageDistance + 20;
-        boolean significantMotion = garbageVelocity > 30 && (Math.abs(horizontalMotion) > 20 || Math.abs(verticalMotion) > 20);
-        
-        if (highVelocity && (upwardMotion || movingAway) && significantMotion) {
-            // Draw throw detection indicator
-            Imgproc.circle(outputFrame, currentGarbage, 30, new Scalar(0, 0, 255), -1);
-            Imgproc.putText(outputFrame, "THROW!", 
-                new Point(currentGarbage.x - 40, currentGarbage.y - 40),
-                Imgproc.FONT_HERSHEY_SIMPLEX, 1.0, new Scalar(0, 0, 255), 3);
-            
-            return true;
+    private void beginFrame(long timestampNs, int frameWidth, int frameHeight, Overlay overlay) {
+        frameCount++;
+        currentTimeNs = timestampNs;
+        frameScale = 1.0 / Math.max(1, Math.max(frameWidth, frameHeight));
+        this.overlay = overlay;
+    }
+    
+    private PairHistory findPair(int humanId, int objectId) {
+        for (int i = 0; i < pairs.size(); i++) {
+            PairHistory pair = pairs.get(i);
+            if (pair.humanId == humanId && pair.objectId == objectId) {
+                return pair;
+            }
         }
-        
-        return false;
+        return null;
+    }
+    
+    /**
+     * Most recent throw with its fit details, or null if none yet.
+     */
+    public ThrowEvent getLastThrowEvent() {
+        return lastThrowEvent;
+    }
+    
+    private static boolean isNear(Rect human, Point object) {
+        return isWithin(human, object, PAIRING_MARGIN);
+    }
+    
+    private static boolean isWithin(Rect human, Point object, double margin) {
+        double marginX = human.width * margin;
+        double marginY = human.height * margin;
+        return object.x >= human.x - marginX && object.x <= human.x + human.width + marginX
+            && object.y >= human.y - marginY && object.y <= human.y + human.height + marginY;
     }
     
-    private double calculateDistance(Point p1, Point p2) {
-        double dx = p1.x - p2.x;
-        double dy = p1.y - p2.y;
+    private static double calculateDistance(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
         return Math.sqrt(dx * dx + dy * dy);
     }
     
+    /**
+     * Clears all histories. Safe to call from any thread; takes effect on
+     * the next analyzed frame.
+     */
     public void reset() {
-        garbageHistory.clear();
-        humanHistory.clear();
-        throwInProgress = false;
-        framesSinceLastThrow = 0;
+        resetRequested = true;
+    }
+    
+    private void applyPendingReset() {
+        if (resetRequested) {
+            resetRequested = false;
+            defaultPair.clear();
+            pairs.clear();
+        }
+    }
+    
+    /**
+     * Trajectory history and throw state of one person/object pair.
+     */
+    private class PairHistory {
+        private final TrajectoryBuffer garbageHistory = new TrajectoryBuffer(statsWindow);
+        private final BallisticFitter flightFit = new BallisticFitter(FIT_WINDOW);
+        private long lastThrowTimeNs = 0;
+        private boolean throwInProgress = false;
+        private int humanId;
+        private int objectId;
+        private long lastSeenFrame;
+        // Person's position in the current frame
+        private double humanX;
+        private double humanY;
+        
+        // Where and when the object left the person; NaN while still held
+        private double separationTime = Double.NaN;
+        private double separationX;
+        private double separationY;
+        private double separationDistance;
+        
+        /**
+         * @param humanRect person's box, or null if unknown (the object is
+         *                  then treated as free from the first frame)
+         */
+        boolean update(Point humanPos, Rect humanRect, Point garbagePos) {
+            // Reset after cooldown period
+            if (throwInProgress && currentTimeNs - lastThrowTimeNs > COOLDOWN_MS * 1000000L) {
+                throwInProgress = false;
+            }
+            
+            double t = currentTimeNs * 1e-9;
+            // Oldest step leaves the statistics window once it is full
+            garbageHistory.add(t, garbagePos.x, garbagePos.y);
+            humanX = humanPos.x;
+            humanY = humanPos.y;
+            
+            boolean attached = humanRect != null && isWithin(humanRect, garbagePos, ATTACHED_MARGIN);
+            if (attached) {
+                // Still in hand: the flight has not started yet
+                separationTime = Double.NaN;
+                flightFit.clear();
+            } else {
+                if (Double.isNaN(separationTime)) {
+                    separationTime = t;
+                    separationX = garbagePos.x;
+                    separationY = garbagePos.y;
+                    separationDistance = calculateDistance(humanPos.x, humanPos.y,
+                        garbagePos.x, garbagePos.y);
+                }
+                flightFit.add(t, garbagePos.x, garbagePos.y);
+            }
+            
+            // Need a few points of free flight to fit a trajectory
+            if (flightFit.size() < MIN_FIT_POINTS || throwInProgress) {
+                return false;
+            }
+            
+            // Classify on the ballistic fit
+            boolean throwDetected = analyzeMotion();
+            
+            if (throwDetected) {
+                throwInProgress = true;
+                lastThrowTimeNs = currentTimeNs;
+                return true;
+            }
+            
+            return false;
+        }
+        
+        private boolean analyzeMotion() {
+            double currentGarbageX = garbageHistory.getX(0);
+            double currentGarbageY = garbageHistory.getY(0);
+            
+            // Motion over the stats window
+            if (overlay != null) {
+                int oldest = garbageHistory.size() - 1;
+                overlay.addArrow(garbageHistory.getX(oldest), garbageHistory.getY(oldest),
+                    currentGarbageX, currentGarbageY, Overlay.MOTION_COLOR, 3);
+            }
+            
+            if (!flightFit.solve()) {
+                return false;
+            }
+            
+            // Launch velocity: fitted velocity at the separation time, in
+            // frame sizes per second
+            double launchVx = flightFit.getVelocityX() * frameScale;
+            double launchVy = flightFit.getVelocityY(separationTime) * frameScale;
+            double launchSpeed = Math.sqrt(launchVx * launchVx + launchVy * launchVy);
+            double residual = flightFit.getResidual() * frameScale;
+            
+            double travelled = calculateDistance(separationX, separationY,
+                currentGarbageX, currentGarbageY) * frameScale;
+            double humanGarbageDistance = calculateDistance(
+                humanX, humanY, currentGarbageX, currentGarbageY) * frameScale;
+            
+            // Recent motion from the running window statistics
+            double recentVx = garbageHistory.getMeanVelocityX() * frameScale;
+            double recentVy = garbageHistory.getMeanVelocityY() * frameScale;
+            double recentSpeed = Math.sqrt(recentVx * recentVx + recentVy * recentVy);
+            double accelerationY = garbageHistory.getAccelerationY() * frameScale;
+            
+            // Throw detection criteria:
+            // 1. Fast launch from the point of separation
+            // 2. Trajectory fits a free flight (low residual)
+            // 3. Launched upwards or moving away from the person
+            // 4. Object has travelled far enough from where it was released
+            // 5. Recent motion is a coherent flight that is still going and
+            //    not being lifted
+            boolean fastLaunch = launchSpeed > throwVelocityThreshold;
+            boolean ballistic = residual < MAX_RELATIVE_RESIDUAL * travelled + RESIDUAL_FLOOR;
+            boolean upwardLaunch = launchVy < 0;
+            boolean movingAway = humanGarbageDistance > separationDistance * frameScale + MOVING_AWAY_MARGIN;
+            boolean significantMotion = travelled > throwDistanceThreshold;
+            boolean flying = garbageHistory.getDirectionConsistency() >= MIN_DIRECTION_CONSISTENCY
+                && recentSpeed >= MIN_FLIGHT_SPEED_FRACTION * throwVelocityThreshold
+                && accelerationY > -MAX_UPWARD_ACCELERATION;
+            
+            if (fastLaunch && ballistic && (upwardLaunch || movingAway) && significantMotion
+                    && flying) {
+                lastThrowEvent = new ThrowEvent(humanId, objectId, launchVx, launchVy,
+                    residual, separationX, separationY);
+                
+                // Throw detection indicator
+                if (overlay != null) {
+                    overlay.addMarker(currentGarbageX, currentGarbageY, 30, Overlay.THROW_COLOR);
+                    overlay.addText(currentGarbageX - 40, currentGarbageY - 40, "THROW!",
+                        Overlay.THROW_COLOR, 1.0f);
+                }
+                
+                return true;
+            }
+            
+            return false;
+        }
+        
+        void clear() {
+            garbageHistory.clear();
+            flightFit.clear();
+            separationTime = Double.NaN;
+            throwInProgress = false;
+            lastThrowTimeNs = 0;
+        }
     }
 }
-
-
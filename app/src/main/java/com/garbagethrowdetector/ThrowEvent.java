@@ -0,0 +1,33 @@
+package com.garbagethrowdetector;
+
+/**
+ * Details of a detected throw, taken from the ballistic fit of the object's
+ * trajectory after it left the person.
+ */
+public class ThrowEvent {
+    public final int humanId;
+    public final int objectId;
+    // Fitted velocity at the moment of separation, frame sizes per second
+    public final double launchVelocityX;
+    public final double launchVelocityY;
+    // RMS distance of the tracked points from the fitted curve, frame sizes
+    public final double fitResidual;
+    // Where the object left the person's bounding box, pixels
+    public final double separationX;
+    public final double separationY;
+
+    public ThrowEvent(int humanId, int objectId, double launchVelocityX, double launchVelocityY,
+                      double fitResidual, double separationX, double separationY) {
+        this.humanId = humanId;
+        this.objectId = objectId;
+        this.launchVelocityX = launchVelocityX;
+        this.launchVelocityY = launchVelocityY;
+        this.fitResidual = fitResidual;
+        this.separationX = separationX;
+        this.separationY = separationY;
+    }
+
+    public double getLaunchSpeed() {
+        return Math.sqrt(launchVelocityX * launchVelocityX + launchVelocityY * launchVelocityY);
+    }
+}
@@ -0,0 +1,157 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Rect;
+
+/**
+ * One tracked object with a constant-velocity Kalman filter on its centre.
+ *
+ * State is (x, y, vx, vy) in pixels and pixels per frame; the measurement is
+ * the centre of the associated detection. The box size follows the latest
+ * detection.
+ *
+ * The filter is the same one OpenCV's KalmanFilter runs with these
+ * matrices, written out on primitive arrays: its Java bindings wrap every
+ * predict() and correct() result in a new Mat, which is garbage on every
+ * frame for every track.
+ */
+public class Track {
+    private static final double PROCESS_NOISE = 1e-2;
+    private static final double MEASUREMENT_NOISE = 1;
+
+    private int id;
+    // State (x, y, vx, vy) and its 4x4 covariance, row major
+    private final double[] state = new double[4];
+    private final double[] covariance = new double[16];
+    private final double[] scratch = new double[16];
+
+    private int width;
+    private int height;
+    private int hits;
+    private int missedFrames;
+
+    public Track(int id, Rect detection) {
+        restart(id, detection);
+    }
+
+    /** Reinitialises this track for a new detection, so tracks can be pooled. */
+    public void restart(int id, Rect detection) {
+        this.id = id;
+        this.width = detection.width;
+        this.height = detection.height;
+        hits = 1;
+        missedFrames = 0;
+
+        state[0] = detection.x + detection.width / 2.0;
+        state[1] = detection.y + detection.height / 2.0;
+        state[2] = 0;
+        state[3] = 0;
+        for (int i = 0; i < 16; i++) {
+            covariance[i] = i % 5 == 0 ? 1 : 0;
+        }
+    }
+
+    /** Advances the filter by one frame. Call once per frame before matching. */
+    public void predict() {
+        state[0] += state[2];
+        state[1] += state[3];
+
+        // P = F P F^T + Q with F = [I I; 0 I]: rows 0 and 1 gain rows 2 and 3,
+        // then columns 0 and 1 gain columns 2 and 3
+        double[] p = covariance;
+        for (int c = 0; c < 4; c++) {
+            p[c] += p[8 + c];
+            p[4 + c] += p[12 + c];
+        }
+        for (int r = 0; r < 4; r++) {
+            p[4 * r] += p[4 * r + 2];
+            p[4 * r + 1] += p[4 * r + 3];
+        }
+        for (int i = 0; i < 4; i++) {
+            p[5 * i] += PROCESS_NOISE;
+        }
+    }
+
+    /** Feeds the detection this track was matched to in the current frame. */
+    public void correct(Rect detection) {
+        double[] p = covariance;
+        // Innovation covariance S = H P H^T + R is the top left 2x2 block
+        double s00 = p[0] + MEASUREMENT_NOISE;
+        double s01 = p[1];
+        double s10 = p[4];
+        double s11 = p[5] + MEASUREMENT_NOISE;
+        double det = s00 * s11 - s01 * s10;
+        double i00 = s11 / det;
+        double i01 = -s01 / det;
+        double i10 = -s10 / det;
+        double i11 = s00 / det;
+
+        double innovationX = detection.x + detection.width / 2.0 - state[0];
+        double innovationY = detection.y + detection.height / 2.0 - state[1];
+
+        // Gain K = P H^T S^-1 (4x2), kept in scratch[0..7]
+        double[] k = scratch;
+        for (int r = 0; r < 4; r++) {
+            double p0 = p[4 * r];
+            double p1 = p[4 * r + 1];
+            k[2 * r] = p0 * i00 + p1 * i10;
+            k[2 * r + 1] = p0 * i01 + p1 * i11;
+        }
+        for (int r = 0; r < 4; r++) {
+            state[r] += k[2 * r] * innovationX + k[2 * r + 1] * innovationY;
+        }
+        // P -= K H P, where H P is rows 0 and 1 of P before the update
+        System.arraycopy(p, 0, scratch, 8, 8);
+        for (int r = 0; r < 4; r++) {
+            double k0 = k[2 * r];
+            double k1 = k[2 * r + 1];
+            for (int c = 0; c < 4; c++) {
+                p[4 * r + c] -= k0 * scratch[8 + c] + k1 * scratch[12 + c];
+            }
+        }
+
+        width = detection.width;
+        height = detection.height;
+        hits++;
+        missedFrames = 0;
+    }
+
+    public void markMissed() {
+        missedFrames++;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMissedFrames() {
+        return missedFrames;
+    }
+
+    public double getCenterX() {
+        return state[0];
+    }
+
+    public double getCenterY() {
+        return state[1];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Writes the current estimate into a (pooled) snapshot. */
+    public void snapshot(TrackedObject into) {
+        into.set(id,
+            (int) Math.round(state[0] - width / 2.0),
+            (int) Math.round(state[1] - height / 2.0),
+            width, height, state[0], state[1], state[2], state[3], missedFrames);
+    }
+}
@@ -0,0 +1,37 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+/**
+ * Per-frame snapshot of a track.
+ *
+ * Snapshots are pooled by the tracker that returns them and overwritten on
+ * its next update, so they are valid for the frame they were returned for
+ * only. Copy the values to keep them longer or to hand them to another
+ * thread.
+ */
+public class TrackedObject {
+    public int id;
+    public final Rect rect = new Rect();
+    public final Point position = new Point();
+    // Estimated velocity in pixels per frame
+    public double velocityX;
+    public double velocityY;
+    // Frames since the track was last matched to a detection (0 = matched now)
+    public int missedFrames;
+
+    void set(int id, int x, int y, int width, int height, double positionX, double positionY,
+             double velocityX, double velocityY, int missedFrames) {
+        this.id = id;
+        rect.x = x;
+        rect.y = y;
+        rect.width = width;
+        rect.height = height;
+        position.x = positionX;
+        position.y = positionY;
+        this.velocityX = velocityX;
+        this.velocityY = velocityY;
+        this.missedFrames = missedFrames;
+    }
+}
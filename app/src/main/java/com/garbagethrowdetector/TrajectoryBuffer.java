@@ -0,0 +1,142 @@
+package com.garbagethrowdetector;
+
+/**
+ * Recent positions of a moving object with running motion statistics.
+ *
+ * Holds the last statsWindow steps in primitive ring buffers. Mean velocity,
+ * acceleration and direction consistency over those steps are maintained
+ * incrementally: each add() folds in the new step and takes out the one
+ * leaving the window, so appending and reading the statistics are O(1) and
+ * allocation free whatever the window length.
+ *
+ * Positions are indexed by age: 0 is the newest point, size() - 1 the
+ * oldest one still held. Velocities are per unit of the times passed to
+ * add().
+ */
+public class TrajectoryBuffer {
+    private final double[] ts;
+    private final double[] xs;
+    private final double[] ys;
+    // Velocity of the step ending at each point
+    private final double[] stepVx;
+    private final double[] stepVy;
+    private final int capacity;
+
+    private int head = -1; // index of the newest point
+    private int size = 0;
+
+    // Running sums over the steps in the window
+    private double sumDx = 0;
+    private double sumDy = 0;
+    private double sumDt = 0;
+    private double sumPath = 0;
+
+    /**
+     * @param statsWindow number of most recent steps kept and covered by the
+     *                    statistics
+     */
+    public TrajectoryBuffer(int statsWindow) {
+        this.capacity = Math.max(2, statsWindow) + 1;
+        ts = new double[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        stepVx = new double[capacity];
+        stepVy = new double[capacity];
+    }
+
+    public void add(double t, double x, double y) {
+        if (size == capacity) {
+            // The oldest step leaves the window before its start point is
+            // overwritten
+            int oldest = index(size - 1);
+            int next = index(size - 2);
+            double dx = xs[next] - xs[oldest];
+            double dy = ys[next] - ys[oldest];
+            sumDx -= dx;
+            sumDy -= dy;
+            sumDt -= ts[next] - ts[oldest];
+            sumPath -= Math.sqrt(dx * dx + dy * dy);
+        }
+
+        int previous = head;
+        head = (head + 1) % capacity;
+        ts[head] = t;
+        xs[head] = x;
+        ys[head] = y;
+        if (size > 0) {
+            double dx = x - xs[previous];
+            double dy = y - ys[previous];
+            double dt = t - ts[previous];
+            sumDx += dx;
+            sumDy += dy;
+            sumDt += dt;
+            sumPath += Math.sqrt(dx * dx + dy * dy);
+            stepVx[head] = dt > 0 ? dx / dt : 0;
+            stepVy[head] = dt > 0 ? dy / dt : 0;
+        }
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    private int index(int age) {
+        int i = head - age;
+        return i < 0 ? i + capacity : i;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int age) {
+        return xs[index(age)];
+    }
+
+    public double getY(int age) {
+        return ys[index(age)];
+    }
+
+    /** Mean velocity over the window. */
+    public double getMeanVelocityX() {
+        return sumDt > 0 ? sumDx / sumDt : 0;
+    }
+
+    public double getMeanVelocityY() {
+        return sumDt > 0 ? sumDy / sumDt : 0;
+    }
+
+    /**
+     * Vertical acceleration across the window: change between the velocity
+     * of the oldest and the newest step over the time between their
+     * midpoints. 0 until the window holds two steps.
+     */
+    public double getAccelerationY() {
+        if (size < 3) {
+            return 0;
+        }
+        int newest = head;
+        int firstStep = index(size - 2);
+        double span = (ts[newest] + ts[index(1)]) / 2 - (ts[firstStep] + ts[index(size - 1)]) / 2;
+        return span > 0 ? (stepVy[newest] - stepVy[firstStep]) / span : 0;
+    }
+
+    /**
+     * Straightness of the path over the window, 0-1: net displacement over
+     * path length. Close to 1 for a clean flight, low for jitter.
+     */
+    public double getDirectionConsistency() {
+        if (sumPath <= 0) {
+            return 0;
+        }
+        return Math.min(1, Math.sqrt(sumDx * sumDx + sumDy * sumDy) / sumPath);
+    }
+
+    public void clear() {
+        head = -1;
+        size = 0;
+        sumDx = 0;
+        sumDy = 0;
+        sumDt = 0;
+        sumPath = 0;
+    }
+}
@@ -0,0 +1,63 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Frames decoded from a video file through org.opencv.videoio.VideoCapture.
+ *
+ * Timestamps come from the container when the backend reports them and are
+ * otherwise derived from the frame index and the nominal frame rate.
+ */
+public class VideoFileFrameSource implements FrameSource {
+    private static final double DEFAULT_FPS = 30.0;
+
+    private final VideoCapture capture;
+    private final Mat bgr = new Mat();
+    private final double fps;
+    private long frameIndex = 0;
+    private long timestampNs = 0;
+
+    public VideoFileFrameSource(String path) {
+        capture = new VideoCapture(path);
+        if (!capture.isOpened()) {
+            throw new IllegalArgumentException("Cannot open video: " + path);
+        }
+        double reportedFps = capture.get(Videoio.CAP_PROP_FPS);
+        fps = reportedFps > 0 ? reportedFps : DEFAULT_FPS;
+    }
+
+    @Override
+    public boolean read(Mat rgba, Mat gray) {
+        if (!capture.read(bgr) || bgr.empty()) {
+            return false;
+        }
+        Imgproc.cvtColor(bgr, rgba, Imgproc.COLOR_BGR2RGBA);
+        Imgproc.cvtColor(bgr, gray, Imgproc.COLOR_BGR2GRAY);
+
+        long fromIndex = (long) (frameIndex * 1e9 / fps);
+        double positionMs = capture.get(Videoio.CAP_PROP_POS_MSEC);
+        long fromContainer = (long) (positionMs * 1e6);
+        // Fall back to the frame index when the backend gives no usable time
+        timestampNs = (positionMs > 0 && fromContainer > timestampNs) ? fromContainer : fromIndex;
+        frameIndex++;
+        return true;
+    }
+
+    @Override
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    @Override
+    public void close() {
+        capture.release();
+        bgr.release();
+    }
+}
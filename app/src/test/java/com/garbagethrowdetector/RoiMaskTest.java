@@ -0,0 +1,36 @@
+package com.garbagethrowdetector;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RoiMaskTest {
+
+    @Test
+    public void parsesWhatFormatWrites() {
+        List<double[]> polygons = RoiMask.parse("0.1,0.3 0.9,0.3 0.9,1 0.1,1;0.7,0 1,0 1,0.3");
+        RoiMask.validate(polygons);
+        assertEquals(2, polygons.size());
+        assertEquals("0.1000,0.3000 0.9000,0.3000 0.9000,1.0000 0.1000,1.0000;"
+            + "0.7000,0.0000 1.0000,0.0000 1.0000,0.3000", RoiMask.format(polygons));
+    }
+
+    @Test
+    public void emptyTextIsNoPolygons() {
+        assertEquals(0, RoiMask.parse("").size());
+        assertEquals(0, RoiMask.parse(null).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void twoPointsAreRejected() {
+        // Parses, but is not a polygon
+        RoiMask.validate(RoiMask.parse("0.1,0.1 0.9,0.9"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badPointIsRejected() {
+        RoiMask.parse("0.1,0.1 0.9 0.5,0.5");
+    }
+}
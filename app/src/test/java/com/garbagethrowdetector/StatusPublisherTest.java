@@ -0,0 +1,129 @@
+package com.garbagethrowdetector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatusPublisherTest {
+    private static final int MAX_UPDATES_PER_SECOND = 4;
+
+    /** Collects posted runnables instead of handing them to a Looper. */
+    private static class FakePoster implements StatusPublisher.Poster {
+        final List<Runnable> posted = new ArrayList<>();
+        final List<Long> delaysMs = new ArrayList<>();
+
+        @Override
+        public void post(Runnable runnable, long delayMs) {
+            posted.add(runnable);
+            delaysMs.add(delayMs);
+        }
+
+        void runPending() {
+            List<Runnable> pending = new ArrayList<>(posted);
+            posted.clear();
+            for (Runnable runnable : pending) {
+                runnable.run();
+            }
+        }
+    }
+
+    private final List<StatusPublisher.Status> published = new ArrayList<>();
+    private final List<Integer> publishedCounts = new ArrayList<>();
+    private FakePoster poster;
+    private StatusPublisher publisher;
+
+    @Before
+    public void setUp() {
+        poster = new FakePoster();
+        publisher = new StatusPublisher(poster, MAX_UPDATES_PER_SECOND);
+        publisher.addListener(new StatusPublisher.Listener() {
+            @Override
+            public void onStatusChanged(StatusPublisher.Status status, int litterCount) {
+                published.add(status);
+                publishedCounts.add(litterCount);
+            }
+        });
+    }
+
+    @Test
+    public void repeatedUpdatesPostNothing() {
+        publisher.update(StatusPublisher.Status.DETECTING, 0);
+        poster.runPending();
+        for (int i = 0; i < 100; i++) {
+            publisher.update(StatusPublisher.Status.DETECTING, 0);
+        }
+
+        assertTrue(poster.posted.isEmpty());
+        assertEquals(101, publisher.getUpdateCount());
+        assertEquals(1, publisher.getPostCount());
+        assertEquals(1, publisher.getPublishCount());
+    }
+
+    @Test
+    public void changesWithinWindowAreCoalesced() {
+        publisher.update(StatusPublisher.Status.DETECTING, 0);
+        publisher.update(StatusPublisher.Status.HUMAN, 0);
+        publisher.update(StatusPublisher.Status.HUMAN_AND_OBJECT, 1);
+
+        assertEquals(1, poster.posted.size());
+        poster.runPending();
+        assertEquals(1, published.size());
+        assertEquals(StatusPublisher.Status.HUMAN_AND_OBJECT, published.get(0));
+        assertEquals(Integer.valueOf(1), publishedCounts.get(0));
+    }
+
+    @Test
+    public void nextChangeIsDelayedByTheRateLimit() {
+        publisher.update(StatusPublisher.Status.DETECTING, 0);
+        poster.runPending();
+        publisher.update(StatusPublisher.Status.HUMAN, 0);
+
+        assertEquals(2, publisher.getPostCount());
+        long delayMs = poster.delaysMs.get(1);
+        long intervalMs = 1000 / MAX_UPDATES_PER_SECOND;
+        // Posted right after a publish, so nearly the whole interval remains
+        assertTrue("delay " + delayMs, delayMs > intervalMs / 2 && delayMs <= intervalMs);
+    }
+
+    @Test
+    public void changeRevertedWithinWindowIsNotPublished() {
+        publisher.update(StatusPublisher.Status.DETECTING, 0);
+        poster.runPending();
+        publisher.update(StatusPublisher.Status.HUMAN, 0);
+        publisher.update(StatusPublisher.Status.DETECTING, 0);
+        poster.runPending();
+
+        assertEquals(1, published.size());
+        assertEquals(1, publisher.getPublishCount());
+    }
+
+    @Test
+    public void throwIsHeldOverLowerStatuses() {
+        publisher.update(StatusPublisher.Status.THROW, 1);
+        publisher.update(StatusPublisher.Status.DETECTING, 1);
+        poster.runPending();
+
+        assertEquals(StatusPublisher.Status.THROW, publisher.getStatus());
+        assertEquals(StatusPublisher.Status.THROW, published.get(0));
+
+        // Pausing is shown right away
+        publisher.update(StatusPublisher.Status.PAUSED, 1);
+        assertEquals(StatusPublisher.Status.PAUSED, publisher.getStatus());
+    }
+
+    @Test
+    public void invalidateRepublishesTheSameStatus() {
+        publisher.update(StatusPublisher.Status.DETECTING, 0);
+        poster.runPending();
+        publisher.invalidate();
+        publisher.update(StatusPublisher.Status.DETECTING, 0);
+        poster.runPending();
+
+        assertEquals(2, published.size());
+    }
+}
@@ -0,0 +1,67 @@
+package com.garbagethrowdetector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrajectoryBufferTest {
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void runningStatisticsMatchTheWindowAfterWrapping() {
+        int window = 5;
+        TrajectoryBuffer buffer = new TrajectoryBuffer(window);
+        Random random = new Random(42);
+        int points = 40;
+        double[] ts = new double[points];
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        for (int i = 0; i < points; i++) {
+            ts[i] = i / 30.0 + random.nextDouble() * 0.01;
+            xs[i] = random.nextDouble() * 100;
+            ys[i] = random.nextDouble() * 100;
+            buffer.add(ts[i], xs[i], ys[i]);
+
+            int first = Math.max(0, i - window);
+            double path = 0;
+            for (int k = first + 1; k <= i; k++) {
+                path += Math.hypot(xs[k] - xs[k - 1], ys[k] - ys[k - 1]);
+            }
+            double dt = ts[i] - ts[first];
+            double dx = xs[i] - xs[first];
+            double dy = ys[i] - ys[first];
+            assertEquals(Math.min(i + 1, window + 1), buffer.size());
+            assertEquals(i > 0 ? dx / dt : 0, buffer.getMeanVelocityX(), EPSILON);
+            assertEquals(i > 0 ? dy / dt : 0, buffer.getMeanVelocityY(), EPSILON);
+            assertEquals(i > 0 ? Math.hypot(dx, dy) / path : 0, buffer.getDirectionConsistency(), EPSILON);
+            assertEquals(xs[first], buffer.getX(buffer.size() - 1), 0);
+            assertEquals(ys[i], buffer.getY(0), 0);
+        }
+    }
+
+    @Test
+    public void accelerationOfFreeFall() {
+        TrajectoryBuffer buffer = new TrajectoryBuffer(5);
+        double gravity = 900;
+        for (int i = 0; i < 20; i++) {
+            double t = i / 30.0;
+            buffer.add(t, 100 + 200 * t, 50 - 300 * t + 0.5 * gravity * t * t);
+        }
+        assertEquals(gravity, buffer.getAccelerationY(), 1e-6);
+        assertEquals(1.0, buffer.getDirectionConsistency(), 0.05);
+    }
+
+    @Test
+    public void clearForgetsTheWindow() {
+        TrajectoryBuffer buffer = new TrajectoryBuffer(3);
+        buffer.add(0, 0, 0);
+        buffer.add(1, 10, 0);
+        buffer.clear();
+        buffer.add(2, 5, 5);
+        assertEquals(1, buffer.size());
+        assertEquals(0, buffer.getMeanVelocityX(), 0);
+        assertEquals(0, buffer.getAccelerationY(), 0);
+    }
+}
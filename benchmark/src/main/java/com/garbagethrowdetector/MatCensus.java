@@ -0,0 +1,90 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Mat;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the Mats an object graph of this package holds, by walking
+ * instance fields of the package's classes, lists and arrays. Used to check
+ * that the detection stage keeps a fixed set of native buffers.
+ */
+class MatCensus {
+
+    private MatCensus() {
+    }
+
+    /**
+     * Every Mat reachable from root, mapped to the field path it was found
+     * at. Fields named in skipped, as "Class.field", are not followed.
+     */
+    static Map<Mat, String> collect(Object root, Collection<String> skipped) {
+        Map<Mat, String> mats = new IdentityHashMap<>();
+        Map<Object, Boolean> visited = new IdentityHashMap<>();
+        try {
+            collect(root, root.getClass().getSimpleName(), skipped, mats, visited);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return mats;
+    }
+
+    /** Native bytes of the image data of every Mat reachable from root. */
+    static long totalBytes(Object root) {
+        long bytes = 0;
+        for (Mat mat : collect(root, Collections.<String>emptyList()).keySet()) {
+            if (mat.getNativeObjAddr() != 0) {
+                bytes += mat.total() * mat.elemSize();
+            }
+        }
+        return bytes;
+    }
+
+    private static void collect(Object object, String path, Collection<String> skipped,
+                                Map<Mat, String> mats, Map<Object, Boolean> visited)
+            throws IllegalAccessException {
+        if (object == null || object instanceof Enum || visited.put(object, Boolean.TRUE) != null) {
+            return;
+        }
+        if (object instanceof Mat) {
+            mats.put((Mat) object, path);
+            return;
+        }
+        if (object instanceof List) {
+            List<?> list = (List<?>) object;
+            for (int i = 0; i < list.size(); i++) {
+                collect(list.get(i), path + "[" + i + "]", skipped, mats, visited);
+            }
+            return;
+        }
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            if (!type.getComponentType().isPrimitive()) {
+                for (int i = 0; i < Array.getLength(object); i++) {
+                    collect(Array.get(object, i), path + "[" + i + "]", skipped, mats, visited);
+                }
+            }
+            return;
+        }
+        if (!type.getName().startsWith(MatCensus.class.getPackage().getName() + ".")) {
+            return;
+        }
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()
+                        || skipped.contains(c.getSimpleName() + "." + field.getName())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                collect(field.get(object), path + "." + field.getName(), skipped, mats, visited);
+            }
+        }
+    }
+}
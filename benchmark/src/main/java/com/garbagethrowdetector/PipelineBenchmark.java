@@ -0,0 +1,900 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Replays frames through DetectionProcessor and ThrowDetector on a desktop
+ * JVM and reports per-stage latency percentiles, Java heap allocations per
+ * frame and throughput.
+ *
+ * Works like a small JMH run: whole replays of the source are used as warm-up
+ * iterations and discarded, the measured iterations follow. Results can be
+ * written as a baseline file and later runs compared against it.
+ *
+ * Usage:
+ *   PipelineBenchmark [--synthetic [--clutter N] | --video FILE | --raw FILE --size WxH]
+ *                     [--fps F] [--frames N] [--warmup N] [--iterations N]
+ *                     [--segmenter TYPE] [--analysis-width W] [--no-overlay]
+ *                     [--no-optical-flow] [--blob-method components|contours]
+ *                     [--compare-blob-methods] [--pipelines N [--pool-threads N]]
+ *                     [--compare-segmenters]
+ *                     [--person-detector heuristic|ssd|yolo|hog] [--model FILE --config FILE]
+ *                     [--person-interval N] [--dnn-input WxH] [--dnn-threads N]
+ *                     [--hog-stride N] [--hog-scale S] [--hog-levels N] [--hog-width W]
+ *                     [--compare-person-detectors] [--compare-hog-widths]
+ *                     [--duty-cycle [--idle-after MS]] [--soak N [--max-growth KB]]
+ *                     [--baseline FILE [--tolerance PCT]] [--write-baseline FILE]
+ *
+ * Exits with status 2 when a baseline comparison finds a regression or a
+ * soak run finds memory growing.
+ */
+public class PipelineBenchmark {
+
+    private static final String[] STAGES = { "read", "detect", "throw", "pipeline" };
+    private static final double[] PERCENTILES = { 50, 95, 99 };
+    // Soak runs sample memory this often, after this many warm-up frames
+    private static final int SOAK_SAMPLE_FRAMES = 500;
+    private static final int SOAK_WARMUP_FRAMES = 1000;
+    private static final java.lang.management.ThreadMXBean THREAD_BEAN =
+        ManagementFactory.getThreadMXBean();
+
+    interface SourceFactory {
+        FrameSource open() throws IOException;
+    }
+
+    static class Options {
+        String video;
+        String raw;
+        int width = 640;
+        int height = 480;
+        double fps = 30;
+        int clutter = 0;
+        int frames = 600;
+        int warmupIterations = 1;
+        int iterations = 3;
+        MotionSegmenter.Type segmenter = MotionSegmenter.Type.FRAME_DIFFERENCE;
+        int analysisWidth = DetectionProcessor.DEFAULT_ANALYSIS_WIDTH;
+        boolean compareSegmenters = false;
+        String personDetector = "heuristic";
+        String model;
+        String config;
+        int personInterval = 5;
+        int dnnInputWidth = 0;
+        int dnnInputHeight = 0;
+        int dnnThreads = 0;
+        boolean comparePersonDetectors = false;
+        int hogStride = HogPersonDetector.DEFAULT_WIN_STRIDE;
+        double hogScale = HogPersonDetector.DEFAULT_SCALE;
+        int hogLevels = HogPersonDetector.DEFAULT_MAX_LEVELS;
+        int hogWidth = HogPersonDetector.DEFAULT_FRAME_WIDTH;
+        boolean compareHogWidths = false;
+        boolean dutyCycle = false;
+        long idleAfterMs = 2000;
+        boolean soak = false;
+        // Growth allowed per 1000 frames in a soak run, KB
+        double maxGrowthKb = 64;
+        boolean overlay = true;
+        boolean opticalFlow = true;
+        BlobExtractor.Method blobMethod = BlobExtractor.Method.CONNECTED_COMPONENTS;
+        boolean compareBlobMethods = false;
+        int pipelines = 0;
+        int poolThreads = 0;
+        String baseline;
+        String writeBaseline;
+        double tolerance = 25;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--synthetic":
+                        o.video = null;
+                        o.raw = null;
+                        break;
+                    case "--video":
+                        o.video = args[++i];
+                        break;
+                    case "--raw":
+                        o.raw = args[++i];
+                        break;
+                    case "--size": {
+                        String[] parts = args[++i].split("x");
+                        o.width = Integer.parseInt(parts[0]);
+                        o.height = Integer.parseInt(parts[1]);
+                        break;
+                    }
+                    case "--fps":
+                        o.fps = Double.parseDouble(args[++i]);
+                        break;
+                    case "--clutter":
+                        o.clutter = Integer.parseInt(args[++i]);
+                        break;
+                    case "--frames":
+                        o.frames = Integer.parseInt(args[++i]);
+                        break;
+                    case "--warmup":
+                        o.warmupIterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--iterations":
+                        o.iterations = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--segmenter":
+                        o.segmenter = MotionSegmenter.Type.valueOf(args[++i].toUpperCase(Locale.US));
+                        break;
+                    case "--analysis-width":
+                        o.analysisWidth = Integer.parseInt(args[++i]);
+                        break;
+                    case "--no-overlay":
+                        o.overlay = false;
+                        break;
+                    case "--no-optical-flow":
+                        o.opticalFlow = false;
+                        break;
+                    case "--blob-method":
+                        o.blobMethod = args[++i].equalsIgnoreCase("contours")
+                            ? BlobExtractor.Method.CONTOURS : BlobExtractor.Method.CONNECTED_COMPONENTS;
+                        break;
+                    case "--compare-blob-methods":
+                        o.compareBlobMethods = true;
+                        break;
+                    case "--pipelines":
+                        o.pipelines = Integer.parseInt(args[++i]);
+                        break;
+                    case "--pool-threads":
+                        o.poolThreads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--compare-segmenters":
+                        o.compareSegmenters = true;
+                        break;
+                    case "--person-detector":
+                        o.personDetector = args[++i].toLowerCase(Locale.US);
+                        break;
+                    case "--model":
+                        o.model = args[++i];
+                        break;
+                    case "--config":
+                        o.config = args[++i];
+                        break;
+                    case "--person-interval":
+                        o.personInterval = Integer.parseInt(args[++i]);
+                        break;
+                    case "--dnn-input": {
+                        String[] parts = args[++i].split("x");
+                        o.dnnInputWidth = Integer.parseInt(parts[0]);
+                        o.dnnInputHeight = Integer.parseInt(parts[1]);
+                        break;
+                    }
+                    case "--dnn-threads":
+                        o.dnnThreads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--compare-person-detectors":
+                        o.comparePersonDetectors = true;
+                        break;
+                    case "--hog-stride":
+                        o.hogStride = Integer.parseInt(args[++i]);
+                        break;
+                    case "--hog-scale":
+                        o.hogScale = Double.parseDouble(args[++i]);
+                        break;
+                    case "--hog-levels":
+                        o.hogLevels = Integer.parseInt(args[++i]);
+                        break;
+                    case "--hog-width":
+                        o.hogWidth = Integer.parseInt(args[++i]);
+                        break;
+                    case "--compare-hog-widths":
+                        o.compareHogWidths = true;
+                        break;
+                    case "--duty-cycle":
+                        o.dutyCycle = true;
+                        break;
+                    case "--idle-after":
+                        o.idleAfterMs = Long.parseLong(args[++i]);
+                        break;
+                    case "--soak":
+                        o.soak = true;
+                        o.frames = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-growth":
+                        o.maxGrowthKb = Double.parseDouble(args[++i]);
+                        break;
+                    case "--baseline":
+                        o.baseline = args[++i];
+                        break;
+                    case "--write-baseline":
+                        o.writeBaseline = args[++i];
+                        break;
+                    case "--tolerance":
+                        o.tolerance = Double.parseDouble(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            return o;
+        }
+
+        String describeSource() {
+            if (video != null) {
+                return "video " + video;
+            }
+            if (raw != null) {
+                return "raw " + raw + " " + width + "x" + height;
+            }
+            return "synthetic " + width + "x" + height
+                + (clutter > 0 ? " clutter " + clutter : "");
+        }
+
+        SourceFactory sourceFactory() {
+            if (video != null) {
+                return () -> new VideoFileFrameSource(video);
+            }
+            if (raw != null) {
+                return () -> new RawFrameFileSource(raw, width, height, fps);
+            }
+            return () -> {
+                SyntheticFrameSource source = new SyntheticFrameSource(width, height, frames, fps);
+                source.setClutter(clutter);
+                return source;
+            };
+        }
+
+        /**
+         * Inline worker for the given detector, so its cost is measured on
+         * the benchmark thread; null for the blob shape heuristic.
+         */
+        PersonDetectionWorker createPersonDetection(String kind) {
+            PersonDetector detector;
+            switch (kind) {
+                case "heuristic":
+                    return null;
+                case "ssd":
+                case "yolo": {
+                    if (model == null) {
+                        throw new IllegalArgumentException("--person-detector " + kind + " needs --model");
+                    }
+                    DnnPersonDetector dnn = new DnnPersonDetector(
+                        kind.equals("ssd") ? DnnPersonDetector.Architecture.SSD_MOBILENET
+                            : DnnPersonDetector.Architecture.YOLO,
+                        model, config != null ? config : "");
+                    if (dnnInputWidth > 0) {
+                        dnn.setInputSize(dnnInputWidth, dnnInputHeight);
+                    }
+                    if (dnnThreads > 0) {
+                        DnnPersonDetector.setThreadCount(dnnThreads);
+                    }
+                    detector = dnn;
+                    break;
+                }
+                case "hog": {
+                    HogPersonDetector hog = new HogPersonDetector(hogLevels);
+                    hog.setWinStride(hogStride);
+                    hog.setScale(hogScale);
+                    hog.setFrameWidth(hogWidth);
+                    detector = hog;
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown person detector: " + kind);
+            }
+            return new PersonDetectionWorker(detector, personInterval, false);
+        }
+    }
+
+    /** Measurements of one benchmark run (all measured iterations). */
+    static class Result {
+        final MotionSegmenter.Type segmenter;
+        final String personDetector;
+        final LatencyStats[] stages = new LatencyStats[STAGES.length];
+        long frames = 0;
+        long wallNs = 0;
+        long cpuNs = 0;
+        long allocatedBytes = 0;
+        long nativeReallocations = 0;
+        long blobOpenCvCalls = 0;
+        long humanDetections = 0;
+        long objectDetections = 0;
+        long throwCount = 0;
+        // Inference time of the person detector, if any
+        LatencyStats personStats;
+        long personRuns = 0;
+        // Frames the duty cycle scheduler skipped, and its mode times
+        long idleFrames = 0;
+        String dutyCycle;
+
+        Result(MotionSegmenter.Type segmenter, String personDetector) {
+            this.segmenter = segmenter;
+            this.personDetector = personDetector;
+            for (int i = 0; i < STAGES.length; i++) {
+                stages[i] = new LatencyStats(STAGES[i]);
+            }
+        }
+
+        double getThroughputFps() {
+            return wallNs > 0 ? frames * 1e9 / wallNs : 0;
+        }
+
+        double getAllocatedBytesPerFrame() {
+            return frames > 0 ? (double) allocatedBytes / frames : 0;
+        }
+
+        double getBlobOpenCvCallsPerFrame() {
+            return frames > 0 ? (double) blobOpenCvCalls / frames : 0;
+        }
+
+        double getCpuMsPerFrame() {
+            return frames > 0 ? cpuNs / 1e6 / frames : 0;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        System.out.println("OpenCV " + Core.VERSION + ", " + options.describeSource()
+            + ", analysis width " + options.analysisWidth);
+
+        if (options.compareSegmenters) {
+            compareSegmenters(options);
+            return;
+        }
+        if (options.comparePersonDetectors) {
+            comparePersonDetectors(options);
+            return;
+        }
+        if (options.compareHogWidths) {
+            compareHogWidths(options);
+            return;
+        }
+        if (options.compareBlobMethods) {
+            compareBlobMethods(options);
+            return;
+        }
+        if (options.pipelines > 0) {
+            runPipelines(options);
+            return;
+        }
+        if (options.soak) {
+            if (!soak(options)) {
+                System.exit(2);
+            }
+            return;
+        }
+
+        Result result = run(options, options.segmenter, options.personDetector);
+        print(result);
+
+        if (options.writeBaseline != null) {
+            writeBaseline(options, result);
+            System.out.println("Baseline written to " + options.writeBaseline);
+        }
+        if (options.baseline != null && !compareBaseline(options, result)) {
+            System.exit(2);
+        }
+    }
+
+    static Result run(Options options, MotionSegmenter.Type type, String personDetector)
+            throws IOException {
+        SourceFactory factory = options.sourceFactory();
+        DetectionProcessor detectionProcessor = new DetectionProcessor();
+        detectionProcessor.setAnalysisWidth(options.analysisWidth);
+        detectionProcessor.setOverlayEnabled(options.overlay);
+        detectionProcessor.setOpticalFlowEnabled(options.opticalFlow);
+        detectionProcessor.setBlobMethod(options.blobMethod);
+        ThrowDetector throwDetector = new ThrowDetector();
+        Result result = new Result(type, personDetector);
+        Mat rgba = new Mat();
+        Mat gray = new Mat();
+        PersonDetectionWorker personDetection = options.createPersonDetection(personDetector);
+        detectionProcessor.setPersonDetection(personDetection);
+        DutyCycleScheduler dutyCycle = null;
+        if (options.dutyCycle) {
+            dutyCycle = new DutyCycleScheduler(null);
+            dutyCycle.setIdleAfterMs(options.idleAfterMs);
+        }
+
+        for (int iteration = 0; iteration < options.warmupIterations + options.iterations; iteration++) {
+            boolean measured = iteration >= options.warmupIterations;
+
+            // Every replay starts from an empty model, like a fresh session
+            detectionProcessor.setMotionSegmenter(type.create());
+            detectionProcessor.resetTracking();
+            throwDetector.reset();
+            if (dutyCycle != null) {
+                dutyCycle.reset();
+            }
+            long personRunsBefore = 0;
+            if (personDetection != null) {
+                if (iteration == options.warmupIterations) {
+                    personDetection.getInferenceStats().reset();
+                }
+                personRunsBefore = personDetection.getRunCount();
+            }
+
+            FrameSource source = factory.open();
+            long reallocationsBefore = detectionProcessor.getScratchAllocationCount();
+            long blobCallsBefore = detectionProcessor.getBlobOpenCvCallCount();
+            long iterationStart = System.nanoTime();
+            long cpuStart = THREAD_BEAN.getCurrentThreadCpuTime();
+            try {
+                for (int frame = 0; frame < options.frames; frame++) {
+                    long start = System.nanoTime();
+                    if (!source.read(rgba, gray)) {
+                        break;
+                    }
+                    long timestampNs = source.getTimestampNs();
+                    long read = System.nanoTime();
+
+                    if (dutyCycle != null && !dutyCycle.shouldAnalyze(gray, timestampNs)) {
+                        if (measured) {
+                            result.stages[0].record(read - start);
+                            result.idleFrames++;
+                            result.frames++;
+                        }
+                        continue;
+                    }
+                    long allocatedBefore = allocatedBytes();
+                    DetectionResult detection = detectionProcessor.detect(gray, timestampNs);
+                    long detected = System.nanoTime();
+                    boolean thrown = throwDetector.detectThrows(
+                        detection.humanTracks,
+                        detection.objectTracks,
+                        timestampNs,
+                        gray.cols(),
+                        gray.rows(),
+                        detectionProcessor.isOverlayEnabled() ? detection.overlay : null
+                    );
+                    long end = System.nanoTime();
+                    long allocatedAfter = allocatedBytes();
+
+                    if (!measured) {
+                        continue;
+                    }
+                    result.stages[0].record(read - start);
+                    result.stages[1].record(detected - read);
+                    result.stages[2].record(end - detected);
+                    result.stages[3].record(end - read);
+                    result.allocatedBytes += allocatedAfter - allocatedBefore;
+                    result.humanDetections += detection.humans.size();
+                    result.objectDetections += detection.objects.size();
+                    if (thrown) {
+                        result.throwCount++;
+                    }
+                    result.frames++;
+                }
+            } finally {
+                source.close();
+            }
+            if (measured) {
+                result.wallNs += System.nanoTime() - iterationStart;
+                result.blobOpenCvCalls += detectionProcessor.getBlobOpenCvCallCount() - blobCallsBefore;
+                // Inline person detection runs on this thread too
+                result.cpuNs += THREAD_BEAN.getCurrentThreadCpuTime() - cpuStart;
+                if (dutyCycle != null) {
+                    result.dutyCycle = dutyCycle.toString();
+                }
+                if (personDetection != null) {
+                    result.personStats = personDetection.getInferenceStats();
+                    result.personRuns += personDetection.getRunCount() - personRunsBefore;
+                }
+                // The first frame of a replay sizes the buffers; count only
+                // reallocations after that
+                result.nativeReallocations += Math.max(0,
+                    detectionProcessor.getScratchAllocationCount() - reallocationsBefore - 1);
+            }
+        }
+
+        detectionProcessor.release();
+        if (dutyCycle != null) {
+            dutyCycle.release();
+        }
+        rgba.release();
+        gray.release();
+        return result;
+    }
+
+    /**
+     * Runs every motion segmenter over the same source and prints their cost
+     * and what they detect side by side.
+     */
+    static void compareSegmenters(Options options) throws IOException {
+        System.out.println(String.format(Locale.US, "%-18s %9s %9s %9s %10s %10s %8s",
+            "segmenter", "p50 ms", "p95 ms", "p99 ms", "humans/f", "objects/f", "throws"));
+        for (MotionSegmenter.Type type : MotionSegmenter.Type.values()) {
+            Result result = run(options, type, options.personDetector);
+            LatencyStats detect = result.stages[1];
+            System.out.println(String.format(Locale.US, "%-18s %9.2f %9.2f %9.2f %10.2f %10.2f %8d",
+                type,
+                detect.getPercentileMs(50),
+                detect.getPercentileMs(95),
+                detect.getPercentileMs(99),
+                result.frames > 0 ? (double) result.humanDetections / result.frames : 0,
+                result.frames > 0 ? (double) result.objectDetections / result.frames : 0,
+                result.throwCount));
+        }
+    }
+
+    /**
+     * Runs the blob shape heuristic and the configured person detector over
+     * the same frames and compares their CPU cost and what they detect.
+     */
+    static void comparePersonDetectors(Options options) throws IOException {
+        String[] kinds = options.personDetector.equals("heuristic")
+            ? new String[] { "heuristic" }
+            : new String[] { "heuristic", options.personDetector };
+        System.out.println(String.format(Locale.US, "%-10s %9s %9s %11s %12s %10s %8s",
+            "humans", "p50 ms", "p95 ms", "cpu ms/f", "infer p50 ms", "humans/f", "throws"));
+        for (String kind : kinds) {
+            Result result = run(options, options.segmenter, kind);
+            LatencyStats detect = result.stages[1];
+            System.out.println(String.format(Locale.US, "%-10s %9.2f %9.2f %11.2f %12s %10.2f %8d",
+                kind,
+                detect.getPercentileMs(50),
+                detect.getPercentileMs(95),
+                result.getCpuMsPerFrame(),
+                result.personRuns > 0
+                    ? String.format(Locale.US, "%.2f", result.personStats.getPercentileMs(50)) : "-",
+                result.frames > 0 ? (double) result.humanDetections / result.frames : 0,
+                result.throwCount));
+        }
+        if (kinds.length == 1) {
+            System.out.println("Pass --person-detector and --model to compare against a detector");
+        }
+    }
+
+    /**
+     * Runs the HOG detector with the frame downscaled to several widths and
+     * reports how many detector runs per second each sustains.
+     */
+    static void compareHogWidths(Options options) throws IOException {
+        int[] widths = { 320, 480, 640, 0 };
+        System.out.println(String.format(Locale.US,
+            "HOG stride %d, scale %.2f, %d levels, every %d frames",
+            options.hogStride, options.hogScale, options.hogLevels, options.personInterval));
+        System.out.println(String.format(Locale.US, "%-8s %7s %12s %12s %10s %10s",
+            "width", "runs", "infer p50 ms", "infer p95 ms", "runs/s", "humans/f"));
+        int configuredWidth = options.hogWidth;
+        try {
+            for (int width : widths) {
+                options.hogWidth = width;
+                Result result = run(options, options.segmenter, "hog");
+                LatencyStats inference = result.personStats;
+                double meanMs = inference != null ? inference.getMeanMs() : 0;
+                System.out.println(String.format(Locale.US, "%-8s %7d %12.2f %12.2f %10.1f %10.2f",
+                    width > 0 ? Integer.toString(width) : "full",
+                    result.personRuns,
+                    inference != null ? inference.getPercentileMs(50) : 0,
+                    inference != null ? inference.getPercentileMs(95) : 0,
+                    meanMs > 0 ? 1000 / meanMs : 0,
+                    result.frames > 0 ? (double) result.humanDetections / result.frames : 0));
+            }
+        } finally {
+            options.hogWidth = configuredWidth;
+        }
+    }
+
+    /**
+     * Runs the same frames with connected components and with contours and
+     * compares detect latency, OpenCV calls and heap allocations.
+     */
+    static void compareBlobMethods(Options options) throws IOException {
+        System.out.println(String.format(Locale.US, "%-22s %9s %9s %15s %14s %10s",
+            "blobs", "p50 ms", "p95 ms", "OpenCV calls/f", "heap bytes/f", "objects/f"));
+        BlobExtractor.Method configured = options.blobMethod;
+        try {
+            for (BlobExtractor.Method method : BlobExtractor.Method.values()) {
+                options.blobMethod = method;
+                Result result = run(options, options.segmenter, options.personDetector);
+                LatencyStats detect = result.stages[1];
+                System.out.println(String.format(Locale.US, "%-22s %9.2f %9.2f %15.1f %14.0f %10.2f",
+                    method,
+                    detect.getPercentileMs(50),
+                    detect.getPercentileMs(95),
+                    result.getBlobOpenCvCallsPerFrame(),
+                    result.getAllocatedBytesPerFrame(),
+                    result.frames > 0 ? (double) result.objectDetections / result.frames : 0));
+            }
+        } finally {
+            options.blobMethod = configured;
+        }
+    }
+
+    /**
+     * Runs detection and throw fitting over one long replay and samples
+     * memory every SOAK_SAMPLE_FRAMES frames after warm-up: the resident
+     * size of the process, which covers every native allocation, and the
+     * bytes of the Mats the detection stage holds. Samples follow a full GC
+     * so Mats only waiting for their finalizer are not counted. Fails when
+     * the least squares slope of either over the second half of the samples
+     * exceeds the growth bound: pools and allocator arenas settle in the
+     * first half, a steady leak keeps going.
+     */
+    static boolean soak(Options options) throws IOException {
+        DetectionProcessor detectionProcessor = new DetectionProcessor();
+        detectionProcessor.setAnalysisWidth(options.analysisWidth);
+        detectionProcessor.setOverlayEnabled(options.overlay);
+        detectionProcessor.setOpticalFlowEnabled(options.opticalFlow);
+        detectionProcessor.setBlobMethod(options.blobMethod);
+        detectionProcessor.setMotionSegmenter(options.segmenter.create());
+        ThrowDetector throwDetector = new ThrowDetector();
+        Mat rgba = new Mat();
+        Mat gray = new Mat();
+        int samples = Math.max(0, (options.frames - SOAK_WARMUP_FRAMES) / SOAK_SAMPLE_FRAMES + 1);
+        double[] sampleFrames = new double[samples];
+        double[] residentBytes = new double[samples];
+        double[] matBytes = new double[samples];
+        int sampled = 0;
+        long throwCount = 0;
+
+        System.out.println(String.format(Locale.US, "%-10s %12s %12s", "frame", "RSS KB", "Mat KB"));
+        FrameSource source = options.sourceFactory().open();
+        try {
+            for (int frame = 0; frame < options.frames; frame++) {
+                if (!source.read(rgba, gray)) {
+                    break;
+                }
+                long timestampNs = source.getTimestampNs();
+                DetectionResult detection = detectionProcessor.detect(gray, timestampNs);
+                if (throwDetector.detectThrows(detection.humanTracks, detection.objectTracks,
+                        timestampNs, gray.cols(), gray.rows(),
+                        detectionProcessor.isOverlayEnabled() ? detection.overlay : null)) {
+                    throwCount++;
+                }
+
+                int sinceWarmup = frame + 1 - SOAK_WARMUP_FRAMES;
+                if (sinceWarmup < 0 || sinceWarmup % SOAK_SAMPLE_FRAMES != 0 || sampled == samples) {
+                    continue;
+                }
+                System.gc();
+                System.runFinalization();
+                System.gc();
+                sampleFrames[sampled] = frame + 1;
+                residentBytes[sampled] = residentSetBytes();
+                matBytes[sampled] = MatCensus.totalBytes(detectionProcessor);
+                System.out.println(String.format(Locale.US, "%-10d %12.0f %12.0f",
+                    frame + 1, residentBytes[sampled] / 1024, matBytes[sampled] / 1024));
+                sampled++;
+            }
+        } finally {
+            source.close();
+            detectionProcessor.release();
+            rgba.release();
+            gray.release();
+        }
+
+        if (sampled < 6) {
+            System.out.println("Soak needs at least " + (SOAK_WARMUP_FRAMES + 5 * SOAK_SAMPLE_FRAMES)
+                + " frames");
+            return false;
+        }
+        int from = sampled / 2;
+        double residentSlope = slopePerThousandFrames(sampleFrames, residentBytes, from, sampled) / 1024;
+        double matSlope = slopePerThousandFrames(sampleFrames, matBytes, from, sampled) / 1024;
+        boolean ok = residentSlope <= options.maxGrowthKb && matSlope <= options.maxGrowthKb;
+        System.out.println(String.format(Locale.US,
+            "Growth per 1000 frames: RSS %.1f KB, Mats %.1f KB (bound %.0f KB), %d throws%s",
+            residentSlope, matSlope, options.maxGrowthKb, throwCount, ok ? "" : "  LEAK"));
+        return ok;
+    }
+
+    // Least squares slope of y over x for samples from..to-1, per 1000
+    // units of x
+    private static double slopePerThousandFrames(double[] x, double[] y, int from, int to) {
+        int n = to - from;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = from; i < to; i++) {
+            meanX += x[i] / n;
+            meanY += y[i] / n;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = from; i < to; i++) {
+            covariance += (x[i] - meanX) * (y[i] - meanY);
+            variance += (x[i] - meanX) * (x[i] - meanX);
+        }
+        return variance > 0 ? covariance / variance * 1000 : 0;
+    }
+
+    // Resident set size from /proc (Linux); 0 elsewhere
+    private static long residentSetBytes() throws IOException {
+        File status = new File("/proc/self/status");
+        if (!status.exists()) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(status.toPath())) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Replays the source on several camera pipelines at once, sharing one
+     * analysis executor, and reports throughput, latency and drops per
+     * pipeline. Sources are read flat out, so every pipeline competes for
+     * the pool and fair scheduling shows up as similar analyzed counts.
+     */
+    static void runPipelines(Options options) throws IOException, InterruptedException {
+        SourceFactory factory = options.sourceFactory();
+        int threads = options.poolThreads > 0 ? options.poolThreads : PipelineExecutor.defaultThreadCount();
+        PipelineExecutor executor = new PipelineExecutor(threads);
+        CameraPipeline[] pipelines = new CameraPipeline[options.pipelines];
+        for (int i = 0; i < pipelines.length; i++) {
+            DetectionProcessor detectionProcessor = new DetectionProcessor();
+            detectionProcessor.setAnalysisWidth(options.analysisWidth);
+            detectionProcessor.setOverlayEnabled(options.overlay);
+            detectionProcessor.setOpticalFlowEnabled(options.opticalFlow);
+            detectionProcessor.setBlobMethod(options.blobMethod);
+            pipelines[i] = new CameraPipeline("camera" + i, factory.open(), detectionProcessor,
+                new ThrowDetector(), null, executor);
+        }
+
+        long start = System.nanoTime();
+        for (CameraPipeline pipeline : pipelines) {
+            pipeline.start();
+        }
+        for (CameraPipeline pipeline : pipelines) {
+            pipeline.awaitSourceEnd();
+        }
+        long wallNs = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US, "%d pipelines on %d threads, %.1f s",
+            pipelines.length, threads, wallNs / 1e9));
+        System.out.println(String.format(Locale.US, "%-10s %8s %9s %8s %9s %9s %9s %7s",
+            "pipeline", "read", "analyzed", "dropped", "fps", "p50 ms", "p95 ms", "throws"));
+        long analyzed = 0;
+        for (CameraPipeline pipeline : pipelines) {
+            pipeline.close();
+            LatencyStats latency = pipeline.getLatencyStats();
+            System.out.println(String.format(Locale.US, "%-10s %8d %9d %8d %9.1f %9.2f %9.2f %7d",
+                pipeline.getName(),
+                pipeline.getFramesRead(),
+                pipeline.getFramesAnalyzed(),
+                pipeline.getDroppedFrameCount(),
+                pipeline.getAnalyzedFps(),
+                latency.getPercentileMs(50),
+                latency.getPercentileMs(95),
+                pipeline.getThrowCount()));
+            analyzed += pipeline.getFramesAnalyzed();
+        }
+        executor.close();
+        System.out.println(String.format(Locale.US, "total %.1f analyzed frames/s, %d failed frames",
+            analyzed * 1e9 / wallNs, executor.getFailedFrameCount()));
+    }
+
+    static void print(Result result) {
+        System.out.println(String.format(Locale.US, "segmenter %s, humans from %s, %d frames measured",
+            result.segmenter, result.personDetector, result.frames));
+        System.out.println(String.format(Locale.US, "%-10s %9s %9s %9s %9s %9s",
+            "stage", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (LatencyStats stage : result.stages) {
+            System.out.println(String.format(Locale.US, "%-10s %9.3f %9.3f %9.3f %9.3f %9.3f",
+                stage.getName(),
+                stage.getMeanMs(),
+                stage.getPercentileMs(50),
+                stage.getPercentileMs(95),
+                stage.getPercentileMs(99),
+                stage.getMaxMs()));
+        }
+        System.out.println(String.format(Locale.US, "throughput %.1f fps (incl. read), cpu %.2f ms/frame",
+            result.getThroughputFps(), result.getCpuMsPerFrame()));
+        if (result.dutyCycle != null) {
+            System.out.println(String.format(Locale.US, "duty cycle: %d of %d frames idle; including warm-up %s",
+                result.idleFrames, result.frames, result.dutyCycle));
+        }
+        if (result.personRuns > 0) {
+            System.out.println(String.format(Locale.US, "person detector: %d runs, inference p50 %.2f ms, p95 %.2f ms",
+                result.personRuns, result.personStats.getPercentileMs(50),
+                result.personStats.getPercentileMs(95)));
+        }
+        System.out.println(String.format(Locale.US,
+            "heap allocations %.0f bytes/frame, native scratch reallocations %d, blob OpenCV calls %.1f/frame",
+            result.getAllocatedBytesPerFrame(), result.nativeReallocations,
+            result.getBlobOpenCvCallsPerFrame()));
+        System.out.println(String.format(Locale.US, "detections: %d humans, %d objects, %d throws",
+            result.humanDetections, result.objectDetections, result.throwCount));
+    }
+
+    // Baseline files are plain properties: <stage>.p<N> in milliseconds plus
+    // allocation and throughput figures. Only the hot path stages are
+    // compared; reading frames depends on the codec and disk.
+
+    static void writeBaseline(Options options, Result result) throws IOException {
+        Properties properties = new Properties();
+        for (LatencyStats stage : result.stages) {
+            for (double p : PERCENTILES) {
+                properties.setProperty(stage.getName() + ".p" + (int) p,
+                    String.format(Locale.US, "%.4f", stage.getPercentileMs(p)));
+            }
+        }
+        properties.setProperty("alloc.bytesPerFrame",
+            String.format(Locale.US, "%.0f", result.getAllocatedBytesPerFrame()));
+        properties.setProperty("throughput.fps",
+            String.format(Locale.US, "%.1f", result.getThroughputFps()));
+        properties.setProperty("throws", Long.toString(result.throwCount));
+
+        String comment = String.format(Locale.US,
+            "%s, segmenter %s, analysis width %d, %d frames; %s %s, %d cpus, java %s, OpenCV %s",
+            options.describeSource(), result.segmenter, options.analysisWidth, result.frames,
+            System.getProperty("os.name"), System.getProperty("os.arch"),
+            Runtime.getRuntime().availableProcessors(), System.getProperty("java.version"),
+            Core.VERSION);
+        try (OutputStream out = new FileOutputStream(options.writeBaseline)) {
+            properties.store(out, comment);
+        }
+    }
+
+    /**
+     * @return false if any hot path figure is worse than the baseline by more
+     *         than the tolerance
+     */
+    static boolean compareBaseline(Options options, Result result) throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(options.baseline)) {
+            baseline.load(in);
+        }
+        double factor = 1 + options.tolerance / 100.0;
+        boolean ok = true;
+
+        System.out.println("Compared to " + options.baseline
+            + String.format(Locale.US, " (tolerance %.0f%%):", options.tolerance));
+        for (int i = 1; i < result.stages.length; i++) {
+            LatencyStats stage = result.stages[i];
+            for (double p : PERCENTILES) {
+                String key = stage.getName() + ".p" + (int) p;
+                ok &= check(baseline, key, stage.getPercentileMs(p), factor, 0.05);
+            }
+        }
+        // Small absolute slack so a few bytes from the JIT or the MXBean do
+        // not fail an allocation free baseline
+        ok &= check(baseline, "alloc.bytesPerFrame", result.getAllocatedBytesPerFrame(), factor, 256);
+
+        String expectedThrows = baseline.getProperty("throws");
+        if (expectedThrows != null && Long.parseLong(expectedThrows) != result.throwCount) {
+            // Not a failure: only a hint that detection behaviour changed
+            System.out.println(String.format(Locale.US, "  throws changed: %s -> %d",
+                expectedThrows, result.throwCount));
+        }
+        System.out.println(ok ? "No regressions" : "REGRESSION");
+        return ok;
+    }
+
+    private static boolean check(Properties baseline, String key, double value,
+                                 double factor, double slack) {
+        String expected = baseline.getProperty(key);
+        if (expected == null) {
+            return true;
+        }
+        double limit = Double.parseDouble(expected) * factor + slack;
+        boolean ok = value <= limit;
+        System.out.println(String.format(Locale.US, "  %-22s %10.3f (baseline %s)%s",
+            key, value, expected, ok ? "" : "  REGRESSION"));
+        return ok;
+    }
+
+    /**
+     * Bytes the calling thread has allocated on the Java heap so far, or 0
+     * if the JVM does not report it.
+     */
+    static long allocatedBytes() {
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREAD_BEAN)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,135 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.Core;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Runs the detector over recorded footage and writes a JSON-lines event log,
+ * for tuning sensitivity and checking detections without a device.
+ *
+ * Usage:
+ *   ReplayTool (--video FILE | --images DIR | --raw FILE --size WxH | --synthetic)
+ *              [--fps F] [--frames N] [--out FILE] [--realtime] [--throws-only]
+ *              [--segmenter TYPE] [--analysis-width W]
+ *              [--sensitivity S] [--throw-sensitivity S]
+ *
+ * Without --out the event log goes to stdout.
+ */
+public class ReplayTool {
+
+    public static void main(String[] args) throws Exception {
+        String video = null;
+        String images = null;
+        String raw = null;
+        int width = 640;
+        int height = 480;
+        double fps = 30;
+        int frames = 600;
+        String out = null;
+        boolean realtime = false;
+        boolean throwsOnly = false;
+        MotionSegmenter.Type segmenter = MotionSegmenter.Type.FRAME_DIFFERENCE;
+        int analysisWidth = DetectionProcessor.DEFAULT_ANALYSIS_WIDTH;
+        int sensitivity = 50;
+        int throwSensitivity = 50;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--video":
+                    video = args[++i];
+                    break;
+                case "--images":
+                    images = args[++i];
+                    break;
+                case "--raw":
+                    raw = args[++i];
+                    break;
+                case "--synthetic":
+                    break;
+                case "--size": {
+                    String[] parts = args[++i].split("x");
+                    width = Integer.parseInt(parts[0]);
+                    height = Integer.parseInt(parts[1]);
+                    break;
+                }
+                case "--fps":
+                    fps = Double.parseDouble(args[++i]);
+                    break;
+                case "--frames":
+                    frames = Integer.parseInt(args[++i]);
+                    break;
+                case "--out":
+                    out = args[++i];
+                    break;
+                case "--realtime":
+                    realtime = true;
+                    break;
+                case "--throws-only":
+                    throwsOnly = true;
+                    break;
+                case "--segmenter":
+                    segmenter = MotionSegmenter.Type.valueOf(args[++i].toUpperCase(Locale.US));
+                    break;
+                case "--analysis-width":
+                    analysisWidth = Integer.parseInt(args[++i]);
+                    break;
+                case "--sensitivity":
+                    sensitivity = Integer.parseInt(args[++i]);
+                    break;
+                case "--throw-sensitivity":
+                    throwSensitivity = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        FrameSource source;
+        if (video != null) {
+            source = new VideoFileFrameSource(video);
+        } else if (images != null) {
+            source = new ImageFolderFrameSource(images, fps);
+        } else if (raw != null) {
+            source = new RawFrameFileSource(raw, width, height, fps);
+        } else {
+            source = new SyntheticFrameSource(width, height, frames, fps);
+        }
+
+        DetectionProcessor detectionProcessor = new DetectionProcessor();
+        detectionProcessor.setMotionSegmenter(segmenter.create());
+        detectionProcessor.setAnalysisWidth(analysisWidth);
+        detectionProcessor.setHumanSensitivity(sensitivity);
+        // Nothing is displayed, skip building overlays
+        detectionProcessor.setOverlayEnabled(false);
+        ThrowDetector throwDetector = new ThrowDetector();
+        throwDetector.setThrowSensitivity(throwSensitivity);
+
+        ReplayRunner runner = new ReplayRunner(detectionProcessor, throwDetector);
+        runner.setRealtime(realtime);
+        runner.setFrameEvents(!throwsOnly);
+
+        Writer eventLog = new BufferedWriter(new OutputStreamWriter(
+            out != null ? new FileOutputStream(out) : System.out, StandardCharsets.UTF_8));
+        ReplayRunner.Summary summary;
+        try {
+            summary = runner.run(source, eventLog);
+        } finally {
+            source.close();
+            detectionProcessor.release();
+            if (out != null) {
+                eventLog.close();
+            }
+        }
+        System.err.println(String.format(Locale.US, "%d frames, %d throws, %.1f fps, %s",
+            summary.frames, summary.throwCount, summary.getFps(), summary.detectStats));
+    }
+}
@@ -0,0 +1,178 @@
+package com.garbagethrowdetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Deterministic generated scene for benchmarking without a recorded clip.
+ *
+ * A person-sized striped block walks back and forth over a static textured
+ * background and throws a ball on a ballistic arc once every CYCLE_FRAMES.
+ * The person passes the shape heuristic for humans and the flight passes
+ * the throw detector's defaults, so every pipeline stage (segmentation,
+ * blobs, tracking, flow, throw fitting) does real work and a run reports
+ * one throw per cycle. The same arguments always produce the same frames.
+ *
+ * setClutter() adds small specks that jump to new places every frame, like
+ * leaves or sensor noise, so the blob stages can be measured on a busy
+ * scene with many small components.
+ */
+public class SyntheticFrameSource implements FrameSource {
+    private static final int CYCLE_FRAMES = 90;
+    private static final int THROW_FRAME = 30;
+    // Launch velocity and gravity in px / frame and px / frame^2 at 640 px
+    // width: about 1.4 frame widths per second at 30 fps, above the throw
+    // detector's default launch threshold
+    private static final double LAUNCH_VX = 18;
+    private static final double LAUNCH_VY = -24;
+    private static final double GRAVITY = 1.2;
+    // Neither the person's 6 px nor the object's 18 px steps are a
+    // multiple of it, so every stripe changes shade between frames
+    private static final int STRIPE_PERIOD = 12;
+
+    private final int width;
+    private final int height;
+    private final int frameCount;
+    private final double fps;
+    private final Mat background;
+    private final Point topLeft = new Point();
+    private final Point bottomRight = new Point();
+    private final Point center = new Point();
+    private final Scalar personColor = new Scalar(210);
+    private final Scalar objectColor = new Scalar(40);
+    private int clutter = 0;
+    private int frameIndex = 0;
+    private long timestampNs = 0;
+
+    public SyntheticFrameSource(int width, int height, int frameCount, double fps) {
+        this.width = width;
+        this.height = height;
+        this.frameCount = frameCount;
+        this.fps = fps;
+
+        // Static background with some structure for the segmenters to learn
+        background = new Mat(height, width, CvType.CV_8UC1, new Scalar(110));
+        Scalar shade = new Scalar(0);
+        Point a = new Point();
+        Point b = new Point();
+        for (int i = 0; i < 12; i++) {
+            shade.val[0] = 70 + (i * 37) % 90;
+            a.x = (i * 97) % width;
+            a.y = (i * 53) % height;
+            b.x = a.x + width / 8;
+            b.y = a.y + height / 10;
+            Imgproc.rectangle(background, a, b, shade, -1);
+        }
+    }
+
+    /** Number of small flickering specks drawn per frame, 0 for none. */
+    public void setClutter(int specks) {
+        clutter = Math.max(0, specks);
+    }
+
+    @Override
+    public boolean read(Mat rgba, Mat gray) {
+        if (frameIndex >= frameCount) {
+            return false;
+        }
+        background.copyTo(gray);
+
+        int personWidth = width / 10;
+        int personHeight = height / 3;
+        double personX = personX(frameIndex, personWidth);
+        double personY = height - personHeight - height / 12.0;
+        topLeft.x = personX;
+        topLeft.y = personY;
+        bottomRight.x = personX + personWidth;
+        bottomRight.y = personY + personHeight;
+        drawPerson(gray, personX, personY, personWidth, personHeight);
+
+        int sinceThrow = frameIndex % CYCLE_FRAMES - THROW_FRAME;
+        if (sinceThrow >= 0) {
+            // Released just above the person's head, up and away
+            int radius = Math.max(4, width / 21);
+            double scale = width / 640.0;
+            double launchX = ((frameIndex / CYCLE_FRAMES) % 2 == 0 ? LAUNCH_VX : -LAUNCH_VX) * scale;
+            // Flies on from where it was released, whatever the person does
+            center.x = personX(frameIndex - sinceThrow, personWidth) + personWidth / 2.0
+                + launchX * sinceThrow;
+            center.y = personY - radius - height / 40.0
+                + (LAUNCH_VY * sinceThrow + 0.5 * GRAVITY * sinceThrow * sinceThrow) * scale;
+            if (center.x >= 0 && center.x < width && center.y < height) {
+                drawObject(gray, radius);
+            }
+        }
+        drawClutter(gray);
+        Imgproc.cvtColor(gray, rgba, Imgproc.COLOR_GRAY2RGBA);
+
+        timestampNs = (long) (frameIndex * 1e9 / fps);
+        frameIndex++;
+        return true;
+    }
+
+    // Walks back and forth at 6 px per frame
+    private double personX(int frame, int personWidth) {
+        int travel = width - personWidth;
+        int step = frame % (2 * travel / 6);
+        return step * 6 <= travel ? step * 6 : 2 * travel - step * 6;
+    }
+
+    // Vertical sawtooth stripes that move with the person, so frame
+    // differencing sees the whole body change and not only its edges
+    private void drawPerson(Mat gray, double x, double y, int personWidth, int personHeight) {
+        topLeft.y = y;
+        bottomRight.y = y + personHeight;
+        for (int column = 0; column < personWidth; column += 2) {
+            topLeft.x = x + column;
+            bottomRight.x = x + Math.min(column + 1, personWidth - 1);
+            personColor.val[0] = stripeShade(column);
+            Imgproc.rectangle(gray, topLeft, bottomRight, personColor, -1);
+        }
+    }
+
+    // Striped disc at center; like the person, the whole object changes
+    // between frames, so it stays one blob instead of splitting into the
+    // position it left and the one it reached
+    private void drawObject(Mat gray, int radius) {
+        for (int column = -radius; column <= radius; column++) {
+            double half = Math.sqrt((double) radius * radius - column * column);
+            topLeft.x = center.x + column;
+            topLeft.y = center.y - half;
+            bottomRight.x = topLeft.x;
+            bottomRight.y = center.y + half;
+            objectColor.val[0] = stripeShade(column + radius);
+            Imgproc.line(gray, topLeft, bottomRight, objectColor, 1);
+        }
+    }
+
+    private static double stripeShade(int offset) {
+        return 40 + (offset % STRIPE_PERIOD) * 150.0 / STRIPE_PERIOD;
+    }
+
+    private void drawClutter(Mat gray) {
+        int size = Math.max(2, width / 160);
+        for (int i = 0; i < clutter; i++) {
+            // Cheap deterministic scatter, a different place every frame
+            int hash = (frameIndex * 7919 + i * 104729) * 0x9E3779B1;
+            hash ^= hash >>> 15;
+            topLeft.x = ((hash & 0x7fffffff) % (width - size));
+            topLeft.y = (((hash >>> 7) & 0x7fffffff) % (height - size));
+            bottomRight.x = topLeft.x + size;
+            bottomRight.y = topLeft.y + size;
+            Imgproc.rectangle(gray, topLeft, bottomRight, (i & 1) == 0 ? personColor : objectColor, -1);
+        }
+    }
+
+    @Override
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    @Override
+    public void close() {
+        background.release();
+    }
+}
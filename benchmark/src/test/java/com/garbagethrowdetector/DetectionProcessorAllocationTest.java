@@ -0,0 +1,178 @@
+package com.garbagethrowdetector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Steady-state allocations of DetectionProcessor.detect() with the default
+ * configuration (connected components, optical flow, no ROI or person
+ * detector).
+ *
+ * After warm-up a frame must allocate nothing on the Java heap, measured
+ * with the thread allocation counter the benchmark reports, and every Mat
+ * the processor holds must keep its native buffer. Exempt are the outputs
+ * that are rebuilt on every call whatever the caller does: component
+ * statistics sized by the label count, and the point lists of the flow
+ * stage, which the JNI layer converts through std::vector and back into a
+ * new Mat.
+ */
+public class DetectionProcessorAllocationTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    // Several throw cycles of the synthetic scene, so tracks have come and
+    // gone and the pools have reached their size
+    private static final int WARMUP_FRAMES = 600;
+    private static final int FRAMES = 1200;
+
+    // Outputs rebuilt by every call, as "Class.field"
+    private static final List<String> REBUILT_OUTPUTS = Arrays.asList(
+        "BlobExtractor.stats", "BlobExtractor.centroids",
+        "ObjectFlowTracker.nextPoints", "ObjectFlowTracker.status", "ObjectFlowTracker.error",
+        "ObjectFlowTracker.corners");
+
+    private final Mat rgba = new Mat();
+    private final Mat gray = new Mat();
+    private DetectionProcessor detectionProcessor;
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @Before
+    public void setUp() {
+        detectionProcessor = new DetectionProcessor();
+    }
+
+    @After
+    public void tearDown() {
+        detectionProcessor.release();
+        rgba.release();
+        gray.release();
+    }
+
+    @Test
+    public void threadAllocationCounterWorks() {
+        long before = PipelineBenchmark.allocatedBytes();
+        byte[] buffer = new byte[4096];
+        long allocated = PipelineBenchmark.allocatedBytes() - before;
+        assertTrue("JVM does not report thread allocation: " + allocated + " bytes for "
+            + buffer.length, allocated >= buffer.length);
+    }
+
+    @Test
+    public void detectAllocatesNoJavaHeapAfterWarmup() {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT,
+            WARMUP_FRAMES + FRAMES, 30);
+        try {
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                readAndDetect(source);
+            }
+            // Cost of reading the counter itself
+            long overhead = PipelineBenchmark.allocatedBytes();
+            overhead = PipelineBenchmark.allocatedBytes() - overhead;
+
+            int tracked = 0;
+            for (int i = 0; i < FRAMES; i++) {
+                if (!source.read(rgba, gray)) {
+                    throw new AssertionError("synthetic source ended early");
+                }
+                long timestampNs = source.getTimestampNs();
+                long before = PipelineBenchmark.allocatedBytes();
+                DetectionResult result = detectionProcessor.detect(gray, timestampNs);
+                long allocated = PipelineBenchmark.allocatedBytes() - before - overhead;
+                assertEquals("bytes allocated by frame " + (WARMUP_FRAMES + i), 0, allocated);
+                tracked += result.objectTracks.size();
+            }
+            // The scene must have exercised tracking and flow
+            assertTrue(tracked > 0);
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void nativeBuffersKeepTheirAddressAfterWarmup() {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT,
+            WARMUP_FRAMES + FRAMES, 30);
+        try {
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                readAndDetect(source);
+            }
+            Map<Mat, String> mats = MatCensus.collect(detectionProcessor, REBUILT_OUTPUTS);
+            Map<Mat, Long> addresses = new IdentityHashMap<>();
+            for (Mat mat : mats.keySet()) {
+                addresses.put(mat, mat.dataAddr());
+            }
+            // The walk must reach the per-track flow buffers
+            assertTrue("no flow patches among " + mats.values(), findPath(mats, ".patch") != null);
+
+            for (int i = 0; i < FRAMES; i++) {
+                readAndDetect(source);
+                Map<Mat, String> now = MatCensus.collect(detectionProcessor, REBUILT_OUTPUTS);
+                for (Map.Entry<Mat, String> entry : now.entrySet()) {
+                    Long address = addresses.get(entry.getKey());
+                    assertTrue("new Mat " + entry.getValue() + " at frame " + (WARMUP_FRAMES + i),
+                        address != null);
+                    assertEquals("reallocated " + entry.getValue() + " at frame " + (WARMUP_FRAMES + i),
+                        address.longValue(), entry.getKey().dataAddr());
+                }
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void resultIsReused() {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, 3, 30);
+        try {
+            DetectionResult first = readAndDetect(source);
+            assertTrue(first == readAndDetect(source));
+            assertTrue(first == readAndDetect(source));
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void scratchAllocationsStayFlatAfterWarmup() {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, 20, 30);
+        try {
+            for (int i = 0; i < 20; i++) {
+                readAndDetect(source);
+            }
+            assertEquals(1, detectionProcessor.getScratchAllocationCount());
+        } finally {
+            source.close();
+        }
+    }
+
+    private static String findPath(Map<Mat, String> mats, String suffix) {
+        for (String path : mats.values()) {
+            if (path.endsWith(suffix)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    private DetectionResult readAndDetect(SyntheticFrameSource source) {
+        if (!source.read(rgba, gray)) {
+            throw new AssertionError("synthetic source ended early");
+        }
+        return detectionProcessor.detect(gray, source.getTimestampNs());
+    }
+}
@@ -3,10 +3,12 @@ package org.opencv.android;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
@@ -16,10 +18,12 @@ import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
 import android.media.ImageReader;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.Range;
 import android.view.Surface;
 import android.view.ViewGroup.LayoutParams;
 
@@ -51,10 +55,31 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     protected CaptureRequest.Builder mPreviewRequestBuilder;
     protected String mCameraID;
     protected android.util.Size mPreviewSize = new android.util.Size(-1, -1);
+    // Requested AE frame rate range, null for the template default
+    protected volatile Range<Integer> mTargetFpsRange;
+    private Range<Integer> mDefaultFpsRange;
 
     private HandlerThread mBackgroundThread;
     protected Handler mBackgroundHandler;
 
+    // Reused for every frame, background thread only
+    private final JavaCamera2Frame mFrame = new JavaCamera2Frame();
+    private volatile long mRgbaConversions = 0;
+
+    // Camera renders straight into this view's surface; requested and in
+    // effect for the current session
+    private volatile boolean mDirectPreview = false;
+    private volatile boolean mSessionDirectPreview = false;
+    // The view's surface has been fixed to the preview size (UI thread)
+    private boolean mSurfaceFixed = false;
+
+    // Frame delivery cost on the background thread, per session
+    private volatile long mDeliveredFrames = 0;
+    private volatile long mDeliveryNs = 0;
+    private volatile long mDeliveryCpuNs = 0;
+    private volatile long mFirstDeliveryNs = 0;
+    private volatile long mLastDeliveryNs = 0;
+
     public JavaCamera2View(Context context, int cameraId) {
         super(context, cameraId);
     }
@@ -183,18 +208,37 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    JavaCamera2Frame tempFrame = new JavaCamera2Frame(image);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.release();
+                    long start = System.nanoTime();
+                    long cpuStart = Debug.threadCpuTimeNanos();
+                    mFrame.setImage(image);
+                    if (mSessionDirectPreview) {
+                        // The camera already drew this frame on the screen
+                        deliverFrame(mFrame);
+                    } else {
+                        deliverAndDrawFrame(mFrame);
+                    }
+                    mFrame.setImage(null);
                     image.close();
+                    recordDelivery(start, cpuStart);
                 }
             }, mBackgroundHandler);
             Surface surface = mImageReader.getSurface();
+            resetDeliveryStats();
 
             mPreviewRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             mPreviewRequestBuilder.addTarget(surface);
+            mDefaultFpsRange = mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE);
+            List<Surface> outputs = Arrays.asList(surface);
+            mSessionDirectPreview = mDirectPreview && previewSurfaceMatches(w, h);
+            if (mSessionDirectPreview) {
+                // Second target, composited by the system without passing
+                // through Java. The buffer is scaled to fill the view.
+                Surface previewSurface = getHolder().getSurface();
+                mPreviewRequestBuilder.addTarget(previewSurface);
+                outputs = Arrays.asList(surface, previewSurface);
+            }
 
-            mCameraDevice.createCaptureSession(Arrays.asList(surface),
+            mCameraDevice.createCaptureSession(outputs,
                 new CameraCaptureSession.StateCallback() {
                     @Override
                     public void onConfigured(CameraCaptureSession cameraCaptureSession) {
@@ -208,6 +252,7 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                                     CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
                             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
                                     CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
+                            applyTargetFpsRange();
 
                             mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), null, mBackgroundHandler);
                             Log.i(LOGTAG, "CameraPreviewSession has been started");
@@ -228,6 +273,174 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         }
     }
 
+    /**
+     * Requests a capture frame rate range, e.g. a low one while there is
+     * nothing to analyze. Pass null to go back to the camera default. Takes
+     * effect on the running session, or when the next one starts.
+     */
+    public void setTargetFpsRange(Range<Integer> range) {
+        mTargetFpsRange = range;
+        Handler handler = mBackgroundHandler;
+        if (handler != null) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    updateRepeatingRequest();
+                }
+            });
+        }
+    }
+
+    /**
+     * The supported AE frame rate range with the lowest maximum, or null if
+     * the camera is not initialized.
+     */
+    public Range<Integer> getLowestFpsRange() {
+        if (mCameraID == null) {
+            return null;
+        }
+        CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
+        try {
+            Range<Integer>[] ranges = manager.getCameraCharacteristics(mCameraID)
+                .get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            Range<Integer> lowest = null;
+            if (ranges != null) {
+                for (Range<Integer> range : ranges) {
+                    if (lowest == null || range.getUpper() < lowest.getUpper()
+                            || (range.getUpper().equals(lowest.getUpper()) && range.getLower() < lowest.getLower())) {
+                        lowest = range;
+                    }
+                }
+            }
+            return lowest;
+        } catch (CameraAccessException e) {
+            Log.e(LOGTAG, "getLowestFpsRange", e);
+            return null;
+        }
+    }
+
+    /**
+     * Lets the camera render the preview into this view's surface directly.
+     * Frames are still delivered to the listener for analysis, but whatever
+     * it returns is ignored: nothing is converted to a Bitmap or drawn with
+     * a Canvas. The preview fills the view, so overlays must be stretched the
+     * same way. The view's surface is sized to the preview size for it, and
+     * handed back to the layout when turned off. Takes effect when the
+     * camera is next connected.
+     */
+    public void setDirectPreview(boolean enabled) {
+        mDirectPreview = enabled;
+        if (enabled) {
+            return;
+        }
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mDirectPreview && mSurfaceFixed) {
+                    mSurfaceFixed = false;
+                    getHolder().setSizeFromLayout();
+                }
+            }
+        });
+    }
+
+    /**
+     * The camera renders only into surfaces of one of its output sizes, but
+     * the view's surface follows the layout. If it does not have the
+     * preview size yet, it is fixed to it and this session falls back to
+     * drawing frames. Resizing the surface restarts the camera, and the
+     * next session renders directly.
+     */
+    private boolean previewSurfaceMatches(final int w, final int h) {
+        Rect frame = getHolder().getSurfaceFrame();
+        if (frame.width() == w && frame.height() == h) {
+            return true;
+        }
+        Log.i(LOGTAG, "Sizing the preview surface to " + w + "x" + h + " for direct preview");
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (mDirectPreview) {
+                    mSurfaceFixed = true;
+                    getHolder().setFixedSize(w, h);
+                }
+            }
+        });
+        return false;
+    }
+
+    public boolean isDirectPreview() {
+        return mSessionDirectPreview;
+    }
+
+    private void resetDeliveryStats() {
+        mDeliveredFrames = 0;
+        mDeliveryNs = 0;
+        mDeliveryCpuNs = 0;
+        mFirstDeliveryNs = 0;
+        mLastDeliveryNs = 0;
+    }
+
+    // Background thread only
+    private void recordDelivery(long startNs, long cpuStartNs) {
+        long end = System.nanoTime();
+        if (mDeliveredFrames == 0) {
+            mFirstDeliveryNs = startNs;
+        }
+        mLastDeliveryNs = startNs;
+        mDeliveredFrames++;
+        mDeliveryNs += end - startNs;
+        mDeliveryCpuNs += Debug.threadCpuTimeNanos() - cpuStartNs;
+    }
+
+    /**
+     * Frame rate and per frame wall and CPU time of delivering frames to the
+     * listener, including conversion and drawing, for comparing the preview
+     * modes.
+     */
+    public String getDeliveryStats() {
+        long frames = mDeliveredFrames;
+        if (frames == 0) {
+            return "no frames";
+        }
+        long spanNs = mLastDeliveryNs - mFirstDeliveryNs;
+        return String.format(Locale.US, "%s preview, %d frames, %.1f fps, %.2f ms/frame, cpu %.2f ms/frame",
+            mSessionDirectPreview ? "direct" : "canvas", frames,
+            spanNs > 0 ? (frames - 1) * 1e9 / spanNs : 0,
+            mDeliveryNs / 1e6 / frames, mDeliveryCpuNs / 1e6 / frames);
+    }
+
+    /**
+     * Number of frames converted to RGBA so far. Frames whose rgba() is never
+     * called are not converted.
+     */
+    public long getRgbaConversionCount() {
+        return mRgbaConversions;
+    }
+
+    private void applyTargetFpsRange() {
+        Range<Integer> range = mTargetFpsRange;
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                range != null ? range : mDefaultFpsRange);
+    }
+
+    // Runs on the background thread
+    private void updateRepeatingRequest() {
+        if (null == mCaptureSession || null == mPreviewRequestBuilder) {
+            return;
+        }
+        try {
+            applyTargetFpsRange();
+            mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), null, mBackgroundHandler);
+            Log.i(LOGTAG, "Target fps range " + mTargetFpsRange);
+        } catch (CameraAccessException e) {
+            Log.e(LOGTAG, "updateRepeatingRequest", e);
+        } catch (IllegalStateException e) {
+            // Session closed in the meantime
+            Log.e(LOGTAG, "updateRepeatingRequest", e);
+        }
+    }
+
     @Override
     protected void disconnectCamera() {
         Log.i(LOGTAG, "close camera");
@@ -247,6 +460,7 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 mImageReader.close();
                 mImageReader = null;
             }
+            mFrame.release();
         }
         Log.i(LOGTAG, "camera closed!");
     }
@@ -327,21 +541,41 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         return true;
     }
 
+    /**
+     * View of the current camera Image. One instance is reused for every
+     * frame on the background thread: gray() wraps the Y plane without
+     * copying, and rgba() converts at most once per frame and only when it is
+     * called, so a listener that only needs gray() never pays for the colour
+     * conversion. The fallback copy buffers for planar chroma are kept
+     * between frames.
+     */
     private class JavaCamera2Frame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
+            if (mGrayValid) {
+                return mGray;
+            }
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
             assert(planes[0].getPixelStride() == 1);
             ByteBuffer y_plane = planes[0].getBuffer();
             int y_plane_step = planes[0].getRowStride();
+            // The reader alternates between image buffers, so the header has
+            // to be rebuilt for every frame
+            mGray.release();
             mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            mGrayValid = true;
             return mGray;
         }
 
         @Override
         public Mat rgba() {
+            if (mRgbaValid) {
+                return mRgba;
+            }
+            mRgbaValid = true;
+            mRgbaConversions++;
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
@@ -351,13 +585,11 @@ public class JavaCamera2View extends CameraBridgeViewBase {
             if (chromaPixelStride == 2) { // Chroma channels are interleaved
                 assert(planes[0].getPixelStride() == 1);
                 assert(planes[2].getPixelStride() == 2);
-                ByteBuffer y_plane = planes[0].getBuffer();
-                int y_plane_step = planes[0].getRowStride();
+                Mat y_mat = gray();
                 ByteBuffer uv_plane1 = planes[1].getBuffer();
                 int uv_plane1_step = planes[1].getRowStride();
                 ByteBuffer uv_plane2 = planes[2].getBuffer();
                 int uv_plane2_step = planes[2].getRowStride();
-                Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
                 Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
                 Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
                 long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
@@ -368,9 +600,14 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert(addr_diff == -1);
                     Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
                 }
+                uv_mat1.release();
+                uv_mat2.release();
                 return mRgba;
             } else { // Chroma channels are not interleaved
-                byte[] yuv_bytes = new byte[w*(h+h/2)];
+                if (mYuvBytes.length != w*(h+h/2)) {
+                    mYuvBytes = new byte[w*(h+h/2)];
+                }
+                byte[] yuv_bytes = mYuvBytes;
                 ByteBuffer y_plane = planes[0].getBuffer();
                 ByteBuffer u_plane = planes[1].getBuffer();
                 ByteBuffer v_plane = planes[2].getBuffer();
@@ -420,28 +657,39 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     }
                 }
 
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
-                yuv_mat.put(0, 0, yuv_bytes);
-                Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+                mYuvMat.create(h+h/2, w, CvType.CV_8UC1);
+                mYuvMat.put(0, 0, yuv_bytes);
+                Imgproc.cvtColor(mYuvMat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
                 return mRgba;
             }
         }
 
 
-        public JavaCamera2Frame(Image image) {
-            super();
+        @Override
+        public long timestamp() {
+            // Sensor start-of-exposure time
+            return mImage.getTimestamp();
+        }
+
+        void setImage(Image image) {
             mImage = image;
-            mRgba = new Mat();
-            mGray = new Mat();
+            mGrayValid = false;
+            mRgbaValid = false;
         }
 
         public void release() {
             mRgba.release();
             mGray.release();
+            mYuvMat.release();
+            mYuvBytes = new byte[0];
         }
 
         private Image mImage;
-        private Mat mRgba;
-        private Mat mGray;
+        private final Mat mRgba = new Mat();
+        private Mat mGray = new Mat();
+        private boolean mGrayValid;
+        private boolean mRgbaValid;
+        private byte[] mYuvBytes = new byte[0];
+        private final Mat mYuvMat = new Mat();
     };
 }